@@ -0,0 +1,90 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import android.util.LruCache;
+
+import java.util.HashMap;
+
+/***
+ * Size-bounded LRU cache of avatar bytes, weighted by their length. Entries are keyed by contact id,
+ * resolution, format and the contact's current PHOTO_ID/PHOTO_FILE_ID, so a changed photo simply
+ * misses and its stale entry ages out.
+ ***/
+class AvatarCache {
+
+  static final int DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+
+  private static final String[] PHOTO_VERSION_PROJECTION = {
+          ContactsContract.Contacts.PHOTO_ID,
+          ContactsContract.Contacts.PHOTO_FILE_ID,
+  };
+
+  private final LruCache<String, byte[]> cache;
+
+  AvatarCache(int maxBytes) {
+    cache = new LruCache<String, byte[]>(maxBytes) {
+      @Override
+      protected int sizeOf(String key, byte[] value) {
+        return value.length;
+      }
+    };
+  }
+
+  /**
+   * Builds the cache key for the photo the contact currently has
+   * @return the key, or null if the contact does not exist or has no photo
+   */
+  static String keyFor(ContentResolver contentResolver, long contactId, boolean highRes, AvatarFormat format) {
+    Cursor cursor = contentResolver.query(
+            ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, contactId),
+            PHOTO_VERSION_PROJECTION, null, null, null);
+    if (cursor == null) {
+      return null;
+    }
+    try {
+      if (!cursor.moveToFirst() || (cursor.isNull(0) && cursor.isNull(1))) {
+        return null;
+      }
+      return key(contactId, highRes, format, cursor.getLong(0), cursor.getLong(1));
+    } finally {
+      cursor.close();
+    }
+  }
+
+  static String key(long contactId, boolean highRes, AvatarFormat format, long photoId, long photoFileId) {
+    // Starts from a string: long + char would add the id and the separator as numbers.
+    return String.valueOf(contactId) + '/' + (highRes ? 'h' : 't') + '/' + photoId + '/' + photoFileId + '/' + format.key();
+  }
+
+  byte[] get(String key) {
+    return cache.get(key);
+  }
+
+  void put(String key, byte[] avatar) {
+    cache.put(key, avatar);
+  }
+
+  /**
+   * @throws IllegalArgumentException unless maxBytes is positive, as the cache cannot be sized to nothing
+   */
+  void setMaxBytes(int maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("Invalid avatar cache size " + maxBytes);
+    }
+    cache.resize(maxBytes);
+  }
+
+  HashMap<String, Object> stats() {
+    HashMap<String, Object> stats = new HashMap<>();
+    stats.put("hits", cache.hitCount());
+    stats.put("misses", cache.missCount());
+    stats.put("evictions", cache.evictionCount());
+    stats.put("entries", cache.snapshot().size());
+    stats.put("sizeBytes", cache.size());
+    stats.put("maxBytes", cache.maxSize());
+    return stats;
+  }
+}
@@ -0,0 +1,54 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.graphics.Bitmap;
+
+import java.util.Map;
+
+/***
+ * Describes how avatars are returned: either the bytes exactly as stored by the provider,
+ * or re-encoded to a target format, quality and maximum dimension.
+ ***/
+class AvatarFormat {
+
+  static final AvatarFormat ORIGINAL = new AvatarFormat(null, 100, 0);
+
+  /** Target encoding, or null to pass the stored bytes through untouched. */
+  final Bitmap.CompressFormat compressFormat;
+  final int quality;
+  /** Largest width or height of the returned image, or 0 to keep the stored size. */
+  final int maxDimension;
+
+  AvatarFormat(Bitmap.CompressFormat compressFormat, int quality, int maxDimension) {
+    this.compressFormat = compressFormat;
+    this.quality = quality;
+    this.maxDimension = maxDimension;
+  }
+
+  boolean isPassthrough() {
+    return compressFormat == null;
+  }
+
+  String key() {
+    return isPassthrough() ? "original" : compressFormat.name() + ":" + quality + ":" + maxDimension;
+  }
+
+  static AvatarFormat fromMap(Map map) {
+    if (map == null) {
+      return ORIGINAL;
+    }
+    Bitmap.CompressFormat compressFormat;
+    String format = (String) map.get("format");
+    if ("png".equals(format)) {
+      compressFormat = Bitmap.CompressFormat.PNG;
+    } else if ("jpeg".equals(format)) {
+      compressFormat = Bitmap.CompressFormat.JPEG;
+    } else {
+      return ORIGINAL;
+    }
+    Integer quality = (Integer) map.get("quality");
+    Integer maxDimension = (Integer) map.get("maxDimension");
+    return new AvatarFormat(compressFormat,
+            quality != null ? quality : 100,
+            maxDimension != null ? maxDimension : 0);
+  }
+}
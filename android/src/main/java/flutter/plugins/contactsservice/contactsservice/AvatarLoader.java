@@ -0,0 +1,201 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.provider.ContactsContract;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import static android.provider.ContactsContract.CommonDataKinds.Photo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/***
+ * Loads contact photos. Thumbnails are read in bulk, straight from the Photo rows of
+ * {@link ContactsContract.Data} instead of opening one photo stream per contact, and the
+ * stored bytes are passed through unless a target {@link AvatarFormat} asks for re-encoding.
+ ***/
+final class AvatarLoader {
+
+  private static final String LOG_TAG = "flutter_contacts";
+  private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+  // A buffer grown past this for a large photo is dropped after use rather than kept per thread.
+  private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+  // Scratch buffer photo streams are copied into, reused across loads on the same thread.
+  private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[INITIAL_BUFFER_SIZE];
+    }
+  };
+
+  private static final String[] THUMBNAIL_PROJECTION = {
+          ContactsContract.Data.CONTACT_ID,
+          ContactsContract.Data._ID,
+          ContactsContract.Data.PHOTO_ID,
+          Photo.PHOTO,
+  };
+
+  private AvatarLoader() {
+  }
+
+  /**
+   * Attaches the stored thumbnail of every contact, or an empty array when it has none
+   */
+  static void loadThumbnails(ContentResolver contentResolver, List<Contact> contacts, AvatarFormat format) {
+    ArrayList<String> ids = new ArrayList<>(contacts.size());
+    for (Contact contact : contacts) {
+      ids.add(contact.identifier());
+    }
+
+    LongSparseArray<byte[]> thumbnails = new LongSparseArray<>(contacts.size());
+    for (List<String> chunk : QueryChunks.split(ids)) {
+      readThumbnails(contentResolver, chunk, thumbnails);
+    }
+
+    for (Contact contact : contacts) {
+      byte[] thumbnail = thumbnails.get(contact.id);
+      if (thumbnail != null && !format.isPassthrough()) {
+        thumbnail = transcode(thumbnail, thumbnail.length, format);
+      }
+      // To stay backwards-compatible, return an empty byte array rather than `null`.
+      contact.avatar = thumbnail != null ? thumbnail : Contact.EMPTY_AVATAR;
+    }
+  }
+
+  /**
+   * Opens the photo of a single contact
+   * @return the photo in the requested format, or null if the contact has none
+   */
+  static byte[] loadPhoto(ContentResolver contentResolver, long contactId, boolean photoHighResolution, AvatarFormat format) {
+    try {
+      final Uri uri = ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, contactId);
+      final InputStream input = ContactsContract.Contacts.openContactPhotoInputStream(contentResolver, uri, photoHighResolution);
+
+      if (input == null) return null;
+
+      try {
+        return readPhoto(input, format);
+      } finally {
+        input.close();
+      }
+    } catch (final IOException ex) {
+      Log.e(LOG_TAG, ex.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Reads a photo stream, returning its bytes as stored or re-encoded to the given format
+   */
+  static byte[] readPhoto(InputStream input, AvatarFormat format) throws IOException {
+    byte[] buffer = BUFFER.get();
+    try {
+      int length = 0;
+      int read;
+      while ((read = input.read(buffer, length, buffer.length - length)) != -1) {
+        length += read;
+        if (length == buffer.length) {
+          buffer = Arrays.copyOf(buffer, buffer.length * 2);
+          BUFFER.set(buffer);
+        }
+      }
+
+      if (format.isPassthrough()) {
+        return Arrays.copyOf(buffer, length);
+      }
+      return transcode(buffer, length, format);
+    } finally {
+      if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+        // The next load on this thread starts again from INITIAL_BUFFER_SIZE.
+        BUFFER.remove();
+      }
+    }
+  }
+
+  private static byte[] transcode(byte[] data, int length, AvatarFormat format) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    if (format.maxDimension > 0) {
+      // Let the decoder skip pixels instead of decoding full size and scaling down.
+      options.inJustDecodeBounds = true;
+      BitmapFactory.decodeByteArray(data, 0, length, options);
+      options.inSampleSize = sampleSize(options.outWidth, options.outHeight, format.maxDimension);
+      options.inJustDecodeBounds = false;
+    }
+
+    Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, length, options);
+    if (bitmap == null) {
+      return null;
+    }
+
+    int largest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+    if (format.maxDimension > 0 && largest > format.maxDimension) {
+      float scale = (float) format.maxDimension / largest;
+      Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+              Math.max(1, Math.round(bitmap.getWidth() * scale)),
+              Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+      if (scaled != bitmap) {
+        bitmap.recycle();
+        bitmap = scaled;
+      }
+    }
+
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    bitmap.compress(format.compressFormat, format.quality, stream);
+    bitmap.recycle();
+    return stream.toByteArray();
+  }
+
+  /**
+   * @return the largest power of two that keeps both dimensions at or above maxDimension
+   */
+  static int sampleSize(int width, int height, int maxDimension) {
+    int sampleSize = 1;
+    while (width / (sampleSize * 2) >= maxDimension && height / (sampleSize * 2) >= maxDimension) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
+  private static void readThumbnails(ContentResolver contentResolver, List<String> contactIds, LongSparseArray<byte[]> thumbnails) {
+    String[] selectionArgs = new String[contactIds.size() + 1];
+    selectionArgs[0] = Photo.CONTENT_ITEM_TYPE;
+    for (int i = 0; i < contactIds.size(); i++) {
+      selectionArgs[i + 1] = contactIds.get(i);
+    }
+    String selection = ContactsContract.Data.MIMETYPE + " = ? AND "
+            + QueryChunks.in(ContactsContract.Data.CONTACT_ID, contactIds.size());
+
+    Cursor cursor = contentResolver.query(ContactsContract.Data.CONTENT_URI, THUMBNAIL_PROJECTION, selection, selectionArgs, null);
+    if (cursor == null) {
+      return;
+    }
+    try {
+      while (cursor.moveToNext()) {
+        byte[] photo = cursor.getBlob(3);
+        if (photo == null || photo.length == 0) {
+          continue;
+        }
+        long contactId = cursor.getLong(0);
+        // A contact aggregating several raw contacts may have several photos;
+        // the one referenced by PHOTO_ID is the one the contacts app shows.
+        boolean isContactPhoto = !cursor.isNull(2) && cursor.getLong(1) == cursor.getLong(2);
+        if (isContactPhoto || thumbnails.indexOfKey(contactId) < 0) {
+          thumbnails.put(contactId, photo);
+        }
+      }
+    } finally {
+      cursor.close();
+    }
+  }
+}
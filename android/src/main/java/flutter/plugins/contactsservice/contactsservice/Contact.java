@@ -1,58 +1,139 @@
 package flutter.plugins.contactsservice.contactsservice;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 public class Contact implements Comparable<Contact> {
 
-    Contact(String id) {
-        this.identifier = id;
+    /** The id of a contact that is not stored yet, or whose identifier is not a number. */
+    static final long NO_ID = -1;
+
+    /** The avatar of every contact without one, so that none of them allocates its own. */
+    static final byte[] EMPTY_AVATAR = new byte[0];
+
+    Contact(long id) {
+        this.id = id;
+    }
+
+    Contact(String identifier) {
+        this(parseId(identifier));
     }
 
     private Contact() {
+        this(NO_ID);
     }
 
-    String identifier;
+    long id;
     String displayName, givenName, middleName, familyName, prefix, suffix, company, jobTitle, note, birthday, androidAccountType, androidAccountName;
-    ArrayList<Item> emails = new ArrayList<>();
-    ArrayList<Item> phones = new ArrayList<>();
-    ArrayList<PostalAddress> postalAddresses = new ArrayList<>();
-    byte[] avatar = new byte[0];
+    // Shared and empty until the first value is added, as most contacts lack one kind or another.
+    List<Item> emails = Collections.emptyList();
+    List<Item> phones = Collections.emptyList();
+    List<PostalAddress> postalAddresses = Collections.emptyList();
+    byte[] avatar = EMPTY_AVATAR;
+
+    /**
+     * @return the id as sent over the channel, or null if the contact has none
+     */
+    String identifier() {
+        return id != NO_ID ? String.valueOf(id) : null;
+    }
+
+    void addEmail(Item email) {
+        emails = added(emails, email);
+    }
+
+    void addPhone(Item phone) {
+        phones = added(phones, phone);
+    }
+
+    void addPostalAddress(PostalAddress address) {
+        postalAddresses = added(postalAddresses, address);
+    }
+
+    private static <T> List<T> added(List<T> values, T value) {
+        if (values == Collections.<T>emptyList()) {
+            // Few contacts have more than a couple of values of a kind.
+            values = new ArrayList<>(2);
+        }
+        values.add(value);
+        return values;
+    }
+
+    /**
+     * @param identifier a contact id as a number or as the string the channel carries
+     * @return the id, or {@link #NO_ID} if there is none
+     */
+    static long parseId(Object identifier) {
+        if (identifier instanceof Number) {
+            return ((Number) identifier).longValue();
+        }
+        if (identifier instanceof String) {
+            try {
+                return Long.parseLong((String) identifier);
+            } catch (NumberFormatException e) {
+                return NO_ID;
+            }
+        }
+        return NO_ID;
+    }
 
     HashMap<String, Object> toMap() {
+        return toMap(ContactFields.ALL);
+    }
+
+    /**
+     * Leaves out the keys of the {@link ContactFields} that were not requested
+     */
+    HashMap<String, Object> toMap(int fields) {
         HashMap<String, Object> contactMap = new HashMap<>();
-        contactMap.put("identifier", identifier);
+        contactMap.put("identifier", identifier());
         contactMap.put("displayName", displayName);
-        contactMap.put("givenName", givenName);
-        contactMap.put("middleName", middleName);
-        contactMap.put("familyName", familyName);
-        contactMap.put("prefix", prefix);
-        contactMap.put("suffix", suffix);
-        contactMap.put("company", company);
-        contactMap.put("jobTitle", jobTitle);
+        if (ContactFields.has(fields, ContactFields.NAMES)) {
+            contactMap.put("givenName", givenName);
+            contactMap.put("middleName", middleName);
+            contactMap.put("familyName", familyName);
+            contactMap.put("prefix", prefix);
+            contactMap.put("suffix", suffix);
+        }
+        if (ContactFields.has(fields, ContactFields.ORGANIZATION)) {
+            contactMap.put("company", company);
+            contactMap.put("jobTitle", jobTitle);
+        }
         contactMap.put("avatar", avatar);
-        contactMap.put("note", note);
-        contactMap.put("birthday", birthday);
+        if (ContactFields.has(fields, ContactFields.NOTE)) {
+            contactMap.put("note", note);
+        }
+        if (ContactFields.has(fields, ContactFields.BIRTHDAY)) {
+            contactMap.put("birthday", birthday);
+        }
         contactMap.put("androidAccountType", androidAccountType);
         contactMap.put("androidAccountName", androidAccountName);
 
-        ArrayList<HashMap<String, String>> emailsMap = new ArrayList<>();
-        for (Item email : emails) {
-            emailsMap.add(email.toMap());
+        if (ContactFields.has(fields, ContactFields.EMAILS)) {
+            ArrayList<HashMap<String, Object>> emailsMap = new ArrayList<>();
+            for (Item email : emails) {
+                emailsMap.add(email.toMap());
+            }
+            contactMap.put("emails", emailsMap);
         }
-        contactMap.put("emails", emailsMap);
 
-        ArrayList<HashMap<String, String>> phonesMap = new ArrayList<>();
-        for (Item phone : phones) {
-            phonesMap.add(phone.toMap());
+        if (ContactFields.has(fields, ContactFields.PHONES)) {
+            ArrayList<HashMap<String, Object>> phonesMap = new ArrayList<>();
+            for (Item phone : phones) {
+                phonesMap.add(phone.toMap());
+            }
+            contactMap.put("phones", phonesMap);
         }
-        contactMap.put("phones", phonesMap);
 
-        ArrayList<HashMap<String, String>> addressesMap = new ArrayList<>();
-        for (PostalAddress address : postalAddresses) {
-            addressesMap.add(address.toMap());
+        if (ContactFields.has(fields, ContactFields.POSTAL_ADDRESSES)) {
+            ArrayList<HashMap<String, Object>> addressesMap = new ArrayList<>();
+            for (PostalAddress address : postalAddresses) {
+                addressesMap.add(address.toMap());
+            }
+            contactMap.put("postalAddresses", addressesMap);
         }
-        contactMap.put("postalAddresses", addressesMap);
 
         return contactMap;
     }
@@ -60,7 +141,7 @@ public class Contact implements Comparable<Contact> {
     @SuppressWarnings("unchecked")
     static Contact fromMap(HashMap map) {
         Contact contact = new Contact();
-        contact.identifier = (String) map.get("identifier");
+        contact.id = parseId(map.get("identifier"));
         contact.givenName = (String) map.get("givenName");
         contact.middleName = (String) map.get("middleName");
         contact.familyName = (String) map.get("familyName");
@@ -77,19 +158,19 @@ public class Contact implements Comparable<Contact> {
         ArrayList<HashMap> emails = (ArrayList<HashMap>) map.get("emails");
         if (emails != null) {
             for (HashMap email : emails) {
-                contact.emails.add(Item.fromMap(email));
+                contact.addEmail(Item.fromMap(email));
             }
         }
         ArrayList<HashMap> phones = (ArrayList<HashMap>) map.get("phones");
         if (phones != null) {
             for (HashMap phone : phones) {
-                contact.phones.add(Item.fromMap(phone));
+                contact.addPhone(Item.fromMap(phone));
             }
         }
         ArrayList<HashMap> postalAddresses = (ArrayList<HashMap>) map.get("postalAddresses");
         if (postalAddresses != null) {
             for (HashMap postalAddress : postalAddresses) {
-                contact.postalAddresses.add(PostalAddress.fromMap(postalAddress));
+                contact.addPostalAddress(PostalAddress.fromMap(postalAddress));
             }
         }
         return contact;
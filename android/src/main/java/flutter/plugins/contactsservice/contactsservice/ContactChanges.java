@@ -0,0 +1,98 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.ContentResolver;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/***
+ * The contacts added, updated or deleted since a watermark, read from
+ * {@link ContactsContract.Contacts#CONTACT_LAST_UPDATED_TIMESTAMP} and {@link ContactsContract.DeletedContacts}
+ * so that a sync only touches the rows that changed.
+ ***/
+class ContactChanges {
+
+  final ArrayList<Contact> upserts;
+  final ArrayList<String> deletedIds;
+  /** The newest timestamp seen, to pass as the next watermark. */
+  final long watermark;
+
+  ContactChanges(ArrayList<Contact> upserts, ArrayList<String> deletedIds, long watermark) {
+    this.upserts = upserts;
+    this.deletedIds = deletedIds;
+    this.watermark = watermark;
+  }
+
+  static ContactChanges since(ContentResolver contentResolver, Resources resources, long timestamp, boolean localizedLabels) {
+    long watermark = timestamp;
+    String[] selectionArgs = {String.valueOf(timestamp)};
+
+    ArrayList<String> updatedIds = new ArrayList<>();
+    Cursor cursor = contentResolver.query(ContactsContract.Contacts.CONTENT_URI,
+            new String[]{ContactsContract.Contacts._ID, ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP},
+            ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?", selectionArgs, null);
+    if (cursor != null) {
+      try {
+        while (cursor.moveToNext()) {
+          updatedIds.add(cursor.getString(0));
+          watermark = Math.max(watermark, cursor.getLong(1));
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+
+    ArrayList<String> deletedIds = new ArrayList<>();
+    cursor = contentResolver.query(ContactsContract.DeletedContacts.CONTENT_URI,
+            new String[]{ContactsContract.DeletedContacts.CONTACT_ID, ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP},
+            ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP + " > ?", selectionArgs, null);
+    if (cursor != null) {
+      try {
+        while (cursor.moveToNext()) {
+          deletedIds.add(cursor.getString(0));
+          watermark = Math.max(watermark, cursor.getLong(1));
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+
+    ArrayList<Contact> upserts = updatedIds.isEmpty() ? new ArrayList<Contact>()
+            : ContactCursorReader.readContactsByIds(contentResolver, resources, updatedIds, localizedLabels);
+    return new ContactChanges(upserts, deletedIds, watermark);
+  }
+
+  /**
+   * @return the given contacts with deleted ones removed, changed ones replaced in place and new ones appended
+   */
+  ArrayList<Contact> applyTo(List<Contact> contacts) {
+    LinkedHashMap<String, Contact> byId = new LinkedHashMap<>();
+    for (Contact contact : contacts) {
+      byId.put(contact.identifier(), contact);
+    }
+    for (String id : deletedIds) {
+      byId.remove(id);
+    }
+    for (Contact contact : upserts) {
+      byId.put(contact.identifier(), contact);
+    }
+    return new ArrayList<>(byId.values());
+  }
+
+  HashMap<String, Object> toMap() {
+    ArrayList<HashMap> upsertMaps = new ArrayList<>(upserts.size());
+    for (Contact contact : upserts) {
+      upsertMaps.add(contact.toMap());
+    }
+    HashMap<String, Object> result = new HashMap<>();
+    result.put("upserts", upsertMaps);
+    result.put("deletes", deletedIds);
+    result.put("watermark", watermark);
+    return result;
+  }
+}
@@ -0,0 +1,405 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.ContentResolver;
+import android.content.res.Resources;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.provider.ContactsContract;
+import android.text.TextUtils;
+
+import static android.provider.ContactsContract.CommonDataKinds;
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Organization;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/***
+ * Decodes the rows of a {@link ContactsContract.Data} cursor queried with {@link #PROJECTION}.
+ * Column indices are resolved once per cursor and rows are dispatched on their mimetype
+ * through a lookup table instead of a chain of string comparisons.
+ ***/
+class ContactCursorReader {
+
+  static final String[] PROJECTION =
+          {
+                  ContactsContract.Data.CONTACT_ID,
+                  ContactsContract.Profile.DISPLAY_NAME,
+                  ContactsContract.Contacts.Data.MIMETYPE,
+                  ContactsContract.RawContacts.ACCOUNT_TYPE,
+                  ContactsContract.RawContacts.ACCOUNT_NAME,
+                  StructuredName.DISPLAY_NAME,
+                  StructuredName.GIVEN_NAME,
+                  StructuredName.MIDDLE_NAME,
+                  StructuredName.FAMILY_NAME,
+                  StructuredName.PREFIX,
+                  StructuredName.SUFFIX,
+                  CommonDataKinds.Note.NOTE,
+                  Phone.NUMBER,
+                  Phone.TYPE,
+                  Phone.LABEL,
+                  Email.DATA,
+                  Email.ADDRESS,
+                  Email.TYPE,
+                  Email.LABEL,
+                  Organization.COMPANY,
+                  Organization.TITLE,
+                  StructuredPostal.FORMATTED_ADDRESS,
+                  StructuredPostal.TYPE,
+                  StructuredPostal.LABEL,
+                  StructuredPostal.STREET,
+                  StructuredPostal.POBOX,
+                  StructuredPostal.NEIGHBORHOOD,
+                  StructuredPostal.CITY,
+                  StructuredPostal.REGION,
+                  StructuredPostal.POSTCODE,
+                  StructuredPostal.COUNTRY,
+          };
+
+  /** The mimetypes of the rows the reader decodes. */
+  static final String[] MIMETYPES = {
+          StructuredName.CONTENT_ITEM_TYPE,
+          CommonDataKinds.Note.CONTENT_ITEM_TYPE,
+          Phone.CONTENT_ITEM_TYPE,
+          Email.CONTENT_ITEM_TYPE,
+          Organization.CONTENT_ITEM_TYPE,
+          StructuredPostal.CONTENT_ITEM_TYPE,
+          CommonDataKinds.Event.CONTENT_ITEM_TYPE,
+  };
+
+  static final int KIND_UNKNOWN = 0;
+  static final int KIND_NAME = 1;
+  static final int KIND_NOTE = 2;
+  static final int KIND_PHONE = 3;
+  static final int KIND_EMAIL = 4;
+  static final int KIND_ORGANIZATION = 5;
+  static final int KIND_POSTAL = 6;
+  static final int KIND_EVENT = 7;
+
+  private static final HashMap<String, Integer> KINDS = new HashMap<>();
+
+  static {
+    KINDS.put(StructuredName.CONTENT_ITEM_TYPE, KIND_NAME);
+    KINDS.put(CommonDataKinds.Note.CONTENT_ITEM_TYPE, KIND_NOTE);
+    KINDS.put(Phone.CONTENT_ITEM_TYPE, KIND_PHONE);
+    KINDS.put(Email.CONTENT_ITEM_TYPE, KIND_EMAIL);
+    KINDS.put(Organization.CONTENT_ITEM_TYPE, KIND_ORGANIZATION);
+    KINDS.put(StructuredPostal.CONTENT_ITEM_TYPE, KIND_POSTAL);
+    KINDS.put(CommonDataKinds.Event.CONTENT_ITEM_TYPE, KIND_EVENT);
+  }
+
+  private final Resources resources;
+  private final boolean localizedLabels;
+  private final int fields;
+
+  final int contactIdColumn;
+  final int mimeTypeColumn;
+  final int displayNameColumn;
+  final int accountTypeColumn;
+  final int accountNameColumn;
+  final int givenNameColumn;
+  final int middleNameColumn;
+  final int familyNameColumn;
+  final int prefixColumn;
+  final int suffixColumn;
+  final int noteColumn;
+  final int phoneNumberColumn;
+  final int phoneTypeColumn;
+  final int phoneLabelColumn;
+  final int emailAddressColumn;
+  final int emailTypeColumn;
+  final int emailLabelColumn;
+  final int companyColumn;
+  final int jobTitleColumn;
+  final int postalTypeColumn;
+  final int postalLabelColumn;
+  final int streetColumn;
+  final int cityColumn;
+  final int postcodeColumn;
+  final int regionColumn;
+  final int countryColumn;
+  final int eventTypeColumn;
+  final int eventStartDateColumn;
+
+  private boolean started;
+
+  // Labels and accounts repeat across the contacts of a query, so they are read into shared instances.
+  private final StringInterner strings = new StringInterner();
+  private final CharArrayBuffer chars = new CharArrayBuffer(64);
+
+  ContactCursorReader(Cursor cursor, Resources resources, boolean localizedLabels) {
+    this(cursor, resources, localizedLabels, ContactFields.ALL);
+  }
+
+  /**
+   * Reads only the given {@link ContactFields}; the cursor may lack the columns of the others.
+   */
+  ContactCursorReader(Cursor cursor, Resources resources, boolean localizedLabels, int fields) {
+    this.resources = resources;
+    this.localizedLabels = localizedLabels;
+    this.fields = fields;
+
+    contactIdColumn = cursor.getColumnIndex(ContactsContract.Data.CONTACT_ID);
+    mimeTypeColumn = cursor.getColumnIndex(ContactsContract.Data.MIMETYPE);
+    displayNameColumn = cursor.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME);
+    accountTypeColumn = cursor.getColumnIndex(ContactsContract.RawContacts.ACCOUNT_TYPE);
+    accountNameColumn = cursor.getColumnIndex(ContactsContract.RawContacts.ACCOUNT_NAME);
+    givenNameColumn = cursor.getColumnIndex(StructuredName.GIVEN_NAME);
+    middleNameColumn = cursor.getColumnIndex(StructuredName.MIDDLE_NAME);
+    familyNameColumn = cursor.getColumnIndex(StructuredName.FAMILY_NAME);
+    prefixColumn = cursor.getColumnIndex(StructuredName.PREFIX);
+    suffixColumn = cursor.getColumnIndex(StructuredName.SUFFIX);
+    noteColumn = cursor.getColumnIndex(CommonDataKinds.Note.NOTE);
+    phoneNumberColumn = cursor.getColumnIndex(Phone.NUMBER);
+    phoneTypeColumn = cursor.getColumnIndex(Phone.TYPE);
+    phoneLabelColumn = cursor.getColumnIndex(Phone.LABEL);
+    emailAddressColumn = cursor.getColumnIndex(Email.ADDRESS);
+    emailTypeColumn = cursor.getColumnIndex(Email.TYPE);
+    emailLabelColumn = cursor.getColumnIndex(Email.LABEL);
+    companyColumn = cursor.getColumnIndex(Organization.COMPANY);
+    jobTitleColumn = cursor.getColumnIndex(Organization.TITLE);
+    postalTypeColumn = cursor.getColumnIndex(StructuredPostal.TYPE);
+    postalLabelColumn = cursor.getColumnIndex(StructuredPostal.LABEL);
+    streetColumn = cursor.getColumnIndex(StructuredPostal.STREET);
+    cityColumn = cursor.getColumnIndex(StructuredPostal.CITY);
+    postcodeColumn = cursor.getColumnIndex(StructuredPostal.POSTCODE);
+    regionColumn = cursor.getColumnIndex(StructuredPostal.REGION);
+    countryColumn = cursor.getColumnIndex(StructuredPostal.COUNTRY);
+    eventTypeColumn = cursor.getColumnIndex(CommonDataKinds.Event.TYPE);
+    eventStartDateColumn = cursor.getColumnIndex(CommonDataKinds.Event.START_DATE);
+  }
+
+  static int kindOf(String mimeType) {
+    Integer kind = mimeType != null ? KINDS.get(mimeType) : null;
+    return kind != null ? kind : KIND_UNKNOWN;
+  }
+
+  long contactId(Cursor cursor) {
+    return cursor.getLong(contactIdColumn);
+  }
+
+  /**
+   * Creates the contact for the current row, filling in the fields shared by all of its rows
+   */
+  Contact newContact(Cursor cursor, long contactId) {
+    Contact contact = new Contact(contactId);
+    contact.displayName = cursor.getString(displayNameColumn);
+    contact.androidAccountType = internedString(cursor, accountTypeColumn);
+    contact.androidAccountName = internedString(cursor, accountNameColumn);
+    return contact;
+  }
+
+  /**
+   * @return the column's value, without reading it into a new String if it was seen before
+   */
+  private String internedString(Cursor cursor, int column) {
+    if (cursor.isNull(column)) {
+      return null;
+    }
+    cursor.copyStringToBuffer(column, chars);
+    return strings.intern(chars.data, chars.sizeCopied);
+  }
+
+  /**
+   * Decodes the data held by the current row into the given contact
+   */
+  void readRow(Cursor cursor, Contact contact) {
+    int kind = kindOf(cursor.getString(mimeTypeColumn));
+    if (!ContactFields.has(fields, ContactFields.ofKind(kind))) {
+      return;
+    }
+    switch (kind) {
+      case KIND_NAME:
+        contact.givenName = cursor.getString(givenNameColumn);
+        contact.middleName = cursor.getString(middleNameColumn);
+        contact.familyName = cursor.getString(familyNameColumn);
+        contact.prefix = cursor.getString(prefixColumn);
+        contact.suffix = cursor.getString(suffixColumn);
+        break;
+      case KIND_NOTE:
+        contact.note = cursor.getString(noteColumn);
+        break;
+      case KIND_PHONE: {
+        String phoneNumber = cursor.getString(phoneNumberColumn);
+        if (!TextUtils.isEmpty(phoneNumber)) {
+          int type = cursor.getInt(phoneTypeColumn);
+          String customLabel = type == Phone.TYPE_CUSTOM ? cursor.getString(phoneLabelColumn) : null;
+          String label = strings.intern(Item.getPhoneLabel(resources, type, customLabel, localizedLabels));
+          contact.addPhone(new Item(label, phoneNumber, type));
+        }
+        break;
+      }
+      case KIND_EMAIL: {
+        String email = cursor.getString(emailAddressColumn);
+        int type = cursor.getInt(emailTypeColumn);
+        if (!TextUtils.isEmpty(email)) {
+          String customLabel = type == Email.TYPE_CUSTOM ? cursor.getString(emailLabelColumn) : null;
+          String label = strings.intern(Item.getEmailLabel(resources, type, customLabel, localizedLabels));
+          contact.addEmail(new Item(label, email, type));
+        }
+        break;
+      }
+      case KIND_ORGANIZATION:
+        contact.company = cursor.getString(companyColumn);
+        contact.jobTitle = cursor.getString(jobTitleColumn);
+        break;
+      case KIND_POSTAL: {
+        int type = cursor.getInt(postalTypeColumn);
+        String customLabel = type == StructuredPostal.TYPE_CUSTOM ? cursor.getString(postalLabelColumn) : null;
+        String label = strings.intern(PostalAddress.getLabel(resources, type, customLabel, localizedLabels));
+        String street = cursor.getString(streetColumn);
+        String city = cursor.getString(cityColumn);
+        String postcode = cursor.getString(postcodeColumn);
+        String region = cursor.getString(regionColumn);
+        String country = cursor.getString(countryColumn);
+        contact.addPostalAddress(new PostalAddress(label, street, city, postcode, region, country, type));
+        break;
+      }
+      case KIND_EVENT:
+        if (cursor.getInt(eventTypeColumn) == CommonDataKinds.Event.TYPE_BIRTHDAY) {
+          contact.birthday = cursor.getString(eventStartDateColumn);
+        }
+        break;
+    }
+  }
+
+  /**
+   * Assembles the next contact from a cursor sorted by {@link ContactsContract.Data#CONTACT_ID},
+   * leaving the cursor on the first row of the contact after it.
+   * @return the contact, or null once the cursor is exhausted
+   */
+  Contact readNextContact(Cursor cursor) {
+    if (!started) {
+      started = true;
+      if (!cursor.moveToNext()) {
+        return null;
+      }
+    } else if (cursor.isAfterLast()) {
+      return null;
+    }
+
+    long contactId = cursor.getLong(contactIdColumn);
+    Contact contact = newContact(cursor, contactId);
+    do {
+      readRow(cursor, contact);
+    } while (cursor.moveToNext() && cursor.getLong(contactIdColumn) == contactId);
+    return contact;
+  }
+
+  /**
+   * Builds the list of contacts from a cursor sorted by {@link ContactsContract.Data#CONTACT_ID}
+   * in a single pass, and closes it
+   * @param cursor
+   * @return the list of contacts
+   */
+  static ArrayList<Contact> readOrderedContacts(Cursor cursor, Resources resources, boolean localizedLabels) {
+    return readOrderedContacts(cursor, resources, localizedLabels, ContactFields.ALL, null);
+  }
+
+  /**
+   * Same as {@link #readOrderedContacts(Cursor, Resources, boolean)}, but only reads the given
+   * {@link ContactFields} and stops with an {@link android.os.OperationCanceledException} as soon
+   * as {@code cancellationSignal} is cancelled
+   */
+  static ArrayList<Contact> readOrderedContacts(Cursor cursor, Resources resources, boolean localizedLabels, int fields, CancellationSignal cancellationSignal) {
+    ArrayList<Contact> contacts = new ArrayList<>();
+    if (cursor == null) {
+      return contacts;
+    }
+
+    try {
+      ContactCursorReader reader = new ContactCursorReader(cursor, resources, localizedLabels, fields);
+      Contact contact;
+      while ((contact = reader.readNextContact(cursor)) != null) {
+        if (cancellationSignal != null) {
+          cancellationSignal.throwIfCanceled();
+        }
+        contacts.add(contact);
+      }
+    } finally {
+      cursor.close();
+    }
+    return contacts;
+  }
+
+  /**
+   * Loads the given contacts with chunked CONTACT_ID IN (...) queries
+   * @return the contacts found, in ascending contact id order within each chunk
+   */
+  static ArrayList<Contact> readContactsByIds(ContentResolver contentResolver, Resources resources, List<String> ids, boolean localizedLabels) {
+    return readContactsByIds(contentResolver, resources, ids, localizedLabels, null);
+  }
+
+  /**
+   * Same as {@link #readContactsByIds(ContentResolver, Resources, List, boolean)}, but stops with
+   * an {@link android.os.OperationCanceledException} as soon as {@code cancellationSignal} is
+   * cancelled, between chunks as well as within their queries
+   */
+  static ArrayList<Contact> readContactsByIds(ContentResolver contentResolver, Resources resources, List<String> ids, boolean localizedLabels, CancellationSignal cancellationSignal) {
+    ArrayList<Contact> contacts = new ArrayList<>(ids.size());
+    for (List<String> chunk : QueryChunks.split(ids)) {
+      String selection = QueryChunks.in(ContactsContract.Data.MIMETYPE, MIMETYPES.length)
+              + " AND " + QueryChunks.in(ContactsContract.Data.CONTACT_ID, chunk.size());
+      String[] selectionArgs = new String[MIMETYPES.length + chunk.size()];
+      System.arraycopy(MIMETYPES, 0, selectionArgs, 0, MIMETYPES.length);
+      for (int i = 0; i < chunk.size(); i++) {
+        selectionArgs[MIMETYPES.length + i] = chunk.get(i);
+      }
+      Cursor cursor = contentResolver.query(ContactsContract.Data.CONTENT_URI, PROJECTION, selection, selectionArgs,
+              ContactsContract.Data.CONTACT_ID, cancellationSignal);
+      contacts.addAll(readOrderedContacts(cursor, resources, localizedLabels, ContactFields.ALL, cancellationSignal));
+    }
+    return contacts;
+  }
+
+  /**
+   * Lines the contacts up with the identifiers they were requested by
+   * @return one entry per identifier, null where no contact was found
+   */
+  static ArrayList<Contact> inRequestedOrder(List<String> ids, List<Contact> contacts) {
+    HashMap<String, Contact> byId = new HashMap<>(contacts.size() * 2);
+    for (Contact contact : contacts) {
+      byId.put(contact.identifier(), contact);
+    }
+    ArrayList<Contact> ordered = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      ordered.add(byId.get(id));
+    }
+    return ordered;
+  }
+
+  /**
+   * Builds the list of contacts from an unsorted cursor, in the order their first row appears, and closes it
+   * @param cursor
+   * @return the list of contacts
+   */
+  static ArrayList<Contact> readContacts(Cursor cursor, Resources resources, boolean localizedLabels) {
+    HashMap<Long, Contact> map = new LinkedHashMap<>();
+    if (cursor == null) {
+      return new ArrayList<>();
+    }
+
+    try {
+      ContactCursorReader reader = new ContactCursorReader(cursor, resources, localizedLabels);
+      while (cursor.moveToNext()) {
+        long contactId = reader.contactId(cursor);
+        Contact contact = map.get(contactId);
+        if (contact == null) {
+          contact = reader.newContact(cursor, contactId);
+          map.put(contactId, contact);
+        }
+        reader.readRow(cursor, contact);
+      }
+    } finally {
+      cursor.close();
+    }
+
+    return new ArrayList<>(map.values());
+  }
+}
@@ -0,0 +1,165 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.provider.ContactsContract;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static android.provider.ContactsContract.CommonDataKinds;
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Organization;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+
+/***
+ * The groups of contact fields a caller can ask for, as a bit mask. Each group maps to one
+ * mimetype of {@link ContactsContract.Data} rows, so asking for fewer groups narrows the rows
+ * scanned, the columns read and the keys sent over the channel. The identifier, display name,
+ * account and avatar are always included.
+ ***/
+final class ContactFields {
+
+  static final int NAMES = 1;
+  static final int PHONES = 1 << 1;
+  static final int EMAILS = 1 << 2;
+  static final int POSTAL_ADDRESSES = 1 << 3;
+  static final int ORGANIZATION = 1 << 4;
+  static final int NOTE = 1 << 5;
+  static final int BIRTHDAY = 1 << 6;
+  static final int ALL = NAMES | PHONES | EMAILS | POSTAL_ADDRESSES | ORGANIZATION | NOTE | BIRTHDAY;
+
+  private static final String[] BASE_COLUMNS = {
+          ContactsContract.Data.CONTACT_ID,
+          ContactsContract.Contacts.DISPLAY_NAME,
+          ContactsContract.Data.MIMETYPE,
+          ContactsContract.RawContacts.ACCOUNT_TYPE,
+          ContactsContract.RawContacts.ACCOUNT_NAME,
+  };
+
+  private ContactFields() {
+  }
+
+  /**
+   * @param names the Dart names of the requested groups, or null for all of them
+   * @throws IllegalArgumentException when no group or an unknown one is named, since the rows
+   * are selected by the mimetypes of the requested groups
+   */
+  static int fromNames(List<String> names) {
+    if (names == null) {
+      return ALL;
+    }
+    if (names.isEmpty()) {
+      throw new IllegalArgumentException("fields must contain at least one field, or be null for all of them");
+    }
+    int fields = 0;
+    for (String name : names) {
+      fields |= fromName(name);
+    }
+    return fields;
+  }
+
+  private static int fromName(String name) {
+    switch (name) {
+      case "names": return NAMES;
+      case "phones": return PHONES;
+      case "emails": return EMAILS;
+      case "postalAddresses": return POSTAL_ADDRESSES;
+      case "organization": return ORGANIZATION;
+      case "note": return NOTE;
+      case "birthday": return BIRTHDAY;
+      default: throw new IllegalArgumentException("Unknown contact field " + name);
+    }
+  }
+
+  static boolean has(int fields, int field) {
+    return (fields & field) != 0;
+  }
+
+  /**
+   * @return the field group read from rows of the given {@link ContactCursorReader} kind
+   */
+  static int ofKind(int kind) {
+    switch (kind) {
+      case ContactCursorReader.KIND_NAME: return NAMES;
+      case ContactCursorReader.KIND_NOTE: return NOTE;
+      case ContactCursorReader.KIND_PHONE: return PHONES;
+      case ContactCursorReader.KIND_EMAIL: return EMAILS;
+      case ContactCursorReader.KIND_ORGANIZATION: return ORGANIZATION;
+      case ContactCursorReader.KIND_POSTAL: return POSTAL_ADDRESSES;
+      case ContactCursorReader.KIND_EVENT: return BIRTHDAY;
+      default: return 0;
+    }
+  }
+
+  /**
+   * @return the mimetypes of the rows holding the requested fields
+   */
+  static String[] mimeTypes(int fields) {
+    if (fields == ALL) {
+      return ContactCursorReader.MIMETYPES;
+    }
+    ArrayList<String> mimeTypes = new ArrayList<>();
+    if (has(fields, NAMES)) mimeTypes.add(StructuredName.CONTENT_ITEM_TYPE);
+    if (has(fields, NOTE)) mimeTypes.add(CommonDataKinds.Note.CONTENT_ITEM_TYPE);
+    if (has(fields, PHONES)) mimeTypes.add(Phone.CONTENT_ITEM_TYPE);
+    if (has(fields, EMAILS)) mimeTypes.add(Email.CONTENT_ITEM_TYPE);
+    if (has(fields, ORGANIZATION)) mimeTypes.add(Organization.CONTENT_ITEM_TYPE);
+    if (has(fields, POSTAL_ADDRESSES)) mimeTypes.add(StructuredPostal.CONTENT_ITEM_TYPE);
+    if (has(fields, BIRTHDAY)) mimeTypes.add(CommonDataKinds.Event.CONTENT_ITEM_TYPE);
+    return mimeTypes.toArray(new String[0]);
+  }
+
+  /**
+   * @return the Data columns {@link ContactCursorReader} needs for the requested fields
+   */
+  static String[] projection(int fields) {
+    if (fields == ALL) {
+      return ContactCursorReader.PROJECTION;
+    }
+    // Different kinds share the generic data columns, e.g. data1 is both a number and an address.
+    LinkedHashSet<String> columns = new LinkedHashSet<>();
+    for (String column : BASE_COLUMNS) {
+      columns.add(column);
+    }
+    if (has(fields, NAMES)) {
+      columns.add(StructuredName.GIVEN_NAME);
+      columns.add(StructuredName.MIDDLE_NAME);
+      columns.add(StructuredName.FAMILY_NAME);
+      columns.add(StructuredName.PREFIX);
+      columns.add(StructuredName.SUFFIX);
+    }
+    if (has(fields, NOTE)) {
+      columns.add(CommonDataKinds.Note.NOTE);
+    }
+    if (has(fields, PHONES)) {
+      columns.add(Phone.NUMBER);
+      columns.add(Phone.TYPE);
+      columns.add(Phone.LABEL);
+    }
+    if (has(fields, EMAILS)) {
+      columns.add(Email.ADDRESS);
+      columns.add(Email.TYPE);
+      columns.add(Email.LABEL);
+    }
+    if (has(fields, ORGANIZATION)) {
+      columns.add(Organization.COMPANY);
+      columns.add(Organization.TITLE);
+    }
+    if (has(fields, POSTAL_ADDRESSES)) {
+      columns.add(StructuredPostal.TYPE);
+      columns.add(StructuredPostal.LABEL);
+      columns.add(StructuredPostal.STREET);
+      columns.add(StructuredPostal.CITY);
+      columns.add(StructuredPostal.REGION);
+      columns.add(StructuredPostal.POSTCODE);
+      columns.add(StructuredPostal.COUNTRY);
+    }
+    if (has(fields, BIRTHDAY)) {
+      columns.add(CommonDataKinds.Event.TYPE);
+      columns.add(CommonDataKinds.Event.START_DATE);
+    }
+    return columns.toArray(new String[0]);
+  }
+}
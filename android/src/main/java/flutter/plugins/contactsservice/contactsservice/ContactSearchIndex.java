@@ -0,0 +1,378 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/***
+ * In-memory inverted index from the words of each contact's names, company, job title, emails and
+ * phone numbers to the contacts, for searching on any of them at once. A search matches the
+ * contacts that have, for every word of the query, a word starting with it, so "jo smi" finds
+ * "John Smith" and "smith" finds him too. Words are compared ignoring case and accents. Results
+ * are ranked by where the words matched, names first, then by whether they matched whole words.
+ *
+ * Contacts are numbered internally, so that the postings of a word are packed ints and a search
+ * scores into plain arrays. Only the first query word is looked up in the word tree; the contacts
+ * it matched are then checked against the other words directly, longest query words first since
+ * they match the fewest contacts.
+ *
+ * The index is filled from a full read and then kept current with {@link #apply(ContactChanges)}.
+ * All methods are synchronized, so searches may run while changes are applied.
+ ***/
+final class ContactSearchIndex {
+
+  static final int NAME_WEIGHT = 4;
+  static final int ORGANIZATION_WEIGHT = 3;
+  static final int EMAIL_WEIGHT = 2;
+  static final int PHONE_WEIGHT = 2;
+
+  // A posting is the contact's number shifted left by this, with the field weight in the low bits.
+  private static final int WEIGHT_BITS = 3;
+  private static final int WEIGHT_MASK = (1 << WEIGHT_BITS) - 1;
+
+  /** The contacts that have a word, as packed postings in no particular order. */
+  private static final class Postings {
+    int[] entries = new int[2];
+    int size;
+
+    void add(int entry) {
+      if (size == entries.length) {
+        entries = Arrays.copyOf(entries, size * 2);
+      }
+      entries[size++] = entry;
+    }
+
+    void remove(int ordinal) {
+      for (int i = 0; i < size; i++) {
+        if (entries[i] >>> WEIGHT_BITS == ordinal) {
+          entries[i] = entries[--size];
+          return;
+        }
+      }
+    }
+  }
+
+  private final boolean localizedLabels;
+  private long watermark;
+
+  private final HashMap<String, Integer> ordinals = new HashMap<>();
+  private final ArrayList<Integer> freeOrdinals = new ArrayList<>();
+  private Contact[] contacts = new Contact[64];
+  // The words of each contact and the weight of the field each was found in, to check and unindex it.
+  private String[][] words = new String[64][];
+  private int[][] weights = new int[64][];
+  // Sorted, so that the words starting with a prefix are one contiguous range.
+  private final TreeMap<String, Postings> contactsByWord = new TreeMap<>();
+
+  // Scratch space for searches, indexed by contact number.
+  private int[] scores = new int[64];
+  private int[] matched = new int[64];
+  private int searches;
+
+  /**
+   * @param watermark the newest contact update included in the contacts that will be added
+   */
+  ContactSearchIndex(boolean localizedLabels, long watermark) {
+    this.localizedLabels = localizedLabels;
+    this.watermark = watermark;
+  }
+
+  boolean localizedLabels() {
+    return localizedLabels;
+  }
+
+  synchronized long watermark() {
+    return watermark;
+  }
+
+  synchronized int size() {
+    return ordinals.size();
+  }
+
+  synchronized void addAll(List<Contact> contacts) {
+    for (Contact contact : contacts) {
+      put(contact);
+    }
+  }
+
+  /**
+   * Replaces the changed contacts, removes the deleted ones and moves the watermark forward
+   */
+  synchronized void apply(ContactChanges changes) {
+    for (String id : changes.deletedIds) {
+      remove(id);
+    }
+    for (Contact contact : changes.upserts) {
+      put(contact);
+    }
+    watermark = Math.max(watermark, changes.watermark);
+  }
+
+  private void put(Contact contact) {
+    remove(contact.identifier());
+    ContactWords contactWords = new ContactWords();
+    contactWords.addAll(contact.displayName, NAME_WEIGHT);
+    contactWords.addAll(contact.givenName, NAME_WEIGHT);
+    contactWords.addAll(contact.middleName, NAME_WEIGHT);
+    contactWords.addAll(contact.familyName, NAME_WEIGHT);
+    contactWords.addAll(contact.company, ORGANIZATION_WEIGHT);
+    contactWords.addAll(contact.jobTitle, ORGANIZATION_WEIGHT);
+    for (Item email : contact.emails) {
+      contactWords.addAll(email.value, EMAIL_WEIGHT);
+    }
+    for (Item phone : contact.phones) {
+      contactWords.addPhone(phone.value, PHONE_WEIGHT);
+    }
+
+    int ordinal = freeOrdinals.isEmpty() ? ordinals.size() : freeOrdinals.remove(freeOrdinals.size() - 1);
+    if (ordinal == this.contacts.length) {
+      int capacity = ordinal * 2;
+      this.contacts = Arrays.copyOf(this.contacts, capacity);
+      words = Arrays.copyOf(words, capacity);
+      weights = Arrays.copyOf(weights, capacity);
+      scores = new int[capacity];
+      matched = new int[capacity];
+    }
+    ordinals.put(contact.identifier(), ordinal);
+    this.contacts[ordinal] = contact;
+    words[ordinal] = contactWords.words.keySet().toArray(new String[0]);
+    weights[ordinal] = new int[words[ordinal].length];
+    for (int i = 0; i < words[ordinal].length; i++) {
+      String word = words[ordinal][i];
+      int weight = contactWords.words.get(word);
+      weights[ordinal][i] = weight;
+      Postings postings = contactsByWord.get(word);
+      if (postings == null) {
+        postings = new Postings();
+        contactsByWord.put(word, postings);
+      }
+      postings.add(ordinal << WEIGHT_BITS | weight);
+    }
+  }
+
+  private void remove(String id) {
+    Integer ordinal = ordinals.remove(id);
+    if (ordinal == null) {
+      return;
+    }
+    for (String word : words[ordinal]) {
+      Postings postings = contactsByWord.get(word);
+      postings.remove(ordinal);
+      if (postings.size == 0) {
+        contactsByWord.remove(word);
+      }
+    }
+    contacts[ordinal] = null;
+    words[ordinal] = null;
+    weights[ordinal] = null;
+    freeOrdinals.add(ordinal);
+  }
+
+  /** A contact's distinct words, each with the highest weight of the fields it was found in. */
+  private static final class ContactWords {
+    final HashMap<String, Integer> words = new HashMap<>();
+
+    void addAll(String text, int weight) {
+      for (String word : tokenize(text)) {
+        add(word, weight);
+      }
+    }
+
+    /**
+     * Adds the number's digits, the digits after each of its separators and its last
+     * {@link PhoneIndex#MIN_MATCH} digits, so that "+1 555 1234" is found by "+1 555", "555 12"
+     * and "1234", and "+14155551234" by its local number "5551234".
+     */
+    void addPhone(String number, int weight) {
+      if (number == null) {
+        return;
+      }
+      String digits = PhoneIndex.digitsOf(number);
+      add(digits, weight);
+      add(PhoneIndex.key(digits), weight);
+      int digitCount = 0;
+      for (int i = 0; i < number.length(); i++) {
+        char c = number.charAt(i);
+        if (c < '0' || c > '9') {
+          continue;
+        }
+        char previous = i > 0 ? number.charAt(i - 1) : '0';
+        if (digitCount > 0 && (previous < '0' || previous > '9')) {
+          add(digits.substring(digitCount), weight);
+        }
+        digitCount++;
+      }
+    }
+
+    void add(String word, int weight) {
+      if (word.isEmpty()) {
+        return;
+      }
+      Integer known = words.get(word);
+      if (known == null || known < weight) {
+        words.put(word, weight);
+      }
+    }
+  }
+
+  /**
+   * @return the contacts matching every word of the query, best first, at most {@code limit} of them
+   */
+  synchronized ArrayList<Contact> search(String query, int limit) {
+    List<String> queryWords = isPhoneNumber(query)
+            ? Collections.singletonList(PhoneIndex.digitsOf(query)) : tokenize(query);
+    if (queryWords.isEmpty() || queryWords.get(0).isEmpty() || limit <= 0) {
+      return new ArrayList<>();
+    }
+    String[] byLength = queryWords.toArray(new String[0]);
+    Arrays.sort(byLength, new Comparator<String>() {
+      @Override
+      public int compare(String a, String b) {
+        return b.length() - a.length();
+      }
+    });
+
+    // Marks the contacts scored by this search, so the scratch arrays need no clearing.
+    int mark = ++searches;
+    int[] candidates = new int[16];
+    int candidateCount = 0;
+    for (Map.Entry<String, Postings> match : contactsByWord.subMap(byLength[0], byLength[0] + Character.MAX_VALUE).entrySet()) {
+      boolean whole = match.getKey().length() == byLength[0].length();
+      Postings postings = match.getValue();
+      for (int i = 0; i < postings.size; i++) {
+        int ordinal = postings.entries[i] >>> WEIGHT_BITS;
+        int score = score(postings.entries[i] & WEIGHT_MASK, whole);
+        if (matched[ordinal] != mark) {
+          matched[ordinal] = mark;
+          scores[ordinal] = score;
+          if (candidateCount == candidates.length) {
+            candidates = Arrays.copyOf(candidates, candidateCount * 2);
+          }
+          candidates[candidateCount++] = ordinal;
+        } else if (score > scores[ordinal]) {
+          scores[ordinal] = score;
+        }
+      }
+    }
+
+    for (int w = 1; w < byLength.length && candidateCount > 0; w++) {
+      int kept = 0;
+      for (int c = 0; c < candidateCount; c++) {
+        int ordinal = candidates[c];
+        int best = bestScore(ordinal, byLength[w]);
+        if (best > 0) {
+          scores[ordinal] += best;
+          candidates[kept++] = ordinal;
+        }
+      }
+      candidateCount = kept;
+    }
+
+    return top(candidates, candidateCount, limit);
+  }
+
+  /**
+   * @return the score of the contact's best word starting with the query word, 0 if it has none
+   */
+  private int bestScore(int ordinal, String queryWord) {
+    int best = 0;
+    String[] contactWords = words[ordinal];
+    for (int i = 0; i < contactWords.length; i++) {
+      if (contactWords[i].startsWith(queryWord)) {
+        best = Math.max(best, score(weights[ordinal][i], contactWords[i].length() == queryWord.length()));
+      }
+    }
+    return best;
+  }
+
+  private static int score(int weight, boolean whole) {
+    // The field decides first; a whole word only wins over a prefix in the same kind of field.
+    return weight * 2 + (whole ? 1 : 0);
+  }
+
+  /**
+   * @return the best scored candidates, earlier contacts first among equal scores
+   */
+  private ArrayList<Contact> top(int[] candidates, int count, int limit) {
+    // Insertion into a short sorted array; most candidates fall below the last place and are skipped.
+    int[] best = new int[Math.min(limit, count)];
+    int size = 0;
+    for (int c = 0; c < count; c++) {
+      int ordinal = candidates[c];
+      if (size == best.length && !ranksBefore(ordinal, best[size - 1])) {
+        continue;
+      }
+      int i = size == best.length ? size - 1 : size++;
+      while (i > 0 && ranksBefore(ordinal, best[i - 1])) {
+        best[i] = best[i - 1];
+        i--;
+      }
+      best[i] = ordinal;
+    }
+    ArrayList<Contact> results = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      results.add(contacts[best[i]]);
+    }
+    return results;
+  }
+
+  private boolean ranksBefore(int a, int b) {
+    return scores[a] > scores[b] || (scores[a] == scores[b] && a < b);
+  }
+
+  /**
+   * @return whether the query only has digits and the characters numbers are formatted with, so that
+   * "+1 415-555" is searched as the digits "1415555" rather than as three words
+   */
+  static boolean isPhoneNumber(String query) {
+    if (query == null) {
+      return false;
+    }
+    boolean hasDigit = false;
+    for (int i = 0; i < query.length(); i++) {
+      char c = query.charAt(i);
+      if (c >= '0' && c <= '9') {
+        hasDigit = true;
+      } else if ("+-(). ".indexOf(c) < 0) {
+        return false;
+      }
+    }
+    return hasDigit;
+  }
+
+  /**
+   * @return the lower case words of the text without accents, e.g. "ada", "lovelace", "example",
+   * "com" for "Ada.Lovelace@Example.com"
+   */
+  static List<String> tokenize(String text) {
+    ArrayList<String> words = new ArrayList<>();
+    if (text == null || text.isEmpty()) {
+      return words;
+    }
+    String folded = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+    StringBuilder word = new StringBuilder();
+    for (int i = 0; i < folded.length(); i++) {
+      char c = folded.charAt(i);
+      if (Character.getType(c) == Character.NON_SPACING_MARK) {
+        continue;
+      }
+      if (Character.isLetterOrDigit(c)) {
+        word.append(c);
+      } else if (word.length() > 0) {
+        words.add(word.toString());
+        word.setLength(0);
+      }
+    }
+    if (word.length() > 0) {
+      words.add(word.toString());
+    }
+    return words;
+  }
+}
@@ -0,0 +1,274 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/***
+ * Keeps the last assembled contact list in a compact binary file, so that getContacts can answer
+ * from it right away on cold start and check the provider for changes in the background.
+ ***/
+class ContactSnapshotStore {
+
+  private static final String LOG_TAG = "flutter_contacts";
+  private static final int MAGIC = 0x46434e53;
+  private static final int VERSION = 3;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * The state of the address book a snapshot was taken at: the number of contacts and the
+   * newest {@link ContactsContract.Contacts#CONTACT_LAST_UPDATED_TIMESTAMP}, and when it was read.
+   */
+  static class Watermark {
+    final int contactCount;
+    final long lastUpdatedTimestamp;
+    // Wall clock time, unlike lastUpdatedTimestamp which only moves when a contact is edited.
+    final long takenAt;
+
+    Watermark(int contactCount, long lastUpdatedTimestamp, long takenAt) {
+      this.contactCount = contactCount;
+      this.lastUpdatedTimestamp = lastUpdatedTimestamp;
+      this.takenAt = takenAt;
+    }
+
+    boolean matches(Watermark other) {
+      return other != null && contactCount == other.contactCount && lastUpdatedTimestamp == other.lastUpdatedTimestamp;
+    }
+
+    /**
+     * @return whether every contact deleted since this was taken is still in
+     * {@link ContactsContract.DeletedContacts}, which only keeps them for a limited time
+     */
+    boolean deletionsLoggedAt(long now) {
+      return now - takenAt <= ContactsContract.DeletedContacts.DAYS_KEPT_MILLISECONDS;
+    }
+  }
+
+  static class Snapshot {
+    final Watermark watermark;
+    final boolean localizedLabels;
+    final ArrayList<Contact> contacts;
+
+    Snapshot(Watermark watermark, boolean localizedLabels, ArrayList<Contact> contacts) {
+      this.watermark = watermark;
+      this.localizedLabels = localizedLabels;
+      this.contacts = contacts;
+    }
+  }
+
+  private final File file;
+
+  ContactSnapshotStore(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Reads the current watermark from the aggregate contacts table, without touching the Data rows
+   */
+  static Watermark currentWatermark(ContentResolver contentResolver) {
+    long takenAt = System.currentTimeMillis();
+    Cursor cursor = contentResolver.query(ContactsContract.Contacts.CONTENT_URI,
+            new String[]{ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP}, null, null,
+            ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + " DESC");
+    if (cursor == null) {
+      return null;
+    }
+    try {
+      long lastUpdated = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+      return new Watermark(cursor.getCount(), lastUpdated, takenAt);
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * @return the stored snapshot, or null if there is none or it cannot be read
+   */
+  synchronized Snapshot read() {
+    if (!file.exists()) {
+      return null;
+    }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      boolean localizedLabels = in.readBoolean();
+      Watermark watermark = new Watermark(in.readInt(), in.readLong(), in.readLong());
+      int count = in.readInt();
+      ArrayList<Contact> contacts = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        contacts.add(readContact(in));
+      }
+      return new Snapshot(watermark, localizedLabels, contacts);
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "Could not read the contacts snapshot", e);
+      return null;
+    } finally {
+      closeQuietly(in);
+    }
+  }
+
+  /**
+   * Replaces the stored snapshot. Avatars are not stored.
+   */
+  synchronized void write(List<Contact> contacts, Watermark watermark, boolean localizedLabels) {
+    File temp = new File(file.getPath() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeBoolean(localizedLabels);
+      out.writeInt(watermark.contactCount);
+      out.writeLong(watermark.lastUpdatedTimestamp);
+      out.writeLong(watermark.takenAt);
+      out.writeInt(contacts.size());
+      for (Contact contact : contacts) {
+        writeContact(out, contact);
+      }
+      out.close();
+      out = null;
+      if (!temp.renameTo(file)) {
+        Log.e(LOG_TAG, "Could not replace the contacts snapshot");
+        temp.delete();
+      }
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "Could not write the contacts snapshot", e);
+      closeQuietly(out);
+      temp.delete();
+    }
+  }
+
+  synchronized void delete() {
+    file.delete();
+  }
+
+  private static void writeContact(DataOutputStream out, Contact contact) throws IOException {
+    out.writeLong(contact.id);
+    writeString(out, contact.displayName);
+    writeString(out, contact.givenName);
+    writeString(out, contact.middleName);
+    writeString(out, contact.familyName);
+    writeString(out, contact.prefix);
+    writeString(out, contact.suffix);
+    writeString(out, contact.company);
+    writeString(out, contact.jobTitle);
+    writeString(out, contact.note);
+    writeString(out, contact.birthday);
+    writeString(out, contact.androidAccountType);
+    writeString(out, contact.androidAccountName);
+
+    writeItems(out, contact.emails);
+    writeItems(out, contact.phones);
+    out.writeInt(contact.postalAddresses.size());
+    for (PostalAddress address : contact.postalAddresses) {
+      writeString(out, address.label);
+      writeString(out, address.street);
+      writeString(out, address.city);
+      writeString(out, address.postcode);
+      writeString(out, address.region);
+      writeString(out, address.country);
+      out.writeInt(address.type);
+    }
+  }
+
+  private static Contact readContact(DataInputStream in) throws IOException {
+    Contact contact = new Contact(in.readLong());
+    contact.displayName = readString(in);
+    contact.givenName = readString(in);
+    contact.middleName = readString(in);
+    contact.familyName = readString(in);
+    contact.prefix = readString(in);
+    contact.suffix = readString(in);
+    contact.company = readString(in);
+    contact.jobTitle = readString(in);
+    contact.note = readString(in);
+    contact.birthday = readString(in);
+    contact.androidAccountType = readString(in);
+    contact.androidAccountName = readString(in);
+
+    contact.emails = readItems(in);
+    contact.phones = readItems(in);
+    int addressCount = in.readInt();
+    for (int i = 0; i < addressCount; i++) {
+      String label = readString(in);
+      String street = readString(in);
+      String city = readString(in);
+      String postcode = readString(in);
+      String region = readString(in);
+      String country = readString(in);
+      contact.addPostalAddress(new PostalAddress(label, street, city, postcode, region, country, in.readInt()));
+    }
+    return contact;
+  }
+
+  private static void writeItems(DataOutputStream out, List<Item> items) throws IOException {
+    out.writeInt(items.size());
+    for (Item item : items) {
+      writeString(out, item.label);
+      writeString(out, item.value);
+      out.writeInt(item.type);
+    }
+  }
+
+  private static List<Item> readItems(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    if (count == 0) {
+      return Collections.emptyList();
+    }
+    List<Item> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String label = readString(in);
+      String value = readString(in);
+      items.add(new Item(label, value, in.readInt()));
+    }
+    return items;
+  }
+
+  // writeUTF is limited to 64KB, which a note can exceed, and has no null.
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.provider.ContactsContract;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/***
+ * Orders contacts either in the query, with the provider's locale-aware sort keys, or in memory
+ * with one precomputed {@link CollationKey} per contact for what SQL cannot sort on.
+ ***/
+final class ContactSorter {
+
+  enum SortOrder {
+    NONE,
+    GIVEN_NAME,
+    FAMILY_NAME,
+    DISPLAY_NAME;
+
+    /**
+     * @param sortBy the Dart name of the order, or null to fall back to {@code orderByGivenName}
+     */
+    static SortOrder resolve(String sortBy, boolean orderByGivenName) {
+      if (sortBy == null) {
+        return orderByGivenName ? GIVEN_NAME : NONE;
+      }
+      switch (sortBy) {
+        case "givenName": return GIVEN_NAME;
+        case "familyName": return FAMILY_NAME;
+        case "displayName": return DISPLAY_NAME;
+        default: return NONE;
+      }
+    }
+  }
+
+  private ContactSorter() {
+  }
+
+  /**
+   * The ORDER BY for a {@link ContactsContract.Data} query. The sort keys are the same on every
+   * row of a contact, so the contact id after them keeps each contact's rows together as
+   * {@link ContactCursorReader#readNextContact} requires. Given names only live on the name row,
+   * so that order is applied in memory by {@link #sort} instead.
+   */
+  static String sqlOrder(SortOrder sortOrder) {
+    switch (sortOrder) {
+      case FAMILY_NAME:
+        return ContactsContract.Contacts.SORT_KEY_ALTERNATIVE + ", " + ContactsContract.Data.CONTACT_ID;
+      case DISPLAY_NAME:
+        return ContactsContract.Contacts.SORT_KEY_PRIMARY + ", " + ContactsContract.Data.CONTACT_ID;
+      default:
+        return ContactsContract.Data.CONTACT_ID;
+    }
+  }
+
+  /**
+   * @return whether contacts read with {@link #sqlOrder} still have to go through {@link #sort}
+   */
+  static boolean needsMemorySort(SortOrder sortOrder) {
+    return sortOrder == SortOrder.GIVEN_NAME;
+  }
+
+  private static final class Keyed {
+    final CollationKey key;
+    // Breaks ties between equal family names; null for the other orders.
+    final CollationKey secondaryKey;
+    final Contact contact;
+
+    Keyed(CollationKey key, CollationKey secondaryKey, Contact contact) {
+      this.key = key;
+      this.secondaryKey = secondaryKey;
+      this.contact = contact;
+    }
+  }
+
+  /**
+   * Sorts the contacts in place, collating in the default locale and ignoring case. Each
+   * contact's key is computed once rather than on every comparison. Missing names sort first.
+   */
+  static void sort(List<Contact> contacts, SortOrder sortOrder) {
+    if (sortOrder == SortOrder.NONE || contacts.size() < 2) {
+      return;
+    }
+    Collator collator = Collator.getInstance();
+    collator.setStrength(Collator.SECONDARY);
+
+    Keyed[] keyed = new Keyed[contacts.size()];
+    for (int i = 0; i < keyed.length; i++) {
+      Contact contact = contacts.get(i);
+      if (sortOrder == SortOrder.FAMILY_NAME) {
+        keyed[i] = new Keyed(collator.getCollationKey(nonNull(contact.familyName)),
+                collator.getCollationKey(nonNull(contact.givenName)), contact);
+      } else {
+        String text = sortOrder == SortOrder.GIVEN_NAME ? contact.givenName : contact.displayName;
+        keyed[i] = new Keyed(collator.getCollationKey(nonNull(text)), null, contact);
+      }
+    }
+    // Stable, so contacts with equal names keep their relative order.
+    Arrays.sort(keyed, new Comparator<Keyed>() {
+      @Override
+      public int compare(Keyed a, Keyed b) {
+        int result = a.key.compareTo(b.key);
+        if (result == 0 && a.secondaryKey != null) {
+          result = a.secondaryKey.compareTo(b.secondaryKey);
+        }
+        return result;
+      }
+    });
+    for (int i = 0; i < keyed.length; i++) {
+      contacts.set(i, keyed[i].contact);
+    }
+  }
+
+  private static String nonNull(String value) {
+    return value == null ? "" : value;
+  }
+}
@@ -0,0 +1,60 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/***
+ * Reads the one-row-per-contact {@link ContactsContract.Contacts} table, for lists that only show
+ * names and thumbnails and load the full contact when it is opened.
+ ***/
+final class ContactSummaries {
+
+  static final String[] PROJECTION = {
+          ContactsContract.Contacts._ID,
+          ContactsContract.Contacts.DISPLAY_NAME_PRIMARY,
+          ContactsContract.Contacts.PHOTO_THUMBNAIL_URI,
+          ContactsContract.Contacts.HAS_PHONE_NUMBER,
+  };
+
+  // The provider's locale-aware sort key, with the id to keep equal names in a stable order.
+  private static final String SORT_ORDER =
+          ContactsContract.Contacts.SORT_KEY_PRIMARY + ", " + ContactsContract.Contacts._ID;
+
+  private ContactSummaries() {
+  }
+
+  /**
+   * @param query when not null, only the contacts whose display name starts with it
+   * @return a map per contact with its identifier, displayName, thumbnailUri and hasPhoneNumber
+   */
+  static ArrayList<HashMap<String, Object>> read(ContentResolver contentResolver, String query) {
+    String selection = null;
+    String[] selectionArgs = null;
+    if (query != null) {
+      selection = ContactsContract.Contacts.DISPLAY_NAME_PRIMARY + " LIKE ?";
+      selectionArgs = new String[]{query + "%"};
+    }
+    Cursor cursor = contentResolver.query(ContactsContract.Contacts.CONTENT_URI, PROJECTION, selection, selectionArgs, SORT_ORDER);
+    if (cursor == null) {
+      return new ArrayList<>();
+    }
+    try {
+      ArrayList<HashMap<String, Object>> summaries = new ArrayList<>(cursor.getCount());
+      while (cursor.moveToNext()) {
+        HashMap<String, Object> summary = new HashMap<>();
+        summary.put("identifier", cursor.getString(0));
+        summary.put("displayName", cursor.getString(1));
+        summary.put("thumbnailUri", cursor.getString(2));
+        summary.put("hasPhoneNumber", cursor.getInt(3) != 0);
+        summaries.add(summary);
+      }
+      return summaries;
+    } finally {
+      cursor.close();
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+
+/***
+ * Watches {@link ContactsContract.Contacts#CONTENT_URI} and reports address book changes over an
+ * event channel. Notifications arriving within the debounce window, such as the thousands written
+ * by an account sync, are coalesced into a single event.
+ ***/
+class ContactsChangeObserver extends ContentObserver implements EventChannel.StreamHandler {
+
+  static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+  private static final String LOG_TAG = "flutter_contacts";
+
+  private final Handler handler;
+  private final ContentResolver contentResolver;
+  private final ArrayList<Runnable> listeners = new ArrayList<>();
+  private EventChannel.EventSink events;
+  private long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+  private int pendingChanges;
+
+  private final Runnable flush = new Runnable() {
+    @Override
+    public void run() {
+      HashMap<String, Object> event = new HashMap<>();
+      event.put("changes", pendingChanges);
+      event.put("timestamp", System.currentTimeMillis());
+      pendingChanges = 0;
+
+      for (Runnable listener : listeners) {
+        listener.run();
+      }
+      if (events != null) {
+        events.success(event);
+      }
+    }
+  };
+
+  ContactsChangeObserver(ContentResolver contentResolver) {
+    this(contentResolver, new Handler(Looper.getMainLooper()));
+  }
+
+  private ContactsChangeObserver(ContentResolver contentResolver, Handler handler) {
+    super(handler);
+    this.contentResolver = contentResolver;
+    this.handler = handler;
+  }
+
+  void register() {
+    try {
+      contentResolver.registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, this);
+    } catch (SecurityException e) {
+      Log.e(LOG_TAG, "Could not observe contact changes", e);
+    }
+  }
+
+  void unregister() {
+    contentResolver.unregisterContentObserver(this);
+    handler.removeCallbacks(flush);
+    events = null;
+  }
+
+  /**
+   * Runs the listener on the main thread after each coalesced change, whether or not Dart is listening
+   */
+  void addListener(Runnable listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void onChange(boolean selfChange) {
+    if (pendingChanges++ == 0) {
+      handler.postDelayed(flush, debounceMillis);
+    }
+  }
+
+  @Override
+  public void onListen(Object arguments, EventChannel.EventSink events) {
+    Object debounce = arguments instanceof Map ? ((Map) arguments).get("debounceMillis") : null;
+    debounceMillis = debounce instanceof Number ? ((Number) debounce).longValue() : DEFAULT_DEBOUNCE_MILLIS;
+    this.events = events;
+  }
+
+  @Override
+  public void onCancel(Object arguments) {
+    events = null;
+  }
+}
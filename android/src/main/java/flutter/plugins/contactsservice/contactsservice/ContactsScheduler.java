@@ -0,0 +1,340 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Runs the plugin's background work in separate lanes, so that a full address book read or a
+ * burst of avatar loads cannot hold up a lookup the user is waiting for. Each lane has its own
+ * threads and a bounded queue; what happens to a task that does not fit is up to the lane's
+ * {@link OverflowPolicy}. Results are handed back through the callback executor, which is the
+ * main thread in the plugin.
+ ***/
+class ContactsScheduler {
+
+  enum Lane {
+    /** Lookups the user is waiting for: queries, phone and email searches, the picker. */
+    INTERACTIVE(2, 64, OverflowPolicy.DROP_OLDEST, Thread.NORM_PRIORITY),
+    /** Whole address book reads, streams and snapshot refreshes. */
+    BULK(2, 16, OverflowPolicy.REJECT, Thread.NORM_PRIORITY - 1),
+    /** Single avatar loads, typically for rows scrolling into view. */
+    AVATAR(3, 256, OverflowPolicy.DROP_OLDEST, Thread.NORM_PRIORITY - 1),
+    /** Writes are applied one at a time, in the order they were submitted, and never dropped. */
+    WRITE(1, Integer.MAX_VALUE, OverflowPolicy.REJECT, Thread.NORM_PRIORITY);
+
+    final int defaultParallelism;
+    final int defaultQueueCapacity;
+    final OverflowPolicy defaultOverflowPolicy;
+    final int threadPriority;
+
+    Lane(int defaultParallelism, int defaultQueueCapacity, OverflowPolicy defaultOverflowPolicy, int threadPriority) {
+      this.defaultParallelism = defaultParallelism;
+      this.defaultQueueCapacity = defaultQueueCapacity;
+      this.defaultOverflowPolicy = defaultOverflowPolicy;
+      this.threadPriority = threadPriority;
+    }
+
+    static Lane fromName(String name) {
+      return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+  }
+
+  enum OverflowPolicy {
+    /** The new task fails right away and the queue is left as it is. */
+    REJECT,
+    /** The task that has waited longest fails and the new one takes its place. */
+    DROP_OLDEST;
+
+    static OverflowPolicy fromName(String name) {
+      return name.equals("dropOldest") ? DROP_OLDEST : REJECT;
+    }
+  }
+
+  /**
+   * A unit of background work. {@link #run()} is called on a lane thread, the other callbacks on
+   * the callback executor. Exactly one of them is called for every submitted task.
+   */
+  abstract static class Task<T> {
+    private volatile boolean cancelled;
+    private Executor callbackExecutor;
+
+    abstract T run() throws Exception;
+
+    abstract void onSuccess(T value);
+
+    /**
+     * Called when {@link #run()} threw, or with a {@link RejectedExecutionException} when the task
+     * was rejected or dropped by its lane.
+     */
+    abstract void onFailure(Exception e);
+
+    /**
+     * Called instead of {@link #onSuccess} once the task has been cancelled.
+     */
+    void onCancelled() {
+    }
+
+    void cancel() {
+      cancelled = true;
+    }
+
+    boolean isCancelled() {
+      return cancelled;
+    }
+
+    /**
+     * Runs {@code runnable} on the callback executor, for tasks that deliver partial results.
+     */
+    final void post(Runnable runnable) {
+      callbackExecutor.execute(runnable);
+    }
+  }
+
+  private final class Job implements Runnable {
+    final LaneExecutor lane;
+    final Task<Object> task;
+    final long enqueuedNanos = System.nanoTime();
+
+    Job(LaneExecutor lane, Task<Object> task) {
+      this.lane = lane;
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      final long startedNanos = System.nanoTime();
+      lane.waitNanos.addAndGet(startedNanos - enqueuedNanos);
+      if (task.isCancelled()) {
+        lane.cancelled.incrementAndGet();
+        deliverCancelled(task);
+        return;
+      }
+      Object value = null;
+      Exception failure = null;
+      try {
+        value = task.run();
+      } catch (Exception e) {
+        failure = e;
+      }
+      lane.recordRun(System.nanoTime() - startedNanos);
+      // A cancelled task usually fails on its way out, e.g. with an OperationCanceledException
+      // from its query, so cancellation is reported first.
+      if (task.isCancelled()) {
+        lane.cancelled.incrementAndGet();
+        deliverCancelled(task);
+      } else if (failure != null) {
+        lane.failed.incrementAndGet();
+        deliverFailure(task, failure);
+      } else {
+        lane.completed.incrementAndGet();
+        deliverSuccess(task, value);
+      }
+    }
+
+    void drop() {
+      lane.dropped.incrementAndGet();
+      deliverFailure(task, new RejectedExecutionException(
+              "Dropped from the " + lane.name + " lane by a newer request"));
+    }
+  }
+
+  private final class LaneExecutor {
+    final String name;
+    final ThreadPoolExecutor pool;
+    final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    volatile int queueCapacity;
+    volatile OverflowPolicy overflowPolicy;
+
+    final AtomicLong submitted = new AtomicLong();
+    final AtomicLong completed = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicLong cancelled = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+    final AtomicLong dropped = new AtomicLong();
+    final AtomicLong runs = new AtomicLong();
+    final AtomicLong waitNanos = new AtomicLong();
+    final AtomicLong runNanos = new AtomicLong();
+    final AtomicLong maxRunNanos = new AtomicLong();
+
+    LaneExecutor(final Lane lane) {
+      name = lane.name().toLowerCase(Locale.ROOT);
+      queueCapacity = lane.defaultQueueCapacity;
+      overflowPolicy = lane.defaultOverflowPolicy;
+      pool = new ThreadPoolExecutor(lane.defaultParallelism, lane.defaultParallelism, 60, TimeUnit.SECONDS, queue,
+              new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                  Thread thread = new Thread(runnable, "flutter_contacts-" + name + "-" + count.incrementAndGet());
+                  thread.setPriority(lane.threadPriority);
+                  return thread;
+                }
+              });
+      pool.allowCoreThreadTimeOut(true);
+    }
+
+    void submit(Job job) {
+      submitted.incrementAndGet();
+      Job oldest = null;
+      synchronized (this) {
+        if (queue.size() >= queueCapacity) {
+          if (overflowPolicy == OverflowPolicy.REJECT || (oldest = (Job) queue.poll()) == null) {
+            rejected.incrementAndGet();
+            deliverFailure(job.task, new RejectedExecutionException(
+                    "The " + name + " lane is full (" + queueCapacity + " queued tasks)"));
+            return;
+          }
+        }
+        try {
+          pool.execute(job);
+        } catch (RejectedExecutionException e) {
+          rejected.incrementAndGet();
+          deliverFailure(job.task, e);
+        }
+      }
+      if (oldest != null) {
+        oldest.drop();
+      }
+    }
+
+    void recordRun(long nanos) {
+      runs.incrementAndGet();
+      runNanos.addAndGet(nanos);
+      long max;
+      while (nanos > (max = maxRunNanos.get()) && !maxRunNanos.compareAndSet(max, nanos)) {
+        // Another thread raised the maximum in between, try again.
+      }
+    }
+
+    HashMap<String, Object> metrics() {
+      HashMap<String, Object> metrics = new HashMap<>();
+      long started = runs.get() + cancelled.get();
+      metrics.put("parallelism", pool.getMaximumPoolSize());
+      metrics.put("queueCapacity", queueCapacity);
+      metrics.put("overflowPolicy", overflowPolicy == OverflowPolicy.DROP_OLDEST ? "dropOldest" : "reject");
+      metrics.put("queueDepth", queue.size());
+      metrics.put("active", pool.getActiveCount());
+      metrics.put("submitted", submitted.get());
+      metrics.put("completed", completed.get());
+      metrics.put("failed", failed.get());
+      metrics.put("cancelled", cancelled.get());
+      metrics.put("rejected", rejected.get());
+      metrics.put("dropped", dropped.get());
+      metrics.put("averageWaitMillis", started == 0 ? 0.0 : waitNanos.get() / 1e6 / started);
+      metrics.put("averageRunMillis", runs.get() == 0 ? 0.0 : runNanos.get() / 1e6 / runs.get());
+      metrics.put("maxRunMillis", maxRunNanos.get() / 1e6);
+      return metrics;
+    }
+  }
+
+  private final Executor callbackExecutor;
+  private final HashMap<Lane, LaneExecutor> lanes = new HashMap<>();
+
+  ContactsScheduler(Executor callbackExecutor) {
+    this.callbackExecutor = callbackExecutor;
+    for (Lane lane : Lane.values()) {
+      lanes.put(lane, new LaneExecutor(lane));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  <T> void submit(Lane lane, Task<T> task) {
+    task.callbackExecutor = callbackExecutor;
+    LaneExecutor executor = lanes.get(lane);
+    executor.submit(new Job(executor, (Task<Object>) task));
+  }
+
+  /**
+   * Changes how many tasks a lane runs at once, how many it queues and what happens beyond that.
+   * The write lane always runs one task at a time and queues every write, to keep writes in order
+   * and never lose one, so only its defaults are accepted for it. A lane queues at least one task,
+   * since submit() turns away every task once the queue holds queueCapacity of them, even with
+   * idle threads. Nothing changes when a value is rejected.
+   */
+  void configure(Lane lane, Integer parallelism, Integer queueCapacity, OverflowPolicy overflowPolicy) {
+    LaneExecutor executor = lanes.get(lane);
+    if (parallelism != null && (parallelism < 1 || (lane == Lane.WRITE && parallelism != 1))) {
+      throw new IllegalArgumentException("Invalid parallelism " + parallelism + " for the " + executor.name + " lane");
+    }
+    if (queueCapacity != null && (queueCapacity < 1 || (lane == Lane.WRITE && queueCapacity != lane.defaultQueueCapacity))) {
+      throw new IllegalArgumentException("Invalid queue capacity " + queueCapacity + " for the " + executor.name + " lane");
+    }
+    if (overflowPolicy != null && lane == Lane.WRITE && overflowPolicy != lane.defaultOverflowPolicy) {
+      throw new IllegalArgumentException("Invalid overflow policy " + overflowPolicy + " for the " + executor.name + " lane");
+    }
+
+    if (parallelism != null) {
+      // The core size may never exceed the maximum, so grow and shrink them in the safe order.
+      if (parallelism > executor.pool.getMaximumPoolSize()) {
+        executor.pool.setMaximumPoolSize(parallelism);
+        executor.pool.setCorePoolSize(parallelism);
+      } else {
+        executor.pool.setCorePoolSize(parallelism);
+        executor.pool.setMaximumPoolSize(parallelism);
+      }
+    }
+    if (queueCapacity != null) {
+      executor.queueCapacity = queueCapacity;
+    }
+    if (overflowPolicy != null) {
+      executor.overflowPolicy = overflowPolicy;
+    }
+  }
+
+  /**
+   * @return per lane, its configuration, queue depth, task counts and latencies
+   */
+  HashMap<String, Object> metrics() {
+    HashMap<String, Object> metrics = new HashMap<>();
+    for (Map.Entry<Lane, LaneExecutor> entry : lanes.entrySet()) {
+      metrics.put(entry.getValue().name, entry.getValue().metrics());
+    }
+    return metrics;
+  }
+
+  /**
+   * Lets the queued and running tasks finish, including pending writes, but accepts no new ones.
+   */
+  void shutdown() {
+    for (LaneExecutor executor : lanes.values()) {
+      executor.pool.shutdown();
+    }
+  }
+
+  private void deliverSuccess(final Task<Object> task, final Object value) {
+    callbackExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        task.onSuccess(value);
+      }
+    });
+  }
+
+  private void deliverFailure(final Task<Object> task, final Exception e) {
+    callbackExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        task.onFailure(e);
+      }
+    });
+  }
+
+  private void deliverCancelled(final Task<Object> task) {
+    callbackExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        task.onCancelled();
+      }
+    });
+  }
+}
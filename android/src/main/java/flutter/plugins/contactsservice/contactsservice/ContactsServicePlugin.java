@@ -1,41 +1,36 @@
 package flutter.plugins.contactsservice.contactsservice;
 
 import android.annotation.TargetApi;
-import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Build;
+import android.os.CancellationSignal;
 import android.provider.BaseColumns;
 import android.provider.ContactsContract;
-import android.text.TextUtils;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
 import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
@@ -58,22 +53,61 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
 
   private static final String LOG_TAG = "flutter_contacts";
   private ContentResolver contentResolver;
+  private ContactsWriter writer;
   private MethodChannel methodChannel;
+  private EventChannel contactsStreamChannel;
+  private EventChannel contactChangesChannel;
+  private ContactsChangeObserver changeObserver;
   private BaseContactsServiceDelegate delegate;
   private Resources resources;
+  private ContactSnapshotStore snapshotStore;
+  private PhoneIndex phoneIndex;
+  private EmailIndex emailIndex;
+  // Built by the first search on a lane thread, refreshed after each change the observer reports.
+  private volatile ContactSearchIndex searchIndex;
+  private final AvatarCache avatarCache = new AvatarCache(AvatarCache.DEFAULT_MAX_BYTES);
 
-  private final ExecutorService executor =
-          new ThreadPoolExecutor(0, 10, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(1000));
+  private ContactsScheduler scheduler;
+  // Only touched on the main thread: by onMethodCall and by the scheduler callbacks.
+  private final HashMap<Object, GetContactsTask> inFlightRequests = new HashMap<>();
 
   private void initInstance(BinaryMessenger messenger, Context context) {
+    scheduler = new ContactsScheduler(new Executor() {
+      private final Handler handler = new Handler(Looper.getMainLooper());
+
+      @Override
+      public void execute(Runnable runnable) {
+        handler.post(runnable);
+      }
+    });
     methodChannel = new MethodChannel(messenger, "github.com/clovisnicolas/flutter_contacts");
     methodChannel.setMethodCallHandler(this);
+    contactsStreamChannel = new EventChannel(messenger, "github.com/clovisnicolas/flutter_contacts/contactsStream");
+    contactsStreamChannel.setStreamHandler(new ContactsStreamHandler());
     this.contentResolver = context.getContentResolver();
+    writer = new ContactsWriter(contentResolver);
+    changeObserver = new ContactsChangeObserver(contentResolver);
+    changeObserver.register();
+    final PhoneIndex phoneIndex = new PhoneIndex(contentResolver);
+    final EmailIndex emailIndex = new EmailIndex(contentResolver);
+    changeObserver.addListener(new Runnable() {
+      @Override
+      public void run() {
+        phoneIndex.invalidate();
+        emailIndex.invalidate();
+        refreshSearchIndex();
+      }
+    });
+    this.phoneIndex = phoneIndex;
+    this.emailIndex = emailIndex;
+    contactChangesChannel = new EventChannel(messenger, "github.com/clovisnicolas/flutter_contacts/contactChanges");
+    contactChangesChannel.setStreamHandler(changeObserver);
   }
 
   @Override
   public void onAttachedToEngine(FlutterPluginBinding binding) {
     resources = binding.getApplicationContext().getResources();
+    snapshotStore = new ContactSnapshotStore(new File(binding.getApplicationContext().getCacheDir(), "flutter_contacts_snapshot.bin"));
     initInstance(binding.getBinaryMessenger(), binding.getApplicationContext());
     this.delegate = new ContactServiceDelegate(binding.getApplicationContext());
   }
@@ -82,7 +116,19 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
   public void onDetachedFromEngine(FlutterPluginBinding binding) {
     methodChannel.setMethodCallHandler(null);
     methodChannel = null;
+    contactsStreamChannel.setStreamHandler(null);
+    contactsStreamChannel = null;
+    contactChangesChannel.setStreamHandler(null);
+    contactChangesChannel = null;
+    changeObserver.unregister();
+    changeObserver = null;
+    phoneIndex = null;
+    emailIndex = null;
+    searchIndex = null;
+    scheduler.shutdown();
+    scheduler = null;
     contentResolver = null;
+    writer = null;
     this.delegate = null;
     resources = null;
   }
@@ -91,40 +137,163 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
   public void onMethodCall(MethodCall call, Result result) {
     switch(call.method){
       case "getContacts": {
-        this.getContacts(call.method, (String)call.argument("query"), (boolean)call.argument("withThumbnails"), (boolean)call.argument("photoHighResolution"), (boolean)call.argument("orderByGivenName"), (boolean)call.argument("androidLocalizedLabels"), result);
+        final int fields;
+        try {
+          fields = ContactFields.fromNames((List<String>) call.argument("fields"));
+        } catch (IllegalArgumentException e) {
+          result.error(null, e.getMessage(), null);
+          break;
+        }
+        this.getContacts(call.method, (String)call.argument("query"), (boolean)call.argument("withThumbnails"), (boolean)call.argument("photoHighResolution"), ContactSorter.SortOrder.resolve((String)call.argument("sortBy"), (boolean)call.argument("orderByGivenName")), (boolean)call.argument("androidLocalizedLabels"), AvatarFormat.fromMap((Map)call.argument("avatarOptions")), Boolean.TRUE.equals(call.argument("useSnapshot")), fields, Boolean.TRUE.equals(call.argument("packed")), call.argument("requestId"), result);
         break;
       } case "getContactsForPhone": {
-        this.getContactsForPhone(call.method, (String)call.argument("phone"), (boolean)call.argument("withThumbnails"), (boolean)call.argument("photoHighResolution"), (boolean)call.argument("orderByGivenName"), (boolean)call.argument("androidLocalizedLabels"), result);
+        this.getContactsForPhone(call.method, (String)call.argument("phone"), (boolean)call.argument("withThumbnails"), (boolean)call.argument("photoHighResolution"), ContactSorter.SortOrder.resolve((String)call.argument("sortBy"), (boolean)call.argument("orderByGivenName")), (boolean)call.argument("androidLocalizedLabels"), AvatarFormat.fromMap((Map)call.argument("avatarOptions")), Boolean.TRUE.equals(call.argument("packed")), call.argument("requestId"), result);
         break;
       } case "getContactsForEmail": {
-        this.getContactsForEmail(call.method, (String)call.argument("email"), (boolean)call.argument("withThumbnails"), (boolean)call.argument("photoHighResolution"), (boolean)call.argument("orderByGivenName"), (boolean)call.argument("androidLocalizedLabels"), result);
+        this.getContactsForEmail(call.method, (String)call.argument("email"), EmailIndex.Match.fromName((String)call.argument("match")), (boolean)call.argument("withThumbnails"), (boolean)call.argument("photoHighResolution"), ContactSorter.SortOrder.resolve((String)call.argument("sortBy"), (boolean)call.argument("orderByGivenName")), (boolean)call.argument("androidLocalizedLabels"), AvatarFormat.fromMap((Map)call.argument("avatarOptions")), Boolean.TRUE.equals(call.argument("packed")), call.argument("requestId"), result);
+        break;
+      } case "getContactSummaries": {
+        final String query = call.argument("query");
+        scheduler.submit(query == null ? ContactsScheduler.Lane.BULK : ContactsScheduler.Lane.INTERACTIVE,
+                new ReplyTask<ArrayList<HashMap<String, Object>>>(result) {
+                  @Override
+                  ArrayList<HashMap<String, Object>> run() {
+                    return ContactSummaries.read(contentResolver, query);
+                  }
+                });
+        break;
+      } case "getContact": {
+        final String identifier = call.argument("identifier");
+        final boolean withThumbnails = call.argument("withThumbnails");
+        final boolean photoHighResolution = call.argument("photoHighResolution");
+        final boolean localizedLabels = call.argument("androidLocalizedLabels");
+        final AvatarFormat avatarFormat = AvatarFormat.fromMap((Map) call.argument("avatarOptions"));
+        scheduler.submit(ContactsScheduler.Lane.INTERACTIVE, new ReplyTask<HashMap<String, Object>>(result) {
+          @Override
+          HashMap<String, Object> run() {
+            Contact contact = readContactByIdentifier(identifier, localizedLabels);
+            if (contact == null) {
+              return null;
+            }
+            if (withThumbnails) {
+              loadAvatars(new ArrayList<>(Collections.singletonList(contact)), photoHighResolution, avatarFormat);
+            }
+            return contact.toMap();
+          }
+        });
+        break;
+      } case "getContactsByIds": {
+        final List<String> identifiers = call.argument("identifiers");
+        final boolean withThumbnails = call.argument("withThumbnails");
+        final boolean photoHighResolution = call.argument("photoHighResolution");
+        final boolean localizedLabels = call.argument("androidLocalizedLabels");
+        final AvatarFormat avatarFormat = AvatarFormat.fromMap((Map) call.argument("avatarOptions"));
+        scheduler.submit(ContactsScheduler.Lane.INTERACTIVE, new ReplyTask<ArrayList<HashMap>>(result) {
+          @Override
+          ArrayList<HashMap> run() {
+            ArrayList<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(identifiers));
+            ArrayList<Contact> contacts = ContactCursorReader.readContactsByIds(contentResolver, resources, uniqueIds, localizedLabels);
+            if (withThumbnails) {
+              loadAvatars(contacts, photoHighResolution, avatarFormat);
+            }
+            ArrayList<HashMap> contactMaps = new ArrayList<>(identifiers.size());
+            for (Contact contact : ContactCursorReader.inRequestedOrder(identifiers, contacts)) {
+              contactMaps.add(contact != null ? contact.toMap() : null);
+            }
+            return contactMaps;
+          }
+        });
+        break;
+      } case "lookupPhones": {
+        final List<String> phones = call.argument("phones");
+        final boolean localizedLabels = call.argument("androidLocalizedLabels");
+        final PhoneIndex phoneIndex = this.phoneIndex;
+        scheduler.submit(ContactsScheduler.Lane.INTERACTIVE, new ReplyTask<ArrayList<ArrayList<HashMap>>>(result) {
+          @Override
+          ArrayList<ArrayList<HashMap>> run() {
+            return readMatchedContacts(phoneIndex.lookupAll(phones), localizedLabels);
+          }
+        });
+        break;
+      } case "lookupEmails": {
+        final List<String> emails = call.argument("emails");
+        final boolean localizedLabels = call.argument("androidLocalizedLabels");
+        final EmailIndex emailIndex = this.emailIndex;
+        scheduler.submit(ContactsScheduler.Lane.INTERACTIVE, new ReplyTask<ArrayList<ArrayList<HashMap>>>(result) {
+          @Override
+          ArrayList<ArrayList<HashMap>> run() {
+            return readMatchedContacts(emailIndex.lookupAll(emails), localizedLabels);
+          }
+        });
+        break;
+      } case "searchContacts": {
+        final String query = call.argument("query");
+        final int limit = call.argument("limit");
+        final boolean localizedLabels = call.argument("androidLocalizedLabels");
+        scheduler.submit(ContactsScheduler.Lane.INTERACTIVE, new ReplyTask<ArrayList<HashMap>>(result) {
+          @Override
+          ArrayList<HashMap> run() {
+            ArrayList<Contact> contacts = searchIndex(localizedLabels).search(query, limit);
+            ArrayList<HashMap> contactMaps = new ArrayList<>(contacts.size());
+            for (Contact contact : contacts) {
+              contactMaps.add(contact.toMap());
+            }
+            return contactMaps;
+          }
+        });
+        break;
+      } case "getContactsChangedSince": {
+        final long timestamp = ((Number) call.argument("timestamp")).longValue();
+        scheduler.submit(ContactsScheduler.Lane.INTERACTIVE, new GetContactChangesTask(result, timestamp, (boolean) call.argument("androidLocalizedLabels")));
+        break;
+      } case "cancel": {
+        final GetContactsTask task = inFlightRequests.remove(call.argument("requestId"));
+        if (task != null) {
+          task.cancel();
+        }
+        result.success(task != null);
         break;
       } case "getAvatar": {
         final Contact contact = Contact.fromMap((HashMap)call.argument("contact"));
-        this.getAvatar(contact, (boolean)call.argument("photoHighResolution"), result);
+        this.getAvatar(contact, (boolean)call.argument("photoHighResolution"), AvatarFormat.fromMap((Map)call.argument("avatarOptions")), result);
         break;
-      } case "addContact": {
-        final Contact contact = Contact.fromMap((HashMap)call.arguments);
-        if (this.addContact(contact)) {
-          result.success(null);
-        } else {
-          result.error(null, "Failed to add the contact", null);
-        }
+      } case "deleteContactsSnapshot": {
+        snapshotStore.delete();
+        result.success(null);
         break;
-      } case "deleteContact": {
-        final Contact contact = Contact.fromMap((HashMap)call.arguments);
-        if (this.deleteContact(contact)) {
-          result.success(null);
-        } else {
-          result.error(null, "Failed to delete the contact, make sure it has a valid identifier", null);
+      } case "getAvatarCacheStats": {
+        result.success(avatarCache.stats());
+        break;
+      } case "setAvatarCacheMaxBytes": {
+        try {
+          avatarCache.setMaxBytes((int) call.argument("maxBytes"));
+          result.success(avatarCache.stats());
+        } catch (IllegalArgumentException e) {
+          result.error(null, e.getMessage(), null);
         }
         break;
-      } case "updateContact": {
-        final Contact contact = Contact.fromMap((HashMap)call.arguments);
-        if (this.updateContact(contact)) {
-          result.success(null);
-        } else {
-          result.error(null, "Failed to update the contact, make sure it has a valid identifier", null);
+      } case "addContact":
+        case "deleteContact":
+        case "updateContact": {
+        scheduler.submit(ContactsScheduler.Lane.WRITE, new WriteContactsTask(call.method, writer, Contact.fromMap((HashMap)call.arguments), result));
+        break;
+      } case "addContacts":
+        case "updateContacts":
+        case "deleteContacts": {
+        scheduler.submit(ContactsScheduler.Lane.WRITE, new WriteContactsTask(call.method, writer, contactsFrom((List)call.argument("contacts")), result));
+        break;
+      } case "getSchedulerMetrics": {
+        result.success(scheduler.metrics());
+        break;
+      } case "configureScheduler": {
+        final String overflowPolicy = call.argument("overflowPolicy");
+        try {
+          scheduler.configure(ContactsScheduler.Lane.fromName((String) call.argument("lane")),
+                  (Integer) call.argument("parallelism"), (Integer) call.argument("queueCapacity"),
+                  overflowPolicy == null ? null : ContactsScheduler.OverflowPolicy.fromName(overflowPolicy));
+          result.success(scheduler.metrics());
+        } catch (IllegalArgumentException e) {
+          result.error(null, e.getMessage(), null);
         }
         break;
       } case "openExistingContact" :{
@@ -159,53 +328,32 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
     }
   }
 
-  private static final String[] PROJECTION =
-          {
-                  ContactsContract.Data.CONTACT_ID,
-                  ContactsContract.Profile.DISPLAY_NAME,
-                  ContactsContract.Contacts.Data.MIMETYPE,
-                  ContactsContract.RawContacts.ACCOUNT_TYPE,
-                  ContactsContract.RawContacts.ACCOUNT_NAME,
-                  StructuredName.DISPLAY_NAME,
-                  StructuredName.GIVEN_NAME,
-                  StructuredName.MIDDLE_NAME,
-                  StructuredName.FAMILY_NAME,
-                  StructuredName.PREFIX,
-                  StructuredName.SUFFIX,
-                  CommonDataKinds.Note.NOTE,
-                  Phone.NUMBER,
-                  Phone.TYPE,
-                  Phone.LABEL,
-                  Email.DATA,
-                  Email.ADDRESS,
-                  Email.TYPE,
-                  Email.LABEL,
-                  Organization.COMPANY,
-                  Organization.TITLE,
-                  StructuredPostal.FORMATTED_ADDRESS,
-                  StructuredPostal.TYPE,
-                  StructuredPostal.LABEL,
-                  StructuredPostal.STREET,
-                  StructuredPostal.POBOX,
-                  StructuredPostal.NEIGHBORHOOD,
-                  StructuredPostal.CITY,
-                  StructuredPostal.REGION,
-                  StructuredPostal.POSTCODE,
-                  StructuredPostal.COUNTRY,
-          };
+  private static final String[] PROJECTION = ContactCursorReader.PROJECTION;
 
 
   @TargetApi(Build.VERSION_CODES.ECLAIR)
-  private void getContacts(String callMethod, String query, boolean withThumbnails, boolean photoHighResolution, boolean orderByGivenName, boolean localizedLabels, Result result) {
-    new GetContactsTask(callMethod, result, withThumbnails, photoHighResolution, orderByGivenName, localizedLabels).executeOnExecutor(executor, query, false);
+  private void getContacts(String callMethod, String query, boolean withThumbnails, boolean photoHighResolution, ContactSorter.SortOrder sortOrder, boolean localizedLabels, AvatarFormat avatarFormat, boolean useSnapshot, int fields, boolean packed, Object requestId, Result result) {
+    GetContactsTask task = new GetContactsTask(callMethod, query, result, withThumbnails, photoHighResolution, sortOrder, localizedLabels, avatarFormat, useSnapshot)
+            .withFields(fields)
+            .withPacked(packed);
+    task.track(requestId);
+    // Reading the whole address book must not hold up the lookups behind it.
+    scheduler.submit(query == null ? ContactsScheduler.Lane.BULK : ContactsScheduler.Lane.INTERACTIVE, task);
   }
 
-  private void getContactsForPhone(String callMethod, String phone, boolean withThumbnails, boolean photoHighResolution, boolean orderByGivenName, boolean localizedLabels, Result result) {
-    new GetContactsTask(callMethod, result, withThumbnails, photoHighResolution, orderByGivenName, localizedLabels).executeOnExecutor(executor, phone, true);
+  private void getContactsForPhone(String callMethod, String phone, boolean withThumbnails, boolean photoHighResolution, ContactSorter.SortOrder sortOrder, boolean localizedLabels, AvatarFormat avatarFormat, boolean packed, Object requestId, Result result) {
+    GetContactsTask task = new GetContactsTask(callMethod, phone, result, withThumbnails, photoHighResolution, sortOrder, localizedLabels, avatarFormat, false)
+            .withPacked(packed);
+    task.track(requestId);
+    scheduler.submit(ContactsScheduler.Lane.INTERACTIVE, task);
   }
 
-  private void getContactsForEmail(String callMethod, String email, boolean withThumbnails, boolean photoHighResolution, boolean orderByGivenName, boolean localizedLabels, Result result) {
-    new GetContactsTask(callMethod, result, withThumbnails, photoHighResolution, orderByGivenName, localizedLabels).executeOnExecutor(executor, email, true);
+  private void getContactsForEmail(String callMethod, String email, EmailIndex.Match match, boolean withThumbnails, boolean photoHighResolution, ContactSorter.SortOrder sortOrder, boolean localizedLabels, AvatarFormat avatarFormat, boolean packed, Object requestId, Result result) {
+    GetContactsTask task = new GetContactsTask(callMethod, email, result, withThumbnails, photoHighResolution, sortOrder, localizedLabels, avatarFormat, false)
+            .withEmailMatch(match)
+            .withPacked(packed);
+    task.track(requestId);
+    scheduler.submit(ContactsScheduler.Lane.INTERACTIVE, task);
   }
 
   @Override
@@ -280,7 +428,7 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
         Cursor cursor = contentResolver.query(contactUri, null, null, null, null);
         if (cursor.moveToFirst()) {
           String id = contactUri.getLastPathSegment();
-          getContacts("openDeviceContactPicker", id, false, false, false, localizedLabels, this.result);
+          getContacts("openDeviceContactPicker", id, false, false, ContactSorter.SortOrder.NONE, localizedLabels, AvatarFormat.ORIGINAL, false, ContactFields.ALL, false, null, this.result);
           cursor.close();
         } else {
           Log.e(LOG_TAG, "onActivityResult - cursor.moveToFirst() returns false");
@@ -295,7 +443,7 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
     }
 
     void openExistingContact(Contact contact) {
-      String identifier = contact.identifier;
+      String identifier = contact.identifier();
       try {
         HashMap contactMapFromDevice = getContactByIdentifier(identifier);
         // Contact existence check
@@ -332,26 +480,8 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
     }
 
     HashMap getContactByIdentifier(String identifier) {
-      ArrayList<Contact> matchingContacts;
-      {
-        Cursor cursor = contentResolver.query(
-                ContactsContract.Data.CONTENT_URI, PROJECTION,
-                ContactsContract.RawContacts.CONTACT_ID + " = ?",
-                new String[]{identifier},
-                null
-        );
-        try {
-          matchingContacts = getContactsFrom(cursor, localizedLabels);
-        } finally {
-          if(cursor != null) {
-            cursor.close();
-          }
-        }
-      }
-      if(matchingContacts.size() > 0) {
-        return matchingContacts.iterator().next().toMap();
-      }
-      return null;
+      Contact contact = readContactByIdentifier(identifier, localizedLabels);
+      return contact != null ? contact.toMap() : null;
     }
   }
   
@@ -397,84 +527,446 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
     }
   }
 
-  @TargetApi(Build.VERSION_CODES.CUPCAKE)
-  private class GetContactsTask extends AsyncTask<Object, Void, ArrayList<HashMap>> {
+  /**
+   * A scheduler task answering a method call with its value, or with an error if it failed or
+   * was dropped by its lane.
+   */
+  private abstract static class ReplyTask<T> extends ContactsScheduler.Task<T> {
+    final Result result;
+
+    ReplyTask(Result result) {
+      this.result = result;
+    }
+
+    @Override
+    void onSuccess(T value) {
+      result.success(value);
+    }
+
+    @Override
+    void onFailure(Exception e) {
+      Log.e(LOG_TAG, "Contacts task failed", e);
+      result.error(null, e.getMessage(), null);
+    }
+  }
+
+  private class GetContactsTask extends ReplyTask<Object> {
 
     private String callMethod;
-    private Result getContactResult;
+    private String query;
     private boolean withThumbnails;
     private boolean photoHighResolution;
-    private boolean orderByGivenName;
+    private ContactSorter.SortOrder sortOrder;
     private boolean localizedLabels;
-
-    public GetContactsTask(String callMethod, Result result, boolean withThumbnails, boolean photoHighResolution, boolean orderByGivenName, boolean localizedLabels) {
+    private AvatarFormat avatarFormat;
+    private boolean useSnapshot;
+    private int fields = ContactFields.ALL;
+    private EmailIndex.Match emailMatch = EmailIndex.Match.CONTAINS;
+    private boolean packed;
+    private Object requestId;
+    private final CancellationSignal cancellationSignal = new CancellationSignal();
+
+    public GetContactsTask(String callMethod, String query, Result result, boolean withThumbnails, boolean photoHighResolution, ContactSorter.SortOrder sortOrder, boolean localizedLabels, AvatarFormat avatarFormat, boolean useSnapshot) {
+      super(result);
       this.callMethod = callMethod;
-      this.getContactResult = result;
+      this.query = query;
       this.withThumbnails = withThumbnails;
       this.photoHighResolution = photoHighResolution;
-      this.orderByGivenName = orderByGivenName;
+      this.sortOrder = sortOrder;
       this.localizedLabels = localizedLabels;
+      this.avatarFormat = avatarFormat;
+      this.useSnapshot = useSnapshot;
     }
 
-    @TargetApi(Build.VERSION_CODES.ECLAIR)
-    protected ArrayList<HashMap> doInBackground(Object... params) {
+    @Override
+    Object run() {
       ArrayList<Contact> contacts;
+      boolean sortedByQuery = true;
       switch (callMethod) {
-        case "openDeviceContactPicker": contacts = getContactsFrom(getCursor(null, (String) params[0]), localizedLabels); break;
-        case "getContacts": contacts = getContactsFrom(getCursor((String) params[0], null), localizedLabels); break;
-        case "getContactsForPhone": contacts = getContactsFrom(getCursorForPhone(((String) params[0])), localizedLabels); break;
-        case "getContactsForEmail": contacts = getContactsFrom(getCursorForEmail(((String) params[0])), localizedLabels); break;
+        case "openDeviceContactPicker": contacts = getContactsFrom(getCursor(null, query, ContactFields.ALL, sortOrder, cancellationSignal), localizedLabels, ContactFields.ALL, cancellationSignal); break;
+        case "getContacts":
+          if (useSnapshot && query == null) {
+            contacts = getContactsFromSnapshot(localizedLabels);
+            // The snapshot is kept in contact id order.
+            sortedByQuery = false;
+          } else if (packed && !withThumbnails && !ContactSorter.needsMemorySort(sortOrder)) {
+            // Nothing is left to do to the contacts, so their rows go straight into the reply.
+            return PackedCursorEncoder.encode(getCursor(query, null, fields, sortOrder, cancellationSignal), resources, localizedLabels, fields, cancellationSignal);
+          } else {
+            contacts = getContactsFrom(getCursor(query, null, fields, sortOrder, cancellationSignal), localizedLabels, fields, cancellationSignal);
+          }
+          break;
+        case "getContactsForPhone": contacts = getContactsFrom(getCursorForPhone(query, sortOrder, cancellationSignal), localizedLabels, ContactFields.ALL, cancellationSignal); break;
+        case "getContactsForEmail":
+          if (emailMatch == EmailIndex.Match.CONTAINS) {
+            contacts = getContactsFrom(getCursorForEmail(query, sortOrder, cancellationSignal), localizedLabels, ContactFields.ALL, cancellationSignal);
+          } else {
+            contacts = ContactCursorReader.readContactsByIds(contentResolver, resources, emailIndex.lookup(query, emailMatch), localizedLabels, cancellationSignal);
+            sortedByQuery = false;
+          }
+          break;
         default: return null;
       }
 
+      // A superseded request needs neither avatars nor maps.
+      cancellationSignal.throwIfCanceled();
       if (withThumbnails) {
-        for(Contact c : contacts){
-          final byte[] avatar = loadContactPhotoHighRes(
-                  c.identifier, photoHighResolution, contentResolver);
-          if (avatar != null) {
-            c.avatar = avatar;
-          } else {
-            // To stay backwards-compatible, return an empty byte array rather than `null`.
-            c.avatar = new byte[0];
-          }
-//          if ((Boolean) params[3])
-//              loadContactPhotoHighRes(c.identifier, (Boolean) params[3]);
-//          else
-//              setAvatarDataForContactIfAvailable(c);
-        }
+        loadAvatars(contacts, photoHighResolution, avatarFormat);
       }
 
-      if (orderByGivenName)
-      {
-        Comparator<Contact> compareByGivenName = new Comparator<Contact>() {
-          @Override
-          public int compare(Contact contactA, Contact contactB) {
-            return contactA.compareTo(contactB);
-          }
-        };
-        Collections.sort(contacts,compareByGivenName);
+      if (!sortedByQuery || ContactSorter.needsMemorySort(sortOrder)) {
+        ContactSorter.sort(contacts, sortOrder);
+      }
+
+      if (packed) {
+        return PackedContacts.encode(contacts, fields);
       }
 
       //Transform the list of contacts to a list of Map
       ArrayList<HashMap> contactMaps = new ArrayList<>();
       for(Contact c : contacts){
-        contactMaps.add(c.toMap());
+        contactMaps.add(c.toMap(fields));
       }
 
       return contactMaps;
     }
 
-    protected void onPostExecute(ArrayList<HashMap> result) {
-      if (result == null) {
-        getContactResult.notImplemented();
+    /**
+     * Narrows the query and the returned maps to the given {@link ContactFields}
+     */
+    GetContactsTask withFields(int fields) {
+      this.fields = fields;
+      return this;
+    }
+
+    GetContactsTask withEmailMatch(EmailIndex.Match emailMatch) {
+      this.emailMatch = emailMatch;
+      return this;
+    }
+
+    /**
+     * Replies with the contacts as one {@link PackedContacts} byte array instead of a list of maps
+     */
+    GetContactsTask withPacked(boolean packed) {
+      this.packed = packed;
+      return this;
+    }
+
+    /**
+     * Makes the task cancellable through the cancel method while it is queued or running
+     */
+    void track(Object requestId) {
+      if (requestId != null) {
+        this.requestId = requestId;
+        inFlightRequests.put(requestId, this);
+      }
+    }
+
+    @Override
+    void cancel() {
+      super.cancel();
+      cancellationSignal.cancel();
+    }
+
+    @Override
+    void onSuccess(Object contacts) {
+      untrack();
+      if (contacts == null) {
+        result.notImplemented();
+      } else {
+        result.success(contacts);
+      }
+    }
+
+    @Override
+    void onFailure(Exception e) {
+      untrack();
+      super.onFailure(e);
+    }
+
+    @Override
+    void onCancelled() {
+      untrack();
+      result.error("CANCELLED", "Request " + requestId + " was cancelled", null);
+    }
+
+    private void untrack() {
+      if (requestId != null && inFlightRequests.get(requestId) == this) {
+        inFlightRequests.remove(requestId);
+      }
+    }
+  }
+
+  /**
+   * Serves the stored snapshot when there is one and checks it against the provider in the
+   * background; otherwise reads the address book and stores it for the next launch.
+   */
+  private ArrayList<Contact> getContactsFromSnapshot(final boolean localizedLabels) {
+    final ContactSnapshotStore.Snapshot snapshot = snapshotStore.read();
+    if (snapshot != null && snapshot.localizedLabels == localizedLabels) {
+      // The caller sorts and attaches avatars to the returned list, so reconcile a copy.
+      final ArrayList<Contact> known = new ArrayList<>(snapshot.contacts);
+      scheduler.submit(ContactsScheduler.Lane.BULK, new ContactsScheduler.Task<Void>() {
+        @Override
+        Void run() {
+          refreshSnapshot(snapshot.watermark, known, localizedLabels);
+          return null;
+        }
+
+        @Override
+        void onSuccess(Void value) {
+        }
+
+        @Override
+        void onFailure(Exception e) {
+          Log.e(LOG_TAG, "Could not refresh the contacts snapshot", e);
+        }
+      });
+      return snapshot.contacts;
+    }
+
+    // Taken before the read, so changes made while reading show up on the next check.
+    ContactSnapshotStore.Watermark current = ContactSnapshotStore.currentWatermark(contentResolver);
+    ArrayList<Contact> contacts = getContactsFrom(getCursor(null, null, ContactFields.ALL, ContactSorter.SortOrder.NONE, null), localizedLabels);
+    if (current != null) {
+      snapshotStore.write(contacts, current, localizedLabels);
+    }
+    return contacts;
+  }
+
+  /**
+   * Brings the stored snapshot up to date with the contacts changed since its watermark
+   */
+  private void refreshSnapshot(ContactSnapshotStore.Watermark known, ArrayList<Contact> contacts, boolean localizedLabels) {
+    ContactSnapshotStore.Watermark current = ContactSnapshotStore.currentWatermark(contentResolver);
+    if (current == null || current.matches(known)) {
+      return;
+    }
+    if (!known.deletionsLoggedAt(current.takenAt)) {
+      // The snapshot is older than the deletion log, so the delta could miss some deletions.
+      contacts = getContactsFrom(getCursor(null, null, ContactFields.ALL, ContactSorter.SortOrder.NONE, null), localizedLabels);
+    } else {
+      contacts = ContactChanges.since(contentResolver, resources, known.lastUpdatedTimestamp, localizedLabels).applyTo(contacts);
+    }
+    snapshotStore.write(contacts, current, localizedLabels);
+  }
+
+  /**
+   * @return the search index, read from the provider first if there is none yet or it was built
+   * with other labels
+   */
+  private synchronized ContactSearchIndex searchIndex(boolean localizedLabels) {
+    ContactSearchIndex index = searchIndex;
+    if (index == null || index.localizedLabels() != localizedLabels) {
+      // Taken before the read, so changes made while reading are applied by the next refresh.
+      ContactSnapshotStore.Watermark watermark = ContactSnapshotStore.currentWatermark(contentResolver);
+      index = new ContactSearchIndex(localizedLabels, watermark != null ? watermark.lastUpdatedTimestamp : 0);
+      index.addAll(getContactsFrom(getCursor(null, null, ContactFields.ALL, ContactSorter.SortOrder.NONE, null), localizedLabels));
+      searchIndex = index;
+    }
+    return index;
+  }
+
+  /**
+   * Applies the contacts changed since the search index was last brought up to date, if it has been built
+   */
+  private void refreshSearchIndex() {
+    final ContactSearchIndex index = searchIndex;
+    if (index == null) {
+      return;
+    }
+    scheduler.submit(ContactsScheduler.Lane.BULK, new ContactsScheduler.Task<Void>() {
+      @Override
+      Void run() {
+        index.apply(ContactChanges.since(contentResolver, resources, index.watermark(), index.localizedLabels()));
+        return null;
+      }
+
+      @Override
+      void onSuccess(Void value) {
+      }
+
+      @Override
+      void onFailure(Exception e) {
+        // Without this change the index would stay stale, so the next search builds it again.
+        Log.e(LOG_TAG, "Could not refresh the search index", e);
+        if (searchIndex == index) {
+          searchIndex = null;
+        }
+      }
+    });
+  }
+
+  private class GetContactChangesTask extends ReplyTask<HashMap<String, Object>> {
+
+    private long timestamp;
+    private boolean localizedLabels;
+
+    GetContactChangesTask(Result result, long timestamp, boolean localizedLabels) {
+      super(result);
+      this.timestamp = timestamp;
+      this.localizedLabels = localizedLabels;
+    }
+
+    @Override
+    HashMap<String, Object> run() {
+      return ContactChanges.since(contentResolver, resources, timestamp, localizedLabels).toMap();
+    }
+  }
+
+  /**
+   * Delivers contacts to the Dart side in pages over the contacts stream channel,
+   * so that no single message has to carry the whole address book.
+   */
+  private class ContactsStreamHandler implements EventChannel.StreamHandler {
+    private static final int DEFAULT_PAGE_SIZE = 500;
+    private StreamContactsTask task;
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+      if (task != null) {
+        task.cancel();
+      }
+      final HashMap args = (HashMap) arguments;
+      final Integer pageSize = (Integer) args.get("pageSize");
+      task = new StreamContactsTask(events, (String) args.get("query"), (boolean) args.get("withThumbnails"), (boolean) args.get("photoHighResolution"),
+              ContactSorter.SortOrder.resolve((String) args.get("sortBy"), (boolean) args.get("orderByGivenName")), (boolean) args.get("androidLocalizedLabels"),
+              AvatarFormat.fromMap((Map) args.get("avatarOptions")), pageSize != null && pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE);
+      scheduler.submit(ContactsScheduler.Lane.BULK, task);
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+      if (task != null) {
+        task.cancel();
+        task = null;
+      }
+    }
+  }
+
+  private class StreamContactsTask extends ContactsScheduler.Task<Void> {
+
+    private EventChannel.EventSink events;
+    private String query;
+    private boolean withThumbnails;
+    private boolean photoHighResolution;
+    private ContactSorter.SortOrder sortOrder;
+    private boolean localizedLabels;
+    private AvatarFormat avatarFormat;
+    private int pageSize;
+    private ArrayList<Contact> page;
+
+    StreamContactsTask(EventChannel.EventSink events, String query, boolean withThumbnails, boolean photoHighResolution, ContactSorter.SortOrder sortOrder, boolean localizedLabels, AvatarFormat avatarFormat, int pageSize) {
+      this.events = events;
+      this.query = query;
+      this.withThumbnails = withThumbnails;
+      this.photoHighResolution = photoHighResolution;
+      this.sortOrder = sortOrder;
+      this.localizedLabels = localizedLabels;
+      this.avatarFormat = avatarFormat;
+      this.pageSize = pageSize;
+    }
+
+    @Override
+    Void run() {
+      page = new ArrayList<>(pageSize);
+
+      if (ContactSorter.needsMemorySort(sortOrder)) {
+        // Sorting needs every contact before the first page can be sent.
+        ArrayList<Contact> contacts = getContactsFrom(getCursor(query, null, ContactFields.ALL, sortOrder, null), localizedLabels);
+        ContactSorter.sort(contacts, sortOrder);
+        for (Contact c : contacts) {
+          if (isCancelled()) {
+            return null;
+          }
+          addToPage(c);
+        }
       } else {
-        getContactResult.success(result);
+        Cursor cursor = getCursor(query, null, ContactFields.ALL, sortOrder, null);
+        if (cursor != null) {
+          try {
+            ContactCursorReader reader = new ContactCursorReader(cursor, resources, localizedLabels);
+            Contact c;
+            while ((c = reader.readNextContact(cursor)) != null) {
+              if (isCancelled()) {
+                return null;
+              }
+              addToPage(c);
+            }
+          } finally {
+            cursor.close();
+          }
+        }
+      }
+
+      if (!page.isEmpty()) {
+        sendPage();
+      }
+      return null;
+    }
+
+    private void addToPage(Contact contact) {
+      page.add(contact);
+      if (page.size() == pageSize) {
+        sendPage();
+      }
+    }
+
+    // Avatars and maps are only built for the page being sent, so the first
+    // page goes out before the rest of the address book is marshalled.
+    private void sendPage() {
+      if (withThumbnails) {
+        loadAvatars(page, photoHighResolution, avatarFormat);
+      }
+      final ArrayList<HashMap> contactMaps = new ArrayList<>(page.size());
+      for (Contact c : page) {
+        contactMaps.add(c.toMap());
       }
+      post(new Runnable() {
+        @Override
+        public void run() {
+          if (!isCancelled()) {
+            events.success(contactMaps);
+          }
+        }
+      });
+      page = new ArrayList<>(pageSize);
+    }
+
+    @Override
+    void onSuccess(Void value) {
+      events.endOfStream();
+    }
+
+    @Override
+    void onFailure(Exception e) {
+      Log.e(LOG_TAG, "Could not stream contacts", e);
+      events.error(null, e.getMessage(), null);
     }
   }
 
+  /**
+   * Thumbnails are read in bulk from the stored blobs; full resolution photos
+   * still need one stream per contact and are only loaded when asked for.
+   */
+  private void loadAvatars(ArrayList<Contact> contacts, boolean photoHighResolution, AvatarFormat avatarFormat) {
+    if (!photoHighResolution) {
+      AvatarLoader.loadThumbnails(contentResolver, contacts, avatarFormat);
+      return;
+    }
+    for (Contact contact : contacts) {
+      final byte[] avatar = AvatarLoader.loadPhoto(
+              contentResolver, contact.id, true, avatarFormat);
+      if (avatar != null) {
+        contact.avatar = avatar;
+      } else {
+        // To stay backwards-compatible, return an empty byte array rather than `null`.
+        contact.avatar = Contact.EMPTY_AVATAR;
+      }
+    }
+  }
 
-  private Cursor getCursor(String query, String rawContactId) {
+  private Cursor getCursor(String query, String rawContactId, int fields, ContactSorter.SortOrder sortOrder, CancellationSignal cancellationSignal) {
     String selection = "(" + ContactsContract.Data.MIMETYPE + "=? OR " + ContactsContract.Data.MIMETYPE + "=? OR "
             + ContactsContract.Data.MIMETYPE + "=? OR " + ContactsContract.Data.MIMETYPE + "=? OR "
             + ContactsContract.Data.MIMETYPE + "=? OR " + ContactsContract.Data.MIMETYPE + "=? OR "
@@ -482,19 +974,28 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
     ArrayList<String> selectionArgs = new ArrayList<>(Arrays.asList(CommonDataKinds.Note.CONTENT_ITEM_TYPE, Email.CONTENT_ITEM_TYPE,
             Phone.CONTENT_ITEM_TYPE, StructuredName.CONTENT_ITEM_TYPE, Organization.CONTENT_ITEM_TYPE,
             StructuredPostal.CONTENT_ITEM_TYPE, CommonDataKinds.Event.CONTENT_ITEM_TYPE, ContactsContract.RawContacts.ACCOUNT_TYPE));
+    if (fields != ContactFields.ALL) {
+      String[] mimeTypes = ContactFields.mimeTypes(fields);
+      selection = QueryChunks.in(ContactsContract.Data.MIMETYPE, mimeTypes.length);
+      selectionArgs = new ArrayList<>(Arrays.asList(mimeTypes));
+    }
     if (query != null) {
-      selectionArgs = new ArrayList<>();
+      if (fields == ContactFields.ALL) {
+        selectionArgs = new ArrayList<>();
+        selection = ContactsContract.Contacts.DISPLAY_NAME_PRIMARY + " LIKE ?";
+      } else {
+        selection += " AND " + ContactsContract.Contacts.DISPLAY_NAME_PRIMARY + " LIKE ?";
+      }
       selectionArgs.add(query + "%");
-      selection = ContactsContract.Contacts.DISPLAY_NAME_PRIMARY + " LIKE ?";
     }
     if (rawContactId != null) {
       selectionArgs.add(rawContactId);
       selection += " AND " + ContactsContract.Data.CONTACT_ID + " =?";
     }
-    return contentResolver.query(ContactsContract.Data.CONTENT_URI, PROJECTION, selection, selectionArgs.toArray(new String[selectionArgs.size()]), null);
+    return contentResolver.query(ContactsContract.Data.CONTENT_URI, ContactFields.projection(fields), selection, selectionArgs.toArray(new String[selectionArgs.size()]), ContactSorter.sqlOrder(sortOrder), cancellationSignal);
   }
 
-  private Cursor getCursorForPhone(String phone) {
+  private Cursor getCursorForPhone(String phone, ContactSorter.SortOrder sortOrder, CancellationSignal cancellationSignal) {
     if (phone.isEmpty())
       return null;
 
@@ -502,7 +1003,7 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
     String[] projection = new String[]{BaseColumns._ID};
 
     ArrayList<String> contactIds = new ArrayList<>();
-    Cursor phoneCursor = contentResolver.query(uri, projection, null, null, null);
+    Cursor phoneCursor = contentResolver.query(uri, projection, null, null, null, cancellationSignal);
     while (phoneCursor != null && phoneCursor.moveToNext()){
       contactIds.add(phoneCursor.getString(phoneCursor.getColumnIndex(BaseColumns._ID)));
     }
@@ -510,107 +1011,92 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
       phoneCursor.close();
 
     if (!contactIds.isEmpty()) {
-      String contactIdsListString = contactIds.toString().replace("[", "(").replace("]", ")");
-      String contactSelection = ContactsContract.Data.CONTACT_ID + " IN " + contactIdsListString;
-      return contentResolver.query(ContactsContract.Data.CONTENT_URI, PROJECTION, contactSelection, null, null);
+      String contactSelection = QueryChunks.in(ContactsContract.Data.CONTACT_ID, contactIds.size());
+      return contentResolver.query(ContactsContract.Data.CONTENT_URI, PROJECTION, contactSelection,
+              contactIds.toArray(new String[0]), ContactSorter.sqlOrder(sortOrder), cancellationSignal);
     }
 
     return null;
   }
 
-  private Cursor getCursorForEmail(String email) {
+  private Cursor getCursorForEmail(String email, ContactSorter.SortOrder sortOrder, CancellationSignal cancellationSignal) {
     if (email.isEmpty())
       return null;
     ArrayList<String> selectionArgs = new ArrayList<>(Arrays.asList("%" + email + "%"));
     String selection = Email.ADDRESS + " LIKE ?";
-    return contentResolver.query(ContactsContract.Data.CONTENT_URI, PROJECTION, selection, selectionArgs.toArray(new String[selectionArgs.size()]), null);
+    return contentResolver.query(ContactsContract.Data.CONTENT_URI, PROJECTION, selection, selectionArgs.toArray(new String[selectionArgs.size()]), ContactSorter.sqlOrder(sortOrder), cancellationSignal);
   }
 
   /**
-   * Builds the list of contacts from the cursor
-   * @param cursor
-   * @return the list of contacts
+   * Reads every contact matched by an index lookup in one batched query
+   * @param matches per looked up value, the identifiers of the contacts that matched it
+   * @return per looked up value, the maps of the contacts that still exist
    */
-  private ArrayList<Contact> getContactsFrom(Cursor cursor, boolean localizedLabels) {
-    HashMap<String, Contact> map = new LinkedHashMap<>();
-
-    while (cursor != null && cursor.moveToNext()) {
-      int columnIndex = cursor.getColumnIndex(ContactsContract.Data.CONTACT_ID);
-      String contactId = cursor.getString(columnIndex);
-
-      if (!map.containsKey(contactId)) {
-        map.put(contactId, new Contact(contactId));
-      }
-      Contact contact = map.get(contactId);
-
-      String mimeType = cursor.getString(cursor.getColumnIndex(ContactsContract.Data.MIMETYPE));
-      contact.displayName = cursor.getString(cursor.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME));
-      contact.androidAccountType = cursor.getString(cursor.getColumnIndex(ContactsContract.RawContacts.ACCOUNT_TYPE));
-      contact.androidAccountName = cursor.getString(cursor.getColumnIndex(ContactsContract.RawContacts.ACCOUNT_NAME));
-
-      //NAMES
-      if (mimeType.equals(CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)) {
-        contact.givenName = cursor.getString(cursor.getColumnIndex(StructuredName.GIVEN_NAME));
-        contact.middleName = cursor.getString(cursor.getColumnIndex(StructuredName.MIDDLE_NAME));
-        contact.familyName = cursor.getString(cursor.getColumnIndex(StructuredName.FAMILY_NAME));
-        contact.prefix = cursor.getString(cursor.getColumnIndex(StructuredName.PREFIX));
-        contact.suffix = cursor.getString(cursor.getColumnIndex(StructuredName.SUFFIX));
-      }
-      // NOTE
-      else if (mimeType.equals(CommonDataKinds.Note.CONTENT_ITEM_TYPE)) {
-        contact.note = cursor.getString(cursor.getColumnIndex(CommonDataKinds.Note.NOTE));
-      }
-      //PHONES
-      else if (mimeType.equals(CommonDataKinds.Phone.CONTENT_ITEM_TYPE)){
-        String phoneNumber = cursor.getString(cursor.getColumnIndex(Phone.NUMBER));
-        if (!TextUtils.isEmpty(phoneNumber)){
-          int type = cursor.getInt(cursor.getColumnIndex(Phone.TYPE));
-          String label = Item.getPhoneLabel(resources, type, cursor, localizedLabels);
-          contact.phones.add(new Item(label, phoneNumber, type));
-        }
-      }
-      //MAILS
-      else if (mimeType.equals(CommonDataKinds.Email.CONTENT_ITEM_TYPE)) {
-        String email = cursor.getString(cursor.getColumnIndex(Email.ADDRESS));
-        int type = cursor.getInt(cursor.getColumnIndex(Email.TYPE));
-        if (!TextUtils.isEmpty(email)) {
-          String label = Item.getEmailLabel(resources, type, cursor, localizedLabels);
-          contact.emails.add(new Item(label, email, type));
+  private ArrayList<ArrayList<HashMap>> readMatchedContacts(List<ArrayList<String>> matches, boolean localizedLabels) {
+    LinkedHashSet<String> uniqueIds = new LinkedHashSet<>();
+    for (ArrayList<String> ids : matches) {
+      uniqueIds.addAll(ids);
+    }
+    // Each contact is converted to a map once, however many values matched it.
+    HashMap<String, HashMap> contactMaps = new HashMap<>();
+    for (Contact contact : ContactCursorReader.readContactsByIds(contentResolver, resources, new ArrayList<>(uniqueIds), localizedLabels)) {
+      contactMaps.put(contact.identifier(), contact.toMap());
+    }
+    ArrayList<ArrayList<HashMap>> contactsPerMatch = new ArrayList<>(matches.size());
+    for (ArrayList<String> ids : matches) {
+      ArrayList<HashMap> contacts = new ArrayList<>(ids.size());
+      for (String id : ids) {
+        HashMap contact = contactMaps.get(id);
+        if (contact != null) {
+          contacts.add(contact);
         }
       }
-      //ORG
-      else if (mimeType.equals(CommonDataKinds.Organization.CONTENT_ITEM_TYPE)) {
-        contact.company = cursor.getString(cursor.getColumnIndex(Organization.COMPANY));
-        contact.jobTitle = cursor.getString(cursor.getColumnIndex(Organization.TITLE));
-      }
-      //ADDRESSES
-      else if (mimeType.equals(CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE)) {
-        int type = cursor.getInt(cursor.getColumnIndex(StructuredPostal.TYPE));
-        String label = PostalAddress.getLabel(resources, type, cursor, localizedLabels);
-        String street = cursor.getString(cursor.getColumnIndex(StructuredPostal.STREET));
-        String city = cursor.getString(cursor.getColumnIndex(StructuredPostal.CITY));
-        String postcode = cursor.getString(cursor.getColumnIndex(StructuredPostal.POSTCODE));
-        String region = cursor.getString(cursor.getColumnIndex(StructuredPostal.REGION));
-        String country = cursor.getString(cursor.getColumnIndex(StructuredPostal.COUNTRY));
-        contact.postalAddresses.add(new PostalAddress(label, street, city, postcode, region, country, type));
-      }
-      // BIRTHDAY
-      else if (mimeType.equals(CommonDataKinds.Event.CONTENT_ITEM_TYPE)) {
-        int eventType = cursor.getInt(cursor.getColumnIndex(CommonDataKinds.Event.TYPE));
-        if (eventType == CommonDataKinds.Event.TYPE_BIRTHDAY) {
-          contact.birthday = cursor.getString(cursor.getColumnIndex(CommonDataKinds.Event.START_DATE));
+      contactsPerMatch.add(contacts);
+    }
+    return contactsPerMatch;
+  }
+
+  /**
+   * @return the full contact with the given identifier, or null if there is none
+   */
+  private Contact readContactByIdentifier(String identifier, boolean localizedLabels) {
+    ArrayList<Contact> matchingContacts;
+    {
+      Cursor cursor = contentResolver.query(
+              ContactsContract.Data.CONTENT_URI, PROJECTION,
+              ContactsContract.RawContacts.CONTACT_ID + " = ?",
+              new String[]{identifier},
+              ContactsContract.Data.CONTACT_ID
+      );
+      try {
+        matchingContacts = getContactsFrom(cursor, localizedLabels);
+      } finally {
+        if(cursor != null) {
+          cursor.close();
         }
       }
     }
+    if(matchingContacts.size() > 0) {
+      return matchingContacts.iterator().next();
+    }
+    return null;
+  }
 
-    if(cursor != null)
-      cursor.close();
+  /**
+   * Builds the list of contacts from a cursor sorted by contact id
+   * @param cursor
+   * @return the list of contacts
+   */
+  private ArrayList<Contact> getContactsFrom(Cursor cursor, boolean localizedLabels) {
+    return ContactCursorReader.readOrderedContacts(cursor, resources, localizedLabels);
+  }
 
-    return new ArrayList<>(map.values());
+  private ArrayList<Contact> getContactsFrom(Cursor cursor, boolean localizedLabels, int fields, CancellationSignal cancellationSignal) {
+    return ContactCursorReader.readOrderedContacts(cursor, resources, localizedLabels, fields, cancellationSignal);
   }
 
   private void setAvatarDataForContactIfAvailable(Contact contact) {
-    Uri contactUri = ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, Integer.parseInt(contact.identifier));
+    Uri contactUri = ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, contact.id);
     Uri photoUri = Uri.withAppendedPath(contactUri, ContactsContract.Contacts.Photo.CONTENT_DIRECTORY);
     Cursor avatarCursor = contentResolver.query(photoUri,
             new String[] {ContactsContract.Contacts.Photo.PHOTO}, null, null, null);
@@ -624,286 +1110,96 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
   }
 
   private void getAvatar(final Contact contact, final boolean highRes,
-                         final Result result) {
-    new GetAvatarsTask(contact, highRes, contentResolver, result).executeOnExecutor(this.executor);
+                         final AvatarFormat avatarFormat, final Result result) {
+    scheduler.submit(ContactsScheduler.Lane.AVATAR, new GetAvatarsTask(contact, highRes, avatarFormat, contentResolver, avatarCache, result));
   }
 
-  private static class GetAvatarsTask extends AsyncTask<Void, Void, byte[]> {
+  private static class GetAvatarsTask extends ReplyTask<byte[]> {
     final Contact contact;
     final boolean highRes;
+    final AvatarFormat avatarFormat;
     final ContentResolver contentResolver;
-    final Result result;
+    final AvatarCache avatarCache;
 
-    GetAvatarsTask(final Contact contact, final boolean highRes,
-                   final ContentResolver contentResolver, final Result result) {
+    GetAvatarsTask(final Contact contact, final boolean highRes, final AvatarFormat avatarFormat,
+                   final ContentResolver contentResolver, final AvatarCache avatarCache, final Result result) {
+      super(result);
       this.contact = contact;
       this.highRes = highRes;
+      this.avatarFormat = avatarFormat;
       this.contentResolver = contentResolver;
-      this.result = result;
+      this.avatarCache = avatarCache;
     }
 
     @Override
-    protected byte[] doInBackground(final Void... params) {
-      // Load avatar for each contact identifier.
-      return loadContactPhotoHighRes(contact.identifier, highRes, contentResolver);
+    byte[] run() {
+      final String key = AvatarCache.keyFor(contentResolver, contact.id, highRes, avatarFormat);
+      if (key == null) {
+        // The contact has no photo.
+        return null;
+      }
+      byte[] avatar = avatarCache.get(key);
+      if (avatar == null) {
+        avatar = AvatarLoader.loadPhoto(contentResolver, contact.id, highRes, avatarFormat);
+        if (avatar != null) {
+          avatarCache.put(key, avatar);
+        }
+      }
+      return avatar;
     }
+  }
 
-    @Override
-    protected void onPostExecute(final byte[] avatar) {
-      result.success(avatar);
+  private static ArrayList<Contact> contactsFrom(List maps) {
+    ArrayList<Contact> contacts = new ArrayList<>(maps.size());
+    for (Object map : maps) {
+      contacts.add(Contact.fromMap((HashMap) map));
     }
+    return contacts;
   }
 
-  private static byte[] loadContactPhotoHighRes(final String identifier,
-                                                final boolean photoHighResolution, final ContentResolver contentResolver) {
-    try {
-      final Uri uri = ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, Long.parseLong(identifier));
-      final InputStream input = ContactsContract.Contacts.openContactPhotoInputStream(contentResolver, uri, photoHighResolution);
-
-      if (input == null) return null;
+  /**
+   * Runs on the write lane, so writes are applied one at a time in the order they were called,
+   * and reports back on the main thread.
+   */
+  private static class WriteContactsTask extends ReplyTask<Object> {
 
-      final Bitmap bitmap = BitmapFactory.decodeStream(input);
-      input.close();
+    private final String callMethod;
+    private final ContactsWriter writer;
+    private final Object contacts;
 
-      final ByteArrayOutputStream stream = new ByteArrayOutputStream();
-      bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
-      final byte[] bytes = stream.toByteArray();
-      stream.close();
-      return bytes;
-    } catch (final IOException ex){
-      Log.e(LOG_TAG, ex.getMessage());
-      return null;
-    }
-  }
-
-  private boolean addContact(Contact contact){
-
-    ArrayList<ContentProviderOperation> ops = new ArrayList<>();
-
-    ContentProviderOperation.Builder op = ContentProviderOperation.newInsert(ContactsContract.RawContacts.CONTENT_URI)
-            .withValue(ContactsContract.RawContacts.ACCOUNT_TYPE, null)
-            .withValue(ContactsContract.RawContacts.ACCOUNT_NAME, null);
-    ops.add(op.build());
-
-    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
-            .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
-            .withValue(StructuredName.GIVEN_NAME, contact.givenName)
-            .withValue(StructuredName.MIDDLE_NAME, contact.middleName)
-            .withValue(StructuredName.FAMILY_NAME, contact.familyName)
-            .withValue(StructuredName.PREFIX, contact.prefix)
-            .withValue(StructuredName.SUFFIX, contact.suffix);
-    ops.add(op.build());
-
-    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
-            .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Note.CONTENT_ITEM_TYPE)
-            .withValue(CommonDataKinds.Note.NOTE, contact.note);
-    ops.add(op.build());
-
-    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
-            .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Organization.CONTENT_ITEM_TYPE)
-            .withValue(Organization.COMPANY, contact.company)
-            .withValue(Organization.TITLE, contact.jobTitle);
-    ops.add(op.build());
-
-    //Photo
-    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
-            .withValue(ContactsContract.Data.IS_SUPER_PRIMARY, 1)
-            .withValue(ContactsContract.CommonDataKinds.Photo.PHOTO, contact.avatar)
-            .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.Photo.CONTENT_ITEM_TYPE);
-    ops.add(op.build());
-
-    op.withYieldAllowed(true);
-
-    //Phones
-    for(Item phone : contact.phones){
-      op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-              .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
-              .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Phone.CONTENT_ITEM_TYPE)
-              .withValue(ContactsContract.CommonDataKinds.Phone.NUMBER, phone.value);
-
-      if (phone.type == ContactsContract.CommonDataKinds.Phone.TYPE_CUSTOM){
-        op.withValue( ContactsContract.CommonDataKinds.Phone.TYPE, ContactsContract.CommonDataKinds.BaseTypes.TYPE_CUSTOM );
-        op.withValue(ContactsContract.CommonDataKinds.Phone.LABEL, phone.label);
-      } else
-        op.withValue(ContactsContract.CommonDataKinds.Phone.TYPE, phone.type);
-
-      ops.add(op.build());
-    }
-
-    //Emails
-    for (Item email : contact.emails) {
-      op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-              .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
-              .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Email.CONTENT_ITEM_TYPE)
-              .withValue(CommonDataKinds.Email.ADDRESS, email.value)
-              .withValue(CommonDataKinds.Email.TYPE, email.type);
-      ops.add(op.build());
-    }
-    //Postal addresses
-    for (PostalAddress address : contact.postalAddresses) {
-      op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-              .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
-              .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE)
-              .withValue(CommonDataKinds.StructuredPostal.TYPE, address.type)
-              .withValue(CommonDataKinds.StructuredPostal.LABEL, address.label)
-              .withValue(CommonDataKinds.StructuredPostal.STREET, address.street)
-              .withValue(CommonDataKinds.StructuredPostal.CITY, address.city)
-              .withValue(CommonDataKinds.StructuredPostal.REGION, address.region)
-              .withValue(CommonDataKinds.StructuredPostal.POSTCODE, address.postcode)
-              .withValue(CommonDataKinds.StructuredPostal.COUNTRY, address.country);
-      ops.add(op.build());
-    }
-
-    // Birthday
-    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
-            .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Event.CONTENT_ITEM_TYPE)
-            .withValue(CommonDataKinds.Event.TYPE, CommonDataKinds.Event.TYPE_BIRTHDAY)
-            .withValue(CommonDataKinds.Event.START_DATE, contact.birthday);
-    ops.add(op.build());
-
-    try {
-      contentResolver.applyBatch(ContactsContract.AUTHORITY, ops);
-      return true;
-    } catch (Exception e) {
-      return false;
+    WriteContactsTask(String callMethod, ContactsWriter writer, Object contacts, Result result) {
+      super(result);
+      this.callMethod = callMethod;
+      this.writer = writer;
+      this.contacts = contacts;
     }
-  }
-
-  private boolean deleteContact(Contact contact){
-    ArrayList<ContentProviderOperation> ops = new ArrayList<>();
-    ops.add(ContentProviderOperation.newDelete(ContactsContract.RawContacts.CONTENT_URI)
-            .withSelection(ContactsContract.RawContacts.CONTACT_ID + "=?", new String[]{String.valueOf(contact.identifier)})
-            .build());
-    try {
-      contentResolver.applyBatch(ContactsContract.AUTHORITY, ops);
-      return true;
-    } catch (Exception e) {
-      return false;
 
+    @SuppressWarnings("unchecked")
+    @Override
+    Object run() {
+      switch (callMethod) {
+        case "addContact": return writer.addContact((Contact) contacts);
+        case "deleteContact": return writer.deleteContact((Contact) contacts);
+        case "updateContact": return writer.updateContact((Contact) contacts);
+        case "addContacts": return writer.addContacts((List<Contact>) contacts);
+        case "updateContacts": return writer.updateContacts((List<Contact>) contacts);
+        default: return writer.deleteContacts((List<Contact>) contacts);
+      }
     }
-  }
 
-  private boolean updateContact(Contact contact) {
-    ArrayList<ContentProviderOperation> ops = new ArrayList<>();
-    ContentProviderOperation.Builder op;
-
-    // Drop all details about contact except name
-    op = ContentProviderOperation.newDelete(ContactsContract.Data.CONTENT_URI)
-            .withSelection(ContactsContract.Data.CONTACT_ID + "=? AND " + ContactsContract.Data.MIMETYPE + "=?",
-                    new String[]{String.valueOf(contact.identifier), ContactsContract.CommonDataKinds.Organization.CONTENT_ITEM_TYPE});
-    ops.add(op.build());
-
-    op = ContentProviderOperation.newDelete(ContactsContract.Data.CONTENT_URI)
-            .withSelection(ContactsContract.Data.CONTACT_ID + "=? AND " + ContactsContract.Data.MIMETYPE + "=?",
-                    new String[]{String.valueOf(contact.identifier), ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE});
-    ops.add(op.build());
-
-    op = ContentProviderOperation.newDelete(ContactsContract.Data.CONTENT_URI)
-            .withSelection(ContactsContract.Data.CONTACT_ID +"=? AND " + ContactsContract.Data.MIMETYPE + "=?",
-                    new String[]{String.valueOf(contact.identifier), ContactsContract.CommonDataKinds.Email.CONTENT_ITEM_TYPE});
-    ops.add(op.build());
-
-    op = ContentProviderOperation.newDelete(ContactsContract.Data.CONTENT_URI)
-            .withSelection(ContactsContract.Data.CONTACT_ID +"=? AND " + ContactsContract.Data.MIMETYPE + "=?",
-                    new String[]{String.valueOf(contact.identifier), ContactsContract.CommonDataKinds.Note.CONTENT_ITEM_TYPE});
-    ops.add(op.build());
-
-    op = ContentProviderOperation.newDelete(ContactsContract.Data.CONTENT_URI)
-            .withSelection(ContactsContract.Data.CONTACT_ID + "=? AND " + ContactsContract.Data.MIMETYPE + "=?",
-                    new String[]{String.valueOf(contact.identifier), ContactsContract.CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE});
-    ops.add(op.build());
-
-    //Photo
-    op = ContentProviderOperation.newDelete(ContactsContract.Data.CONTENT_URI)
-            .withSelection(ContactsContract.Data.CONTACT_ID + "=? AND " + ContactsContract.Data.MIMETYPE + "=?",
-                    new String[]{String.valueOf(contact.identifier), ContactsContract.CommonDataKinds.Photo.CONTENT_ITEM_TYPE});
-    ops.add(op.build());
-
-    // Update data (name)
-    op = ContentProviderOperation.newUpdate(ContactsContract.Data.CONTENT_URI)
-            .withSelection(ContactsContract.Data.CONTACT_ID + "=? AND " + ContactsContract.Data.MIMETYPE + "=?",
-                    new String[]{String.valueOf(contact.identifier), ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE})
-            .withValue(StructuredName.GIVEN_NAME, contact.givenName)
-            .withValue(StructuredName.MIDDLE_NAME, contact.middleName)
-            .withValue(StructuredName.FAMILY_NAME, contact.familyName)
-            .withValue(StructuredName.PREFIX, contact.prefix)
-            .withValue(StructuredName.SUFFIX, contact.suffix);
-    ops.add(op.build());
-
-    // Insert data back into contact
-    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-            .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.Organization.CONTENT_ITEM_TYPE)
-            .withValue(ContactsContract.Data.RAW_CONTACT_ID, contact.identifier)
-            .withValue(Organization.TYPE, Organization.TYPE_WORK)
-            .withValue(Organization.COMPANY, contact.company)
-            .withValue(Organization.TITLE, contact.jobTitle);
-    ops.add(op.build());
-
-    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-            .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.Note.CONTENT_ITEM_TYPE)
-            .withValue(ContactsContract.Data.RAW_CONTACT_ID, contact.identifier)
-            .withValue(CommonDataKinds.Note.NOTE, contact.note);
-    ops.add(op.build());
-
-    //Photo
-    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-            .withValue(ContactsContract.Data.RAW_CONTACT_ID, contact.identifier)
-            .withValue(ContactsContract.Data.IS_SUPER_PRIMARY, 1)
-            .withValue(ContactsContract.CommonDataKinds.Photo.PHOTO, contact.avatar)
-            .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.Photo.CONTENT_ITEM_TYPE);
-    ops.add(op.build());
-
-
-    for (Item phone : contact.phones) {
-      op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-              .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Phone.CONTENT_ITEM_TYPE)
-              .withValue(ContactsContract.Data.RAW_CONTACT_ID, contact.identifier)
-              .withValue(Phone.NUMBER, phone.value);
-
-      if (phone.type == ContactsContract.CommonDataKinds.Phone.TYPE_CUSTOM){
-        op.withValue( ContactsContract.CommonDataKinds.Phone.TYPE, ContactsContract.CommonDataKinds.BaseTypes.TYPE_CUSTOM );
-        op.withValue(ContactsContract.CommonDataKinds.Phone.LABEL, phone.label);
-      } else
-        op.withValue(ContactsContract.CommonDataKinds.Phone.TYPE, phone.type);
-
-      ops.add(op.build());
-    }
-
-    for (Item email : contact.emails) {
-      op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-              .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Email.CONTENT_ITEM_TYPE)
-              .withValue(ContactsContract.Data.RAW_CONTACT_ID, contact.identifier)
-              .withValue(CommonDataKinds.Email.ADDRESS, email.value)
-              .withValue(CommonDataKinds.Email.TYPE, email.type);
-      ops.add(op.build());
-    }
-
-    for (PostalAddress address : contact.postalAddresses) {
-      op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-              .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE)
-              .withValue(ContactsContract.Data.RAW_CONTACT_ID, contact.identifier)
-              .withValue(CommonDataKinds.StructuredPostal.TYPE, address.type)
-              .withValue(CommonDataKinds.StructuredPostal.STREET, address.street)
-              .withValue(CommonDataKinds.StructuredPostal.CITY, address.city)
-              .withValue(CommonDataKinds.StructuredPostal.REGION, address.region)
-              .withValue(CommonDataKinds.StructuredPostal.POSTCODE, address.postcode)
-              .withValue(CommonDataKinds.StructuredPostal.COUNTRY, address.country);
-      ops.add(op.build());
-    }
-
-    try {
-      contentResolver.applyBatch(ContactsContract.AUTHORITY, ops);
-      return true;
-    } catch (Exception e) {
-      // Log exception
-      Log.e("TAG", "Exception encountered while inserting contact: " );
-      e.printStackTrace();
-      return false;
+    @Override
+    void onSuccess(Object written) {
+      if (!(written instanceof Boolean)) {
+        result.success(written);
+      } else if ((Boolean) written) {
+        result.success(null);
+      } else if (callMethod.equals("addContact")) {
+        result.error(null, "Failed to add the contact", null);
+      } else if (callMethod.equals("deleteContact")) {
+        result.error(null, "Failed to delete the contact, make sure it has a valid identifier", null);
+      } else {
+        result.error(null, "Failed to update the contact, make sure it has a valid identifier", null);
+      }
     }
   }
 
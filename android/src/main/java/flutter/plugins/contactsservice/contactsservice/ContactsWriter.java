@@ -0,0 +1,471 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static android.provider.ContactsContract.CommonDataKinds;
+import static android.provider.ContactsContract.CommonDataKinds.Organization;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredName;
+
+/***
+ * Builds the provider operations for adding, updating and deleting contacts, and applies them
+ * either one contact per transaction or packed into batches for bulk writes.
+ ***/
+class ContactsWriter {
+
+  private static final String LOG_TAG = "flutter_contacts";
+
+  /**
+   * The contacts provider refuses more than 500 operations between two yield points; we stay
+   * below that for the whole batch. A contact with more operations than this gets a batch of its
+   * own, with a yield point every this many of its operations.
+   */
+  static final int MAX_OPERATIONS_PER_BATCH = 400;
+
+  // The columns read to diff an update against, shared by the different mimetypes.
+  private static final String[] CURRENT_ROW_PROJECTION;
+
+  static {
+    LinkedHashSet<String> columns = new LinkedHashSet<>(Arrays.asList(ContactsContract.Data._ID,
+            ContactsContract.Data.RAW_CONTACT_ID, ContactsContract.Data.CONTACT_ID, ContactsContract.Data.MIMETYPE));
+    for (String mimeType : DataRowDiff.MIMETYPES) {
+      columns.addAll(Arrays.asList(DataRowDiff.columnsOf(mimeType)));
+    }
+    CURRENT_ROW_PROJECTION = columns.toArray(new String[0]);
+  }
+
+  private interface OperationBuilder {
+    void append(Contact contact, ArrayList<ContentProviderOperation> ops);
+  }
+
+  private final OperationBuilder insertBuilder = new OperationBuilder() {
+    @Override
+    public void append(Contact contact, ArrayList<ContentProviderOperation> ops) {
+      appendInsertOperations(contact, ops);
+    }
+  };
+
+  private final OperationBuilder deleteBuilder = new OperationBuilder() {
+    @Override
+    public void append(Contact contact, ArrayList<ContentProviderOperation> ops) {
+      appendDeleteOperations(contact, ops);
+    }
+  };
+
+  private final ContentResolver contentResolver;
+
+  ContactsWriter(ContentResolver contentResolver) {
+    this.contentResolver = contentResolver;
+  }
+
+  boolean addContact(Contact contact) {
+    return applySingle(contact, insertBuilder) != null;
+  }
+
+  boolean deleteContact(Contact contact) {
+    return applySingle(contact, deleteBuilder) != null;
+  }
+
+  boolean updateContact(Contact contact) {
+    CurrentRows current = readCurrentRows(Collections.singletonList(contact.identifier()));
+    return current.exists(contact) && applySingle(contact, updateBuilder(current)) != null;
+  }
+
+  /**
+   * Inserts the contacts in as few transactions as the operation limit allows.
+   * @return for each contact, in order, the identifier of the new contact or null if it failed
+   */
+  ArrayList<String> addContacts(List<Contact> contacts) {
+    ContentProviderResult[][] results = applyInBatches(contacts, insertBuilder);
+
+    ArrayList<String> rawContactIds = new ArrayList<>();
+    for (ContentProviderResult[] result : results) {
+      if (result != null && result[0].uri != null) {
+        rawContactIds.add(String.valueOf(ContentUris.parseId(result[0].uri)));
+      }
+    }
+    HashMap<String, String> contactIds = contactIdsOf(rawContactIds);
+
+    ArrayList<String> identifiers = new ArrayList<>(contacts.size());
+    for (ContentProviderResult[] result : results) {
+      if (result == null || result[0].uri == null) {
+        identifiers.add(null);
+      } else {
+        identifiers.add(contactIds.get(String.valueOf(ContentUris.parseId(result[0].uri))));
+      }
+    }
+    return identifiers;
+  }
+
+  /**
+   * @return for each contact, in order, whether it was updated
+   */
+  ArrayList<Boolean> updateContacts(List<Contact> contacts) {
+    ArrayList<String> ids = new ArrayList<>(contacts.size());
+    for (Contact contact : contacts) {
+      ids.add(contact.identifier());
+    }
+    CurrentRows current = readCurrentRows(ids);
+    ArrayList<Boolean> updated = succeeded(applyInBatches(contacts, updateBuilder(current)));
+    for (int i = 0; i < contacts.size(); i++) {
+      if (!current.exists(contacts.get(i))) {
+        updated.set(i, false);
+      }
+    }
+    return updated;
+  }
+
+  /**
+   * @return for each contact, in order, whether it was deleted
+   */
+  ArrayList<Boolean> deleteContacts(List<Contact> contacts) {
+    return succeeded(applyInBatches(contacts, deleteBuilder));
+  }
+
+  private ContentProviderResult[] applySingle(Contact contact, OperationBuilder builder) {
+    ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+    builder.append(contact, ops);
+    try {
+      return contentResolver.applyBatch(ContactsContract.AUTHORITY, ops);
+    } catch (Exception e) {
+      Log.e(LOG_TAG, "Could not write contact " + contact.id, e);
+      return null;
+    }
+  }
+
+  /**
+   * Packs the operations of consecutive contacts into batches of at most
+   * {@link #MAX_OPERATIONS_PER_BATCH}. Back references are relative to the batch, so a contact that
+   * does not fit is rebuilt at the start of the next one. A contact larger than a batch gets one to
+   * itself, split by the yield points of its operations.
+   * @return the results of each contact's own operations, or null where it failed
+   */
+  private ContentProviderResult[][] applyInBatches(List<Contact> contacts, OperationBuilder builder) {
+    ContentProviderResult[][] results = new ContentProviderResult[contacts.size()][];
+    ArrayList<ContentProviderOperation> batch = new ArrayList<>();
+    ArrayList<Integer> starts = new ArrayList<>();
+    int first = 0;
+    for (int i = 0; i < contacts.size(); i++) {
+      int start = batch.size();
+      builder.append(contacts.get(i), batch);
+      if (start > 0 && batch.size() > MAX_OPERATIONS_PER_BATCH) {
+        batch.subList(start, batch.size()).clear();
+        applyBatch(contacts, first, batch, starts, builder, results);
+        batch.clear();
+        starts.clear();
+        first = i;
+        start = 0;
+        builder.append(contacts.get(i), batch);
+      }
+      starts.add(start);
+    }
+    if (!starts.isEmpty()) {
+      applyBatch(contacts, first, batch, starts, builder, results);
+    }
+    return results;
+  }
+
+  private void applyBatch(List<Contact> contacts, int first, ArrayList<ContentProviderOperation> batch,
+                          ArrayList<Integer> starts, OperationBuilder builder, ContentProviderResult[][] results) {
+    try {
+      // Contacts that are already up to date append nothing, and succeed without a write.
+      ContentProviderResult[] batchResults = batch.isEmpty() ? new ContentProviderResult[0]
+              : contentResolver.applyBatch(ContactsContract.AUTHORITY, batch);
+      for (int j = 0; j < starts.size(); j++) {
+        int end = j + 1 < starts.size() ? starts.get(j + 1) : batch.size();
+        results[first + j] = Arrays.copyOfRange(batchResults, starts.get(j), end);
+      }
+    } catch (Exception e) {
+      Log.e(LOG_TAG, "Could not apply a batch of " + starts.size() + " contacts", e);
+      if (starts.size() > 1) {
+        // Insert and update batches commit all or nothing and deletes can be repeated, so
+        // replaying each contact finds out which ones actually fail.
+        for (int j = 0; j < starts.size(); j++) {
+          results[first + j] = applySingle(contacts.get(first + j), builder);
+        }
+      }
+    }
+  }
+
+  private HashMap<String, String> contactIdsOf(List<String> rawContactIds) {
+    HashMap<String, String> contactIds = new HashMap<>();
+    for (List<String> chunk : QueryChunks.split(rawContactIds)) {
+      Cursor cursor = contentResolver.query(ContactsContract.RawContacts.CONTENT_URI,
+              new String[]{ContactsContract.RawContacts._ID, ContactsContract.RawContacts.CONTACT_ID},
+              QueryChunks.in(ContactsContract.RawContacts._ID, chunk.size()),
+              chunk.toArray(new String[0]), null);
+      if (cursor == null) {
+        continue;
+      }
+      try {
+        while (cursor.moveToNext()) {
+          contactIds.put(cursor.getString(0), cursor.getString(1));
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+    return contactIds;
+  }
+
+  private static ArrayList<Boolean> succeeded(ContentProviderResult[][] results) {
+    ArrayList<Boolean> succeeded = new ArrayList<>(results.length);
+    for (ContentProviderResult[] result : results) {
+      succeeded.add(result != null);
+    }
+    return succeeded;
+  }
+
+  /**
+   * Appends the operations inserting a new raw contact. Data rows reference it by its index in
+   * {@code ops}. Only a contact with more than {@link #MAX_OPERATIONS_PER_BATCH} operations has
+   * yield points, so a failed batch of other inserts creates none of its contacts.
+   */
+  private static void appendInsertOperations(Contact contact, ArrayList<ContentProviderOperation> ops) {
+    final int rawContactIndex = ops.size();
+
+    ContentProviderOperation.Builder op = ContentProviderOperation.newInsert(ContactsContract.RawContacts.CONTENT_URI)
+            .withValue(ContactsContract.RawContacts.ACCOUNT_TYPE, null)
+            .withValue(ContactsContract.RawContacts.ACCOUNT_NAME, null);
+    add(ops, rawContactIndex, op);
+
+    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
+            .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
+            .withValue(StructuredName.GIVEN_NAME, contact.givenName)
+            .withValue(StructuredName.MIDDLE_NAME, contact.middleName)
+            .withValue(StructuredName.FAMILY_NAME, contact.familyName)
+            .withValue(StructuredName.PREFIX, contact.prefix)
+            .withValue(StructuredName.SUFFIX, contact.suffix);
+    add(ops, rawContactIndex, op);
+
+    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
+            .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Note.CONTENT_ITEM_TYPE)
+            .withValue(CommonDataKinds.Note.NOTE, contact.note);
+    add(ops, rawContactIndex, op);
+
+    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
+            .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Organization.CONTENT_ITEM_TYPE)
+            .withValue(Organization.COMPANY, contact.company)
+            .withValue(Organization.TITLE, contact.jobTitle);
+    add(ops, rawContactIndex, op);
+
+    //Photo
+    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
+            .withValue(ContactsContract.Data.IS_SUPER_PRIMARY, 1)
+            .withValue(ContactsContract.CommonDataKinds.Photo.PHOTO, contact.avatar)
+            .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.Photo.CONTENT_ITEM_TYPE);
+    add(ops, rawContactIndex, op);
+
+    //Phones
+    for(Item phone : contact.phones){
+      op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+              .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
+              .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Phone.CONTENT_ITEM_TYPE)
+              .withValue(ContactsContract.CommonDataKinds.Phone.NUMBER, phone.value);
+
+      if (phone.type == ContactsContract.CommonDataKinds.Phone.TYPE_CUSTOM){
+        op.withValue( ContactsContract.CommonDataKinds.Phone.TYPE, ContactsContract.CommonDataKinds.BaseTypes.TYPE_CUSTOM );
+        op.withValue(ContactsContract.CommonDataKinds.Phone.LABEL, phone.label);
+      } else
+        op.withValue(ContactsContract.CommonDataKinds.Phone.TYPE, phone.type);
+
+      add(ops, rawContactIndex, op);
+    }
+
+    //Emails
+    for (Item email : contact.emails) {
+      op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+              .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
+              .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Email.CONTENT_ITEM_TYPE)
+              .withValue(CommonDataKinds.Email.ADDRESS, email.value)
+              .withValue(CommonDataKinds.Email.TYPE, email.type);
+      add(ops, rawContactIndex, op);
+    }
+    //Postal addresses
+    for (PostalAddress address : contact.postalAddresses) {
+      op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+              .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
+              .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE)
+              .withValue(CommonDataKinds.StructuredPostal.TYPE, address.type)
+              .withValue(CommonDataKinds.StructuredPostal.LABEL, address.label)
+              .withValue(CommonDataKinds.StructuredPostal.STREET, address.street)
+              .withValue(CommonDataKinds.StructuredPostal.CITY, address.city)
+              .withValue(CommonDataKinds.StructuredPostal.REGION, address.region)
+              .withValue(CommonDataKinds.StructuredPostal.POSTCODE, address.postcode)
+              .withValue(CommonDataKinds.StructuredPostal.COUNTRY, address.country);
+      add(ops, rawContactIndex, op);
+    }
+
+    // Birthday
+    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
+            .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Event.CONTENT_ITEM_TYPE)
+            .withValue(CommonDataKinds.Event.TYPE, CommonDataKinds.Event.TYPE_BIRTHDAY)
+            .withValue(CommonDataKinds.Event.START_DATE, contact.birthday);
+    add(ops, rawContactIndex, op);
+  }
+
+  private static void appendDeleteOperations(Contact contact, ArrayList<ContentProviderOperation> ops) {
+    ops.add(ContentProviderOperation.newDelete(ContactsContract.RawContacts.CONTENT_URI)
+            .withSelection(ContactsContract.RawContacts.CONTACT_ID + "=?", new String[]{String.valueOf(contact.id)})
+            .withYieldAllowed(true)
+            .build());
+  }
+
+  /** The rows an update is diffed against, read for all contacts of a write at once. */
+  private static final class CurrentRows {
+    final HashMap<String, ArrayList<DataRowDiff.Row>> rowsByContact = new HashMap<>();
+    // The raw contact new rows are inserted into, for every contact that exists.
+    final HashMap<String, Long> rawContactIds = new HashMap<>();
+
+    boolean exists(Contact contact) {
+      return rawContactIds.containsKey(contact.identifier());
+    }
+  }
+
+  private OperationBuilder updateBuilder(final CurrentRows current) {
+    return new OperationBuilder() {
+      @Override
+      public void append(Contact contact, ArrayList<ContentProviderOperation> ops) {
+        appendUpdateOperations(contact, current, ops);
+      }
+    };
+  }
+
+  /**
+   * Reads the rows of the {@link DataRowDiff#MIMETYPES} and the raw contacts of the given contacts
+   * with chunked queries
+   */
+  private CurrentRows readCurrentRows(List<String> contactIds) {
+    CurrentRows current = new CurrentRows();
+    for (List<String> chunk : QueryChunks.split(contactIds)) {
+      Cursor cursor = contentResolver.query(ContactsContract.RawContacts.CONTENT_URI,
+              new String[]{ContactsContract.RawContacts._ID, ContactsContract.RawContacts.CONTACT_ID},
+              ContactsContract.RawContacts.DELETED + "=0 AND " + QueryChunks.in(ContactsContract.RawContacts.CONTACT_ID, chunk.size()),
+              chunk.toArray(new String[0]), ContactsContract.RawContacts._ID);
+      if (cursor != null) {
+        try {
+          while (cursor.moveToNext()) {
+            if (!current.rawContactIds.containsKey(cursor.getString(1))) {
+              current.rawContactIds.put(cursor.getString(1), cursor.getLong(0));
+            }
+          }
+        } finally {
+          cursor.close();
+        }
+      }
+
+      String[] selectionArgs = new String[DataRowDiff.MIMETYPES.length + chunk.size()];
+      System.arraycopy(DataRowDiff.MIMETYPES, 0, selectionArgs, 0, DataRowDiff.MIMETYPES.length);
+      for (int i = 0; i < chunk.size(); i++) {
+        selectionArgs[DataRowDiff.MIMETYPES.length + i] = chunk.get(i);
+      }
+      cursor = contentResolver.query(ContactsContract.Data.CONTENT_URI, CURRENT_ROW_PROJECTION,
+              QueryChunks.in(ContactsContract.Data.MIMETYPE, DataRowDiff.MIMETYPES.length)
+                      + " AND " + QueryChunks.in(ContactsContract.Data.CONTACT_ID, chunk.size()),
+              selectionArgs, ContactsContract.Data._ID);
+      if (cursor == null) {
+        continue;
+      }
+      try {
+        while (cursor.moveToNext()) {
+          String mimeType = cursor.getString(3);
+          HashMap<String, Object> values = new HashMap<>();
+          for (String column : DataRowDiff.columnsOf(mimeType)) {
+            int index = cursor.getColumnIndex(column);
+            values.put(column, column.equals(CommonDataKinds.Photo.PHOTO) ? cursor.getBlob(index) : cursor.getString(index));
+          }
+          String contactId = cursor.getString(2);
+          ArrayList<DataRowDiff.Row> rows = current.rowsByContact.get(contactId);
+          if (rows == null) {
+            rows = new ArrayList<>();
+            current.rowsByContact.put(contactId, rows);
+          }
+          rows.add(new DataRowDiff.Row(cursor.getLong(0), cursor.getLong(1), mimeType, values));
+          if (mimeType.equals(StructuredName.CONTENT_ITEM_TYPE)) {
+            // New rows belong with the name, on the raw contact it is shown from.
+            current.rawContactIds.put(contactId, cursor.getLong(1));
+          }
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Appends only the operations that change the contact's rows. Nothing is appended for a contact
+   * that does not exist or is already up to date. Only a contact with more than
+   * {@link #MAX_OPERATIONS_PER_BATCH} operations has yield points, so a failed batch of
+   * updates commits none of its rows and the ids it was diffed against are still current.
+   */
+  private static void appendUpdateOperations(Contact contact, CurrentRows current, ArrayList<ContentProviderOperation> ops) {
+    Long rawContactId = current.rawContactIds.get(contact.identifier());
+    if (rawContactId == null) {
+      return;
+    }
+    ArrayList<DataRowDiff.Row> rows = current.rowsByContact.get(contact.identifier());
+    DataRowDiff diff = DataRowDiff.between(rows != null ? rows : new ArrayList<DataRowDiff.Row>(), contact, rawContactId);
+    final int first = ops.size();
+
+    for (long id : diff.deletes) {
+      add(ops, first, ContentProviderOperation.newDelete(ContentUris.withAppendedId(ContactsContract.Data.CONTENT_URI, id)));
+    }
+    for (DataRowDiff.Row row : diff.updates) {
+      ContentProviderOperation.Builder op = ContentProviderOperation.newUpdate(ContentUris.withAppendedId(ContactsContract.Data.CONTENT_URI, row.id));
+      withValues(op, row);
+      add(ops, first, op);
+    }
+    for (DataRowDiff.Row row : diff.inserts) {
+      ContentProviderOperation.Builder op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+              .withValue(ContactsContract.Data.RAW_CONTACT_ID, row.rawContactId)
+              .withValue(ContactsContract.Data.MIMETYPE, row.mimeType);
+      withValues(op, row);
+      if (row.mimeType.equals(Organization.CONTENT_ITEM_TYPE)) {
+        op.withValue(Organization.TYPE, Organization.TYPE_WORK);
+      } else if (row.mimeType.equals(CommonDataKinds.Photo.CONTENT_ITEM_TYPE)) {
+        op.withValue(ContactsContract.Data.IS_SUPER_PRIMARY, 1);
+      }
+      add(ops, first, op);
+    }
+  }
+
+  /**
+   * Adds an operation of the contact whose operations start at {@code first}, allowing a yield
+   * before every {@link #MAX_OPERATIONS_PER_BATCH}th of them so a contact too large for one batch
+   * stays under the provider's limit. Back references still resolve across yield points.
+   */
+  private static void add(ArrayList<ContentProviderOperation> ops, int first, ContentProviderOperation.Builder op) {
+    int index = ops.size() - first;
+    if (index > 0 && index % MAX_OPERATIONS_PER_BATCH == 0) {
+      op.withYieldAllowed(true);
+    }
+    ops.add(op.build());
+  }
+
+  /** Writes the columns the row has values for; the ones it leaves out keep what they are. */
+  private static void withValues(ContentProviderOperation.Builder op, DataRowDiff.Row row) {
+    for (String column : DataRowDiff.columnsOf(row.mimeType)) {
+      if (row.values.containsKey(column)) {
+        op.withValue(column, row.values.get(column));
+      }
+    }
+  }
+}
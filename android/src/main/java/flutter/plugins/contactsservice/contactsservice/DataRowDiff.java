@@ -0,0 +1,269 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static android.provider.ContactsContract.CommonDataKinds;
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Organization;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+
+/***
+ * The smallest set of Data row writes that turns a contact's current rows into the rows for its
+ * new values. Rows that are already right are left alone, a changed row is updated in place by
+ * its {@code Data._ID}, and only the rows left over on either side are inserted or deleted. So
+ * editing one phone number is a single update, and an unchanged photo is not written again.
+ ***/
+final class DataRowDiff {
+
+  /** The mimetypes an update manages; other rows, e.g. birthdays, are left as they are. */
+  static final String[] MIMETYPES = {
+          StructuredName.CONTENT_ITEM_TYPE,
+          Organization.CONTENT_ITEM_TYPE,
+          Phone.CONTENT_ITEM_TYPE,
+          Email.CONTENT_ITEM_TYPE,
+          CommonDataKinds.Note.CONTENT_ITEM_TYPE,
+          StructuredPostal.CONTENT_ITEM_TYPE,
+          CommonDataKinds.Photo.CONTENT_ITEM_TYPE,
+  };
+
+  private static final HashMap<String, String[]> COLUMNS = new HashMap<>();
+  /** The type a new row of a typed mimetype gets when the contact does not say. */
+  private static final HashMap<String, Integer> OTHER_TYPES = new HashMap<>();
+
+  static {
+    COLUMNS.put(StructuredName.CONTENT_ITEM_TYPE, new String[]{
+            StructuredName.GIVEN_NAME, StructuredName.MIDDLE_NAME, StructuredName.FAMILY_NAME,
+            StructuredName.PREFIX, StructuredName.SUFFIX});
+    COLUMNS.put(Organization.CONTENT_ITEM_TYPE, new String[]{Organization.COMPANY, Organization.TITLE});
+    COLUMNS.put(Phone.CONTENT_ITEM_TYPE, new String[]{Phone.NUMBER, Phone.TYPE, Phone.LABEL});
+    COLUMNS.put(Email.CONTENT_ITEM_TYPE, new String[]{Email.ADDRESS, Email.TYPE});
+    COLUMNS.put(CommonDataKinds.Note.CONTENT_ITEM_TYPE, new String[]{CommonDataKinds.Note.NOTE});
+    COLUMNS.put(StructuredPostal.CONTENT_ITEM_TYPE, new String[]{
+            StructuredPostal.TYPE, StructuredPostal.LABEL, StructuredPostal.STREET, StructuredPostal.CITY,
+            StructuredPostal.REGION, StructuredPostal.POSTCODE, StructuredPostal.COUNTRY});
+    COLUMNS.put(CommonDataKinds.Photo.CONTENT_ITEM_TYPE, new String[]{CommonDataKinds.Photo.PHOTO});
+
+    OTHER_TYPES.put(Phone.CONTENT_ITEM_TYPE, Phone.TYPE_OTHER);
+    OTHER_TYPES.put(Email.CONTENT_ITEM_TYPE, Email.TYPE_OTHER);
+    OTHER_TYPES.put(StructuredPostal.CONTENT_ITEM_TYPE, StructuredPostal.TYPE_OTHER);
+  }
+
+  /**
+   * A Data row, current or wanted, with the values of its mimetype's columns. A wanted row may
+   * leave columns out, which keeps their current values.
+   */
+  static final class Row {
+    /** The row's Data._ID, or 0 for a row that does not exist yet. */
+    final long id;
+    final long rawContactId;
+    final String mimeType;
+    final HashMap<String, Object> values;
+
+    Row(long id, long rawContactId, String mimeType, HashMap<String, Object> values) {
+      this.id = id;
+      this.rawContactId = rawContactId;
+      this.mimeType = mimeType;
+      this.values = values;
+    }
+  }
+
+  /** Rows to insert, with the raw contact they go to. */
+  final ArrayList<Row> inserts = new ArrayList<>();
+  /** Existing rows by id, with their new values. */
+  final ArrayList<Row> updates = new ArrayList<>();
+  /** The ids of the rows to delete. */
+  final ArrayList<Long> deletes = new ArrayList<>();
+
+  private DataRowDiff() {
+  }
+
+  boolean isEmpty() {
+    return inserts.isEmpty() && updates.isEmpty() && deletes.isEmpty();
+  }
+
+  /**
+   * @return the columns an update compares and writes for the given mimetype
+   */
+  static String[] columnsOf(String mimeType) {
+    return COLUMNS.get(mimeType);
+  }
+
+  /**
+   * @param current the contact's current rows of the {@link #MIMETYPES}
+   * @param rawContactId the raw contact new rows are inserted into
+   */
+  static DataRowDiff between(List<Row> current, Contact contact, long rawContactId) {
+    return between(current, rowsOf(contact, rawContactId));
+  }
+
+  static DataRowDiff between(List<Row> current, List<Row> wanted) {
+    DataRowDiff diff = new DataRowDiff();
+    LinkedHashMap<String, ArrayList<Row>> currentByType = byMimeType(current);
+    LinkedHashMap<String, ArrayList<Row>> wantedByType = byMimeType(wanted);
+    for (String mimeType : MIMETYPES) {
+      diff.add(currentByType.get(mimeType), wantedByType.get(mimeType));
+    }
+    return diff;
+  }
+
+  private void add(ArrayList<Row> current, ArrayList<Row> wanted) {
+    ArrayList<Row> unmatched = current != null ? new ArrayList<>(current) : new ArrayList<Row>();
+    ArrayList<Row> missing = new ArrayList<>();
+    if (wanted != null) {
+      // Rows that are already right are kept, wherever they are in the list.
+      for (Row row : wanted) {
+        int same = indexOfSame(unmatched, row);
+        if (same >= 0) {
+          unmatched.remove(same);
+        } else {
+          missing.add(row);
+        }
+      }
+    }
+    int reused = Math.min(unmatched.size(), missing.size());
+    for (int i = 0; i < reused; i++) {
+      Row old = unmatched.get(i);
+      updates.add(new Row(old.id, old.rawContactId, old.mimeType, missing.get(i).values));
+    }
+    for (Row row : missing.subList(reused, missing.size())) {
+      if (!hasAnyValue(row.values)) {
+        // A cleared name is only written over an existing row.
+        continue;
+      }
+      Integer otherType = OTHER_TYPES.get(row.mimeType);
+      if (otherType != null && !row.values.containsKey(Phone.TYPE)) {
+        row.values.put(Phone.TYPE, otherType);
+      }
+      inserts.add(row);
+    }
+    for (Row old : unmatched.subList(reused, unmatched.size())) {
+      deletes.add(old.id);
+    }
+  }
+
+  private static int indexOfSame(List<Row> rows, Row wanted) {
+    for (int i = 0; i < rows.size(); i++) {
+      if (sameValues(rows.get(i).values, wanted.values)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean sameValues(Map<String, Object> current, Map<String, Object> wanted) {
+    for (Map.Entry<String, Object> value : wanted.entrySet()) {
+      if (!same(current.get(value.getKey()), value.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean same(Object a, Object b) {
+    // The provider may hand back an empty string for a value that was written as null.
+    if (isEmpty(a) || isEmpty(b)) {
+      return isEmpty(a) && isEmpty(b);
+    }
+    if (a instanceof byte[] && b instanceof byte[]) {
+      return Arrays.equals((byte[]) a, (byte[]) b);
+    }
+    return a.toString().equals(b.toString());
+  }
+
+  private static boolean hasAnyValue(Map<String, Object> values) {
+    for (Object value : values.values()) {
+      if (!isEmpty(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isEmpty(Object value) {
+    return value == null
+            || (value instanceof String && ((String) value).isEmpty())
+            || (value instanceof byte[] && ((byte[]) value).length == 0);
+  }
+
+  private static LinkedHashMap<String, ArrayList<Row>> byMimeType(List<Row> rows) {
+    LinkedHashMap<String, ArrayList<Row>> byType = new LinkedHashMap<>();
+    for (Row row : rows) {
+      ArrayList<Row> ofType = byType.get(row.mimeType);
+      if (ofType == null) {
+        ofType = new ArrayList<>();
+        byType.put(row.mimeType, ofType);
+      }
+      ofType.add(row);
+    }
+    return byType;
+  }
+
+  /**
+   * @return the rows the contact's values call for; empty notes, organizations and photos have
+   * none, so their current row is deleted. Empty names only clear the name columns, as the name row
+   * also holds the display name and phonetic names, which are not read. Phones, emails and
+   * addresses of an unknown type, as all of them are when they come from Dart, keep the type and
+   * label of the row they match.
+   */
+  static ArrayList<Row> rowsOf(Contact contact, long rawContactId) {
+    ArrayList<Row> rows = new ArrayList<>();
+    add(rows, rawContactId, StructuredName.CONTENT_ITEM_TYPE, contact.givenName, contact.middleName,
+            contact.familyName, contact.prefix, contact.suffix);
+    addIfAny(rows, rawContactId, Organization.CONTENT_ITEM_TYPE, contact.company, contact.jobTitle);
+    addIfAny(rows, rawContactId, CommonDataKinds.Note.CONTENT_ITEM_TYPE, contact.note);
+    addIfAny(rows, rawContactId, CommonDataKinds.Photo.CONTENT_ITEM_TYPE, contact.avatar);
+    for (Item phone : contact.phones) {
+      boolean custom = phone.type == Phone.TYPE_CUSTOM;
+      HashMap<String, Object> values = add(rows, rawContactId, Phone.CONTENT_ITEM_TYPE, phone.value, phone.type,
+              custom ? phone.label : null);
+      keepTypeIfUnknown(values, phone.type, Phone.TYPE, Phone.LABEL);
+    }
+    for (Item email : contact.emails) {
+      HashMap<String, Object> values = add(rows, rawContactId, Email.CONTENT_ITEM_TYPE, email.value, email.type);
+      keepTypeIfUnknown(values, email.type, Email.TYPE);
+    }
+    for (PostalAddress address : contact.postalAddresses) {
+      // Like phone labels, the label is only stored for a custom type; the others are derived from it.
+      boolean custom = address.type == StructuredPostal.TYPE_CUSTOM;
+      HashMap<String, Object> values = add(rows, rawContactId, StructuredPostal.CONTENT_ITEM_TYPE, address.type,
+              custom ? address.label : null, address.street, address.city, address.region, address.postcode,
+              address.country);
+      keepTypeIfUnknown(values, address.type, StructuredPostal.TYPE, StructuredPostal.LABEL);
+    }
+    return rows;
+  }
+
+  private static void addIfAny(ArrayList<Row> rows, long rawContactId, String mimeType, Object... values) {
+    for (Object value : values) {
+      if (!isEmpty(value)) {
+        add(rows, rawContactId, mimeType, values);
+        return;
+      }
+    }
+  }
+
+  private static HashMap<String, Object> add(ArrayList<Row> rows, long rawContactId, String mimeType, Object... values) {
+    String[] columns = COLUMNS.get(mimeType);
+    HashMap<String, Object> row = new HashMap<>();
+    for (int i = 0; i < columns.length; i++) {
+      row.put(columns[i], values[i]);
+    }
+    rows.add(new Row(0, rawContactId, mimeType, row));
+    return row;
+  }
+
+  private static void keepTypeIfUnknown(HashMap<String, Object> values, int type, String... columns) {
+    if (type == Item.NO_TYPE) {
+      for (String column : columns) {
+        values.remove(column);
+      }
+    }
+  }
+}
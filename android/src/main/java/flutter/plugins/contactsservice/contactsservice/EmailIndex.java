@@ -0,0 +1,148 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+
+/***
+ * In-memory index of every email address in lower case, sorted, so that exact and prefix lookups
+ * are binary searches instead of a LIKE scan over the whole Data table.
+ ***/
+final class EmailIndex extends ProviderIndex<EmailIndex.Addresses> {
+
+  enum Match {
+    /** Addresses containing the text anywhere, read from the provider with a LIKE scan. */
+    CONTAINS,
+    /** Addresses starting with the text. */
+    PREFIX,
+    /** The address itself, ignoring case. */
+    EXACT;
+
+    static Match fromName(String name) {
+      if (name == null) {
+        return CONTAINS;
+      }
+      switch (name) {
+        case "prefix": return PREFIX;
+        case "exact": return EXACT;
+        default: return CONTAINS;
+      }
+    }
+  }
+
+  private static final String[] PROJECTION = {
+          Email.CONTACT_ID,
+          Email.ADDRESS,
+  };
+
+  /** Parallel arrays, ordered by address. */
+  static final class Addresses {
+    final String[] addresses;
+    final String[] contactIds;
+
+    Addresses(String[] addresses, String[] contactIds) {
+      this.addresses = addresses;
+      this.contactIds = contactIds;
+    }
+  }
+
+  private final ContentResolver contentResolver;
+
+  EmailIndex(ContentResolver contentResolver) {
+    this.contentResolver = contentResolver;
+  }
+
+  /**
+   * @param match {@link Match#EXACT} or {@link Match#PREFIX}
+   * @return the identifiers of the contacts with a matching address, without duplicates
+   */
+  ArrayList<String> lookup(String email, Match match) {
+    return lookup(get(), email, match);
+  }
+
+  /**
+   * @return per address, in the same order, the identifiers of the contacts that have it
+   */
+  ArrayList<ArrayList<String>> lookupAll(Iterable<String> emails) {
+    Addresses index = get();
+    ArrayList<ArrayList<String>> matches = new ArrayList<>();
+    for (String email : emails) {
+      matches.add(lookup(index, email, Match.EXACT));
+    }
+    return matches;
+  }
+
+  private static ArrayList<String> lookup(Addresses index, String email, Match match) {
+    LinkedHashSet<String> contactIds = new LinkedHashSet<>();
+    String key = normalize(email);
+    if (!key.isEmpty()) {
+      for (int i = lowerBound(index.addresses, key); i < index.addresses.length; i++) {
+        String address = index.addresses[i];
+        if (match == Match.EXACT ? !address.equals(key) : !address.startsWith(key)) {
+          break;
+        }
+        contactIds.add(index.contactIds[i]);
+      }
+    }
+    return new ArrayList<>(contactIds);
+  }
+
+  /**
+   * @return the position of the first address not before the key
+   */
+  private static int lowerBound(String[] addresses, String key) {
+    int low = 0;
+    int high = addresses.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (addresses[mid].compareTo(key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  @Override
+  Addresses build() {
+    ArrayList<String[]> rows = new ArrayList<>();
+    Cursor cursor = contentResolver.query(Email.CONTENT_URI, PROJECTION, null, null, null);
+    if (cursor != null) {
+      try {
+        while (cursor.moveToNext()) {
+          String address = normalize(cursor.getString(1));
+          if (!address.isEmpty()) {
+            rows.add(new String[]{address, cursor.getString(0)});
+          }
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+    String[][] sorted = rows.toArray(new String[0][]);
+    Arrays.sort(sorted, new Comparator<String[]>() {
+      @Override
+      public int compare(String[] a, String[] b) {
+        return a[0].compareTo(b[0]);
+      }
+    });
+    String[] addresses = new String[sorted.length];
+    String[] contactIds = new String[sorted.length];
+    for (int i = 0; i < sorted.length; i++) {
+      addresses[i] = sorted[i][0];
+      contactIds[i] = sorted[i][1];
+    }
+    return new Addresses(addresses, contactIds);
+  }
+
+  static String normalize(String email) {
+    return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+  }
+}
@@ -13,6 +13,9 @@ import java.util.HashMap;
  ***/
 public class Item {
 
+    /** The type of an item that does not have one, e.g. one sent from Dart. */
+    static final int NO_TYPE = -1;
+
     public String label, value;
     int type;
 
@@ -22,25 +25,38 @@ public class Item {
         this.type = type;
     }
 
-    HashMap<String, String> toMap() {
-        HashMap<String, String> result = new HashMap<>();
+    HashMap<String, Object> toMap() {
+        HashMap<String, Object> result = new HashMap<>();
         result.put("label", label);
         result.put("value", value);
-        result.put("type", String.valueOf(type));
+        result.put("type", type);
         return result;
     }
 
-    public static Item fromMap(HashMap<String, String> map) {
-        String label = map.get("label");
-        String value = map.get("value");
-        String type = map.get("type");
-        return new Item(label, value, type != null ? Integer.parseInt(type) : -1);
+    public static Item fromMap(HashMap<String, ?> map) {
+        String label = (String) map.get("label");
+        String value = (String) map.get("value");
+        return new Item(label, value, typeOf(map.get("type")));
+    }
+
+    /**
+     * @param type a type as an int, or as the string maps used to carry
+     * @return the type, or {@link #NO_TYPE} if there is none
+     */
+    static int typeOf(Object type) {
+        if (type instanceof Number) {
+            return ((Number) type).intValue();
+        }
+        return type != null ? Integer.parseInt((String) type) : NO_TYPE;
     }
 
     public static String getPhoneLabel(Resources resources, int type, Cursor cursor, boolean localizedLabels) {
+        return getPhoneLabel(resources, type, cursor.getString(cursor.getColumnIndex(CommonDataKinds.Phone.LABEL)), localizedLabels);
+    }
+
+    static String getPhoneLabel(Resources resources, int type, String customLabel, boolean localizedLabels) {
         if (localizedLabels) {
-            CharSequence localizedLabel = CommonDataKinds.Phone.getTypeLabel(resources, type, "");
-            return localizedLabel.toString().toLowerCase();
+            return LabelCache.localized(resources, ContactCursorReader.KIND_PHONE, type);
         } else {
             switch (type) {
                 case CommonDataKinds.Phone.TYPE_HOME:
@@ -60,8 +76,8 @@ public class Item {
                 case CommonDataKinds.Phone.TYPE_PAGER:
                     return "pager";
                 case CommonDataKinds.Phone.TYPE_CUSTOM:
-                    if (cursor.getString(cursor.getColumnIndex(CommonDataKinds.Phone.LABEL)) != null) {
-                        return cursor.getString(cursor.getColumnIndex(CommonDataKinds.Phone.LABEL)).toLowerCase();
+                    if (customLabel != null) {
+                        return customLabel.toLowerCase();
                     } else return "";
                 default:
                     return "other";
@@ -70,9 +86,12 @@ public class Item {
     }
 
     public static String getEmailLabel(Resources resources, int type, Cursor cursor, boolean localizedLabels) {
+        return getEmailLabel(resources, type, cursor.getString(cursor.getColumnIndex(CommonDataKinds.Email.LABEL)), localizedLabels);
+    }
+
+    static String getEmailLabel(Resources resources, int type, String customLabel, boolean localizedLabels) {
         if (localizedLabels) {
-            CharSequence localizedLabel = CommonDataKinds.Email.getTypeLabel(resources, type, "");
-            return localizedLabel.toString().toLowerCase();
+            return LabelCache.localized(resources, ContactCursorReader.KIND_EMAIL, type);
         } else {
             switch (type) {
                 case CommonDataKinds.Email.TYPE_HOME:
@@ -82,8 +101,8 @@ public class Item {
                 case CommonDataKinds.Email.TYPE_MOBILE:
                     return "mobile";
                 case CommonDataKinds.Email.TYPE_CUSTOM:
-                    if (cursor.getString(cursor.getColumnIndex(CommonDataKinds.Email.LABEL)) != null) {
-                        return cursor.getString(cursor.getColumnIndex(CommonDataKinds.Email.LABEL)).toLowerCase();
+                    if (customLabel != null) {
+                        return customLabel.toLowerCase();
                     } else return "";
                 default:
                     return "other";
@@ -0,0 +1,56 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.res.Resources;
+import android.util.SparseArray;
+
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+/***
+ * The localized, lower case labels of phone, email and postal address types, looked up once per
+ * type and locale instead of on every row. A custom type's own label is not covered; only the
+ * generic label of each type is, which is all the localized labels ever show.
+ ***/
+final class LabelCache {
+
+  private static final HashMap<Locale, SparseArray<String>> labelsByLocale = new HashMap<>();
+
+  private LabelCache() {
+  }
+
+  /**
+   * @param kind {@link ContactCursorReader#KIND_PHONE}, {@link ContactCursorReader#KIND_EMAIL} or
+   * {@link ContactCursorReader#KIND_POSTAL}
+   */
+  @SuppressWarnings("deprecation")
+  static String localized(Resources resources, int kind, int type) {
+    Locale locale = resources.getConfiguration().locale;
+    // Types are small ints, so the kind fits above them.
+    int key = kind << 16 | (type & 0xffff);
+    synchronized (labelsByLocale) {
+      SparseArray<String> labels = labelsByLocale.get(locale);
+      if (labels == null) {
+        labels = new SparseArray<>();
+        labelsByLocale.put(locale, labels);
+      }
+      String label = labels.get(key);
+      if (label == null) {
+        label = typeLabel(resources, kind, type).toString().toLowerCase();
+        labels.put(key, label);
+      }
+      return label;
+    }
+  }
+
+  private static CharSequence typeLabel(Resources resources, int kind, int type) {
+    switch (kind) {
+      case ContactCursorReader.KIND_PHONE: return Phone.getTypeLabel(resources, type, "");
+      case ContactCursorReader.KIND_EMAIL: return Email.getTypeLabel(resources, type, "");
+      default: return StructuredPostal.getTypeLabel(resources, type, "");
+    }
+  }
+}
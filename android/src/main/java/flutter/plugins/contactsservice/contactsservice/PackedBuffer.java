@@ -0,0 +1,235 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/***
+ * A growable {@link ByteBuffer} that writes the values of the {@link PackedContacts} format:
+ * varints, and strings encoded to UTF-8 straight from their chars without an intermediate byte
+ * array. The large direct buffers of bulk encodes are handed out by {@link #obtain} and returned
+ * with {@link #recycle}, so that back to back exports reuse the same native memory.
+ ***/
+final class PackedBuffer {
+
+  private static final int POOL_SIZE = 2;
+  // Buffers that grew past this for an unusually large address book are left to the collector.
+  private static final int MAX_POOLED_CAPACITY = 8 << 20;
+  private static final ArrayDeque<PackedBuffer> pool = new ArrayDeque<>();
+
+  private ByteBuffer buffer;
+  private final boolean direct;
+  private char[] chars = new char[64];
+
+  /**
+   * @param direct whether to allocate outside the Java heap, for buffers that live across calls
+   */
+  PackedBuffer(int capacity, boolean direct) {
+    this.direct = direct;
+    buffer = allocate(capacity);
+  }
+
+  /**
+   * @return an empty direct buffer from the pool, or a new one
+   */
+  static PackedBuffer obtain() {
+    synchronized (pool) {
+      PackedBuffer pooled = pool.poll();
+      if (pooled != null) {
+        return pooled;
+      }
+    }
+    return new PackedBuffer(64 << 10, true);
+  }
+
+  /**
+   * Empties the buffer and returns it to the pool; it must not be used afterwards
+   */
+  void recycle() {
+    clear();
+    if (!direct || buffer.capacity() > MAX_POOLED_CAPACITY) {
+      return;
+    }
+    synchronized (pool) {
+      if (pool.size() < POOL_SIZE) {
+        pool.push(this);
+      }
+    }
+  }
+
+  private ByteBuffer allocate(int capacity) {
+    return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
+  int size() {
+    return buffer.position();
+  }
+
+  void clear() {
+    buffer.clear();
+  }
+
+  private void ensure(int extra) {
+    if (buffer.remaining() < extra) {
+      ByteBuffer grown = allocate(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+      buffer.flip();
+      grown.put(buffer);
+      buffer = grown;
+    }
+  }
+
+  void putByte(int value) {
+    ensure(1);
+    buffer.put((byte) value);
+  }
+
+  void putVarint(int value) {
+    ensure(5);
+    while ((value & ~0x7f) != 0) {
+      buffer.put((byte) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  static int varintSize(int value) {
+    int size = 1;
+    while ((value & ~0x7f) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  /**
+   * Writes the value in decimal as a string, e.g. a contact id, without formatting it to a String
+   */
+  void putDecimal(long value) {
+    int length = 0;
+    boolean negative = value < 0;
+    long rest = value;
+    do {
+      chars[length++] = (char) ('0' + Math.abs(rest % 10));
+      rest /= 10;
+    } while (rest != 0);
+    if (negative) {
+      chars[length++] = '-';
+    }
+    for (int i = 0, j = length - 1; i < j; i++, j--) {
+      char c = chars[i];
+      chars[i] = chars[j];
+      chars[j] = c;
+    }
+    putChars(chars, length);
+  }
+
+  /**
+   * Writes the byte array prefixed with its length plus one, or 0 for null
+   */
+  void putBytes(byte[] value) {
+    if (value == null) {
+      putVarint(0);
+    } else {
+      putVarint(value.length + 1);
+      ensure(value.length);
+      buffer.put(value);
+    }
+  }
+
+  /**
+   * Writes the string as UTF-8 prefixed with its length plus one, or 0 for null
+   */
+  void putString(String value) {
+    if (value == null) {
+      putVarint(0);
+      return;
+    }
+    int length = value.length();
+    if (chars.length < length) {
+      chars = new char[Math.max(length, chars.length * 2)];
+    }
+    value.getChars(0, length, chars, 0);
+    putChars(chars, length);
+  }
+
+  /**
+   * Writes the first {@code length} chars like {@link #putString}; unpaired surrogates become '?'
+   * as they do in {@link String#getBytes}
+   */
+  void putChars(char[] source, int length) {
+    int utf8Length = 0;
+    for (int i = 0; i < length; i++) {
+      char c = source[i];
+      if (c < 0x80) {
+        utf8Length++;
+      } else if (c < 0x800) {
+        utf8Length += 2;
+      } else if (isSurrogatePair(source, i, length)) {
+        utf8Length += 4;
+        i++;
+      } else {
+        utf8Length += Character.isSurrogate(c) ? 1 : 3;
+      }
+    }
+    putVarint(utf8Length + 1);
+    ensure(utf8Length);
+    for (int i = 0; i < length; i++) {
+      char c = source[i];
+      if (c < 0x80) {
+        buffer.put((byte) c);
+      } else if (c < 0x800) {
+        buffer.put((byte) (0xc0 | c >> 6));
+        buffer.put((byte) (0x80 | c & 0x3f));
+      } else if (isSurrogatePair(source, i, length)) {
+        int codePoint = Character.toCodePoint(c, source[++i]);
+        buffer.put((byte) (0xf0 | codePoint >> 18));
+        buffer.put((byte) (0x80 | codePoint >> 12 & 0x3f));
+        buffer.put((byte) (0x80 | codePoint >> 6 & 0x3f));
+        buffer.put((byte) (0x80 | codePoint & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        buffer.put((byte) '?');
+      } else {
+        buffer.put((byte) (0xe0 | c >> 12));
+        buffer.put((byte) (0x80 | c >> 6 & 0x3f));
+        buffer.put((byte) (0x80 | c & 0x3f));
+      }
+    }
+  }
+
+  private static boolean isSurrogatePair(char[] source, int i, int length) {
+    return Character.isHighSurrogate(source[i]) && i + 1 < length && Character.isLowSurrogate(source[i + 1]);
+  }
+
+  /**
+   * Appends what was written to the other buffer
+   */
+  void put(PackedBuffer other) {
+    ensure(other.size());
+    if (other.buffer.hasArray()) {
+      buffer.put(other.buffer.array(), other.buffer.arrayOffset(), other.size());
+    } else {
+      ByteBuffer written = other.buffer.duplicate();
+      written.flip();
+      buffer.put(written);
+    }
+  }
+
+  /**
+   * @return a copy of what was written, for the method channel, which takes byte arrays
+   */
+  byte[] toByteArray() {
+    byte[] bytes = new byte[size()];
+    copyTo(bytes, 0);
+    return bytes;
+  }
+
+  /**
+   * Copies what was written into the array at the given offset
+   * @return the offset after the copied bytes
+   */
+  int copyTo(byte[] target, int offset) {
+    ByteBuffer written = buffer.duplicate();
+    written.flip();
+    written.get(target, offset, written.remaining());
+    return offset + size();
+  }
+}
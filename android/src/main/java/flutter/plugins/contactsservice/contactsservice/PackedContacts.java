@@ -0,0 +1,317 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/***
+ * A compact encoding of a contact list for the method channel: one byte array instead of a map per
+ * contact and per phone, email and address, each repeating its key names. The array starts with a
+ * schema, the name and kind of every field in the order the values follow, then holds one record
+ * per contact with its values only. Only the fields of the requested {@link ContactFields} are in
+ * the schema, so a record carries the same keys {@link Contact#toMap(int)} would have.
+ *
+ * Layout, with every number an unsigned LEB128 varint:
+ * <pre>
+ *   version                        one byte, {@link #VERSION}
+ *   field count, then per field    kind byte, name as a string
+ *   contact count, then per contact
+ *     record length in bytes, then the values in schema order
+ * </pre>
+ * A string or byte array is its length plus one followed by its bytes, so that 0 is null. An
+ * item list is its size, then per item its label, value and zigzag encoded type; a postal address
+ * list is the same with the label, street, city, postcode, region and country. Records carry their
+ * length so that a decoder can skip the fields of kinds it does not know. The Dart decoder is in
+ * lib/src/packed_contacts.dart.
+ ***/
+final class PackedContacts {
+
+  static final int VERSION = 1;
+
+  static final int STRING = 0;
+  static final int BYTES = 1;
+  static final int ITEMS = 2;
+  static final int POSTAL_ADDRESSES = 3;
+
+  /** The fields a record can have, in schema order, with the {@link ContactFields} group of each. */
+  enum Field {
+    IDENTIFIER("identifier", STRING, 0),
+    DISPLAY_NAME("displayName", STRING, 0),
+    GIVEN_NAME("givenName", STRING, ContactFields.NAMES),
+    MIDDLE_NAME("middleName", STRING, ContactFields.NAMES),
+    FAMILY_NAME("familyName", STRING, ContactFields.NAMES),
+    PREFIX("prefix", STRING, ContactFields.NAMES),
+    SUFFIX("suffix", STRING, ContactFields.NAMES),
+    COMPANY("company", STRING, ContactFields.ORGANIZATION),
+    JOB_TITLE("jobTitle", STRING, ContactFields.ORGANIZATION),
+    AVATAR("avatar", BYTES, 0),
+    NOTE("note", STRING, ContactFields.NOTE),
+    BIRTHDAY("birthday", STRING, ContactFields.BIRTHDAY),
+    ACCOUNT_TYPE("androidAccountType", STRING, 0),
+    ACCOUNT_NAME("androidAccountName", STRING, 0),
+    EMAILS("emails", ITEMS, ContactFields.EMAILS),
+    PHONES("phones", ITEMS, ContactFields.PHONES),
+    POSTAL_ADDRESSES("postalAddresses", PackedContacts.POSTAL_ADDRESSES, ContactFields.POSTAL_ADDRESSES);
+
+    final String key;
+    final int kind;
+    final int group;
+
+    Field(String key, int kind, int group) {
+      this.key = key;
+      this.kind = kind;
+      this.group = group;
+    }
+
+    static Field fromKey(String key) {
+      for (Field field : values()) {
+        if (field.key.equals(key)) {
+          return field;
+        }
+      }
+      return null;
+    }
+  }
+
+  private PackedContacts() {
+  }
+
+  /**
+   * @return the fields a record has for the given {@link ContactFields}
+   */
+  static List<Field> schema(int fields) {
+    ArrayList<Field> schema = new ArrayList<>();
+    for (Field field : Field.values()) {
+      if (field.group == 0 || ContactFields.has(fields, field.group)) {
+        schema.add(field);
+      }
+    }
+    return schema;
+  }
+
+  static byte[] encode(List<Contact> contacts, int fields) {
+    List<Field> schema = schema(fields);
+    PackedBuffer out = PackedBuffer.obtain();
+    try {
+      writeHeader(out, schema, contacts.size());
+      // Records are written here first, so that their length can go before them.
+      PackedBuffer record = new PackedBuffer(256, false);
+      for (Contact contact : contacts) {
+        record.clear();
+        for (Field field : schema) {
+          writeValue(record, contact, field);
+        }
+        out.putVarint(record.size());
+        out.put(record);
+      }
+      return out.toByteArray();
+    } finally {
+      out.recycle();
+    }
+  }
+
+  static void writeHeader(PackedBuffer out, List<Field> schema, int count) {
+    out.putByte(VERSION);
+    out.putVarint(schema.size());
+    for (Field field : schema) {
+      out.putByte(field.kind);
+      out.putString(field.key);
+    }
+    out.putVarint(count);
+  }
+
+  private static void writeValue(PackedBuffer out, Contact contact, Field field) {
+    switch (field) {
+      case IDENTIFIER:
+        if (contact.id == Contact.NO_ID) {
+          out.putVarint(0);
+        } else {
+          out.putDecimal(contact.id);
+        }
+        break;
+      case DISPLAY_NAME: out.putString(contact.displayName); break;
+      case GIVEN_NAME: out.putString(contact.givenName); break;
+      case MIDDLE_NAME: out.putString(contact.middleName); break;
+      case FAMILY_NAME: out.putString(contact.familyName); break;
+      case PREFIX: out.putString(contact.prefix); break;
+      case SUFFIX: out.putString(contact.suffix); break;
+      case COMPANY: out.putString(contact.company); break;
+      case JOB_TITLE: out.putString(contact.jobTitle); break;
+      case AVATAR: out.putBytes(contact.avatar); break;
+      case NOTE: out.putString(contact.note); break;
+      case BIRTHDAY: out.putString(contact.birthday); break;
+      case ACCOUNT_TYPE: out.putString(contact.androidAccountType); break;
+      case ACCOUNT_NAME: out.putString(contact.androidAccountName); break;
+      case EMAILS: writeItems(out, contact.emails); break;
+      case PHONES: writeItems(out, contact.phones); break;
+      case POSTAL_ADDRESSES: writePostalAddresses(out, contact.postalAddresses); break;
+    }
+  }
+
+  private static void writeItems(PackedBuffer out, List<Item> items) {
+    out.putVarint(items.size());
+    for (Item item : items) {
+      out.putString(item.label);
+      out.putString(item.value);
+      out.putVarint(zigzag(item.type));
+    }
+  }
+
+  private static void writePostalAddresses(PackedBuffer out, List<PostalAddress> addresses) {
+    out.putVarint(addresses.size());
+    for (PostalAddress address : addresses) {
+      out.putString(address.label);
+      out.putString(address.street);
+      out.putString(address.city);
+      out.putString(address.postcode);
+      out.putString(address.region);
+      out.putString(address.country);
+      out.putVarint(zigzag(address.type));
+    }
+  }
+
+  /**
+   * Reads back what {@link #encode} wrote
+   */
+  static ArrayList<Contact> decode(byte[] bytes) {
+    Input in = new Input(bytes);
+    int version = in.readByte();
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unsupported packed contacts version " + version);
+    }
+    int fieldCount = in.readVarint();
+    Field[] schema = new Field[fieldCount];
+    for (int i = 0; i < fieldCount; i++) {
+      int kind = in.readByte();
+      String key = in.readString();
+      schema[i] = Field.fromKey(key);
+      if (schema[i] == null || schema[i].kind != kind) {
+        throw new IllegalArgumentException("Unknown packed contact field " + key);
+      }
+    }
+    int count = in.readVarint();
+    ArrayList<Contact> contacts = new ArrayList<>(count);
+    for (int c = 0; c < count; c++) {
+      int length = in.readVarint();
+      int end = in.position + length;
+      Contact contact = new Contact(Contact.NO_ID);
+      for (Field field : schema) {
+        readValue(in, contact, field);
+      }
+      in.position = end;
+      contacts.add(contact);
+    }
+    return contacts;
+  }
+
+  private static void readValue(Input in, Contact contact, Field field) {
+    switch (field) {
+      case IDENTIFIER: contact.id = Contact.parseId(in.readString()); break;
+      case DISPLAY_NAME: contact.displayName = in.readString(); break;
+      case GIVEN_NAME: contact.givenName = in.readString(); break;
+      case MIDDLE_NAME: contact.middleName = in.readString(); break;
+      case FAMILY_NAME: contact.familyName = in.readString(); break;
+      case PREFIX: contact.prefix = in.readString(); break;
+      case SUFFIX: contact.suffix = in.readString(); break;
+      case COMPANY: contact.company = in.readString(); break;
+      case JOB_TITLE: contact.jobTitle = in.readString(); break;
+      case AVATAR:
+        byte[] avatar = in.readBytes();
+        contact.avatar = avatar != null && avatar.length == 0 ? Contact.EMPTY_AVATAR : avatar;
+        break;
+      case NOTE: contact.note = in.readString(); break;
+      case BIRTHDAY: contact.birthday = in.readString(); break;
+      case ACCOUNT_TYPE: contact.androidAccountType = in.readString(); break;
+      case ACCOUNT_NAME: contact.androidAccountName = in.readString(); break;
+      case EMAILS: contact.emails = readItems(in); break;
+      case PHONES: contact.phones = readItems(in); break;
+      case POSTAL_ADDRESSES: contact.postalAddresses = readPostalAddresses(in); break;
+    }
+  }
+
+  private static List<Item> readItems(Input in) {
+    int size = in.readVarint();
+    if (size == 0) {
+      return Collections.emptyList();
+    }
+    List<Item> items = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      String label = in.readString();
+      String value = in.readString();
+      items.add(new Item(label, value, unzigzag(in.readVarint())));
+    }
+    return items;
+  }
+
+  private static List<PostalAddress> readPostalAddresses(Input in) {
+    int size = in.readVarint();
+    if (size == 0) {
+      return Collections.emptyList();
+    }
+    List<PostalAddress> addresses = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      String label = in.readString();
+      String street = in.readString();
+      String city = in.readString();
+      String postcode = in.readString();
+      String region = in.readString();
+      String country = in.readString();
+      addresses.add(new PostalAddress(label, street, city, postcode, region, country, unzigzag(in.readVarint())));
+    }
+    return addresses;
+  }
+
+  static int zigzag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  static int unzigzag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static final class Input {
+    final byte[] bytes;
+    int position;
+
+    Input(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    int readByte() {
+      return bytes[position++] & 0xff;
+    }
+
+    int readVarint() {
+      int value = 0;
+      for (int shift = 0; ; shift += 7) {
+        int b = readByte();
+        value |= (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+    }
+
+    byte[] readBytes() {
+      int length = readVarint() - 1;
+      if (length < 0) {
+        return null;
+      }
+      byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+      position += length;
+      return value;
+    }
+
+    String readString() {
+      int length = readVarint() - 1;
+      if (length < 0) {
+        return null;
+      }
+      String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+  }
+}
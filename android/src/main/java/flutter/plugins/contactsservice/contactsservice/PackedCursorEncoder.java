@@ -0,0 +1,280 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.res.Resources;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.provider.ContactsContract;
+
+import static android.provider.ContactsContract.CommonDataKinds;
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+
+import java.util.Collections;
+import java.util.List;
+
+/***
+ * Encodes the rows of a {@link ContactsContract.Data} cursor sorted by contact straight into the
+ * {@link PackedContacts} format, for bulk exports that would otherwise build every contact three
+ * times: as {@link Contact}s, as maps and as codec bytes. Values are copied out of the cursor into
+ * one reused char buffer instead of a String each, and encoded to UTF-8 into a section per field;
+ * when a contact's rows are done, its sections are appended to a pooled {@link PackedBuffer} as
+ * one record.
+ *
+ * The bytes are the same as {@link PackedContacts#encode} gives for the contacts
+ * {@link ContactCursorReader#readOrderedContacts} reads from the cursor, without avatars.
+ ***/
+final class PackedCursorEncoder {
+
+  private static final char[][] MIMETYPE_CHARS = new char[ContactCursorReader.MIMETYPES.length][];
+  private static final int[] MIMETYPE_KINDS = new int[ContactCursorReader.MIMETYPES.length];
+
+  static {
+    for (int i = 0; i < MIMETYPE_CHARS.length; i++) {
+      MIMETYPE_CHARS[i] = ContactCursorReader.MIMETYPES[i].toCharArray();
+      MIMETYPE_KINDS[i] = ContactCursorReader.kindOf(ContactCursorReader.MIMETYPES[i]);
+    }
+  }
+
+  private final Cursor cursor;
+  private final ContactCursorReader columns;
+  private final Resources resources;
+  private final boolean localizedLabels;
+  private final int fields;
+  private final List<PackedContacts.Field> schema;
+
+  // The values of the current contact, and the size of its lists, by field ordinal.
+  private final PackedBuffer[] sections = new PackedBuffer[PackedContacts.Field.values().length];
+  private final int[] counts = new int[sections.length];
+  private final CharArrayBuffer chars = new CharArrayBuffer(64);
+
+  private PackedCursorEncoder(Cursor cursor, Resources resources, boolean localizedLabels, int fields) {
+    this.cursor = cursor;
+    this.columns = new ContactCursorReader(cursor, resources, localizedLabels, fields);
+    this.resources = resources;
+    this.localizedLabels = localizedLabels;
+    this.fields = fields;
+    this.schema = PackedContacts.schema(fields);
+    for (int i = 0; i < sections.length; i++) {
+      sections[i] = new PackedBuffer(64, false);
+    }
+  }
+
+  /**
+   * Encodes a cursor sorted by {@link ContactsContract.Data#CONTACT_ID}, or by a sort key and then
+   * the contact id, and closes it. Stops with an {@link android.os.OperationCanceledException} as
+   * soon as {@code cancellationSignal} is cancelled.
+   */
+  static byte[] encode(Cursor cursor, Resources resources, boolean localizedLabels, int fields, CancellationSignal cancellationSignal) {
+    if (cursor == null) {
+      return PackedContacts.encode(Collections.<Contact>emptyList(), fields);
+    }
+    PackedBuffer records = PackedBuffer.obtain();
+    try {
+      return new PackedCursorEncoder(cursor, resources, localizedLabels, fields).encode(records, cancellationSignal);
+    } finally {
+      records.recycle();
+      cursor.close();
+    }
+  }
+
+  private byte[] encode(PackedBuffer records, CancellationSignal cancellationSignal) {
+    int count = 0;
+    boolean inContact = false;
+    long contactId = 0;
+    while (cursor.moveToNext()) {
+      long rowContactId = cursor.getLong(columns.contactIdColumn);
+      if (!inContact || rowContactId != contactId) {
+        if (inContact) {
+          writeRecord(records);
+          count++;
+        }
+        if (cancellationSignal != null) {
+          cancellationSignal.throwIfCanceled();
+        }
+        startContact(rowContactId);
+        contactId = rowContactId;
+        inContact = true;
+      }
+      readRow();
+    }
+    if (inContact) {
+      writeRecord(records);
+      count++;
+    }
+
+    // The count goes before the records, so the header is only written once they are done.
+    PackedBuffer header = new PackedBuffer(256, false);
+    PackedContacts.writeHeader(header, schema, count);
+    byte[] bytes = new byte[header.size() + records.size()];
+    records.copyTo(bytes, header.copyTo(bytes, 0));
+    return bytes;
+  }
+
+  private PackedBuffer section(PackedContacts.Field field) {
+    return sections[field.ordinal()];
+  }
+
+  /**
+   * Clears the previous contact's values and takes the ones shared by all rows from the current one
+   */
+  private void startContact(long contactId) {
+    for (int i = 0; i < sections.length; i++) {
+      sections[i].clear();
+      counts[i] = 0;
+    }
+    section(PackedContacts.Field.IDENTIFIER).putDecimal(contactId);
+    putColumn(section(PackedContacts.Field.DISPLAY_NAME), columns.displayNameColumn);
+    section(PackedContacts.Field.AVATAR).putBytes(Contact.EMPTY_AVATAR);
+    putColumn(section(PackedContacts.Field.ACCOUNT_TYPE), columns.accountTypeColumn);
+    putColumn(section(PackedContacts.Field.ACCOUNT_NAME), columns.accountNameColumn);
+  }
+
+  /**
+   * Encodes the current row into its field sections, the way {@link ContactCursorReader#readRow}
+   * decodes it into a contact
+   */
+  private void readRow() {
+    int kind = kindOfRow();
+    if (!ContactFields.has(fields, ContactFields.ofKind(kind))) {
+      return;
+    }
+    switch (kind) {
+      case ContactCursorReader.KIND_NAME:
+        replace(PackedContacts.Field.GIVEN_NAME, columns.givenNameColumn);
+        replace(PackedContacts.Field.MIDDLE_NAME, columns.middleNameColumn);
+        replace(PackedContacts.Field.FAMILY_NAME, columns.familyNameColumn);
+        replace(PackedContacts.Field.PREFIX, columns.prefixColumn);
+        replace(PackedContacts.Field.SUFFIX, columns.suffixColumn);
+        break;
+      case ContactCursorReader.KIND_NOTE:
+        replace(PackedContacts.Field.NOTE, columns.noteColumn);
+        break;
+      case ContactCursorReader.KIND_PHONE: {
+        cursor.copyStringToBuffer(columns.phoneNumberColumn, chars);
+        if (chars.sizeCopied > 0) {
+          int type = cursor.getInt(columns.phoneTypeColumn);
+          String customLabel = type == Phone.TYPE_CUSTOM ? cursor.getString(columns.phoneLabelColumn) : null;
+          addItem(PackedContacts.Field.PHONES, Item.getPhoneLabel(resources, type, customLabel, localizedLabels), type);
+        }
+        break;
+      }
+      case ContactCursorReader.KIND_EMAIL: {
+        cursor.copyStringToBuffer(columns.emailAddressColumn, chars);
+        if (chars.sizeCopied > 0) {
+          int type = cursor.getInt(columns.emailTypeColumn);
+          String customLabel = type == Email.TYPE_CUSTOM ? cursor.getString(columns.emailLabelColumn) : null;
+          addItem(PackedContacts.Field.EMAILS, Item.getEmailLabel(resources, type, customLabel, localizedLabels), type);
+        }
+        break;
+      }
+      case ContactCursorReader.KIND_ORGANIZATION:
+        replace(PackedContacts.Field.COMPANY, columns.companyColumn);
+        replace(PackedContacts.Field.JOB_TITLE, columns.jobTitleColumn);
+        break;
+      case ContactCursorReader.KIND_POSTAL: {
+        int type = cursor.getInt(columns.postalTypeColumn);
+        String customLabel = type == StructuredPostal.TYPE_CUSTOM ? cursor.getString(columns.postalLabelColumn) : null;
+        PackedBuffer section = section(PackedContacts.Field.POSTAL_ADDRESSES);
+        section.putString(PostalAddress.getLabel(resources, type, customLabel, localizedLabels));
+        putColumn(section, columns.streetColumn);
+        putColumn(section, columns.cityColumn);
+        putColumn(section, columns.postcodeColumn);
+        putColumn(section, columns.regionColumn);
+        putColumn(section, columns.countryColumn);
+        section.putVarint(PackedContacts.zigzag(type));
+        counts[PackedContacts.Field.POSTAL_ADDRESSES.ordinal()]++;
+        break;
+      }
+      case ContactCursorReader.KIND_EVENT:
+        if (cursor.getInt(columns.eventTypeColumn) == CommonDataKinds.Event.TYPE_BIRTHDAY) {
+          replace(PackedContacts.Field.BIRTHDAY, columns.eventStartDateColumn);
+        }
+        break;
+    }
+  }
+
+  /**
+   * Appends a phone or email whose value was just copied into {@link #chars}
+   */
+  private void addItem(PackedContacts.Field field, String label, int type) {
+    PackedBuffer section = section(field);
+    section.putString(label);
+    section.putChars(chars.data, chars.sizeCopied);
+    section.putVarint(PackedContacts.zigzag(type));
+    counts[field.ordinal()]++;
+  }
+
+  /** A later row of the same kind wins, as it does when reading into a contact. */
+  private void replace(PackedContacts.Field field, int column) {
+    PackedBuffer section = section(field);
+    section.clear();
+    putColumn(section, column);
+  }
+
+  private void putColumn(PackedBuffer section, int column) {
+    if (cursor.isNull(column)) {
+      section.putVarint(0);
+    } else {
+      cursor.copyStringToBuffer(column, chars);
+      section.putChars(chars.data, chars.sizeCopied);
+    }
+  }
+
+  /**
+   * @return the {@link ContactCursorReader} kind of the current row, matching its mimetype
+   * without reading it into a String
+   */
+  private int kindOfRow() {
+    cursor.copyStringToBuffer(columns.mimeTypeColumn, chars);
+    for (int i = 0; i < MIMETYPE_CHARS.length; i++) {
+      if (sameChars(MIMETYPE_CHARS[i], chars.data, chars.sizeCopied)) {
+        return MIMETYPE_KINDS[i];
+      }
+    }
+    return ContactCursorReader.KIND_UNKNOWN;
+  }
+
+  private static boolean sameChars(char[] expected, char[] data, int length) {
+    if (expected.length != length) {
+      return false;
+    }
+    // Mimetypes share their prefix, so compare from the end.
+    for (int i = length - 1; i >= 0; i--) {
+      if (expected[i] != data[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void writeRecord(PackedBuffer records) {
+    int length = 0;
+    for (PackedContacts.Field field : schema) {
+      int size = sections[field.ordinal()].size();
+      if (isList(field)) {
+        length += PackedBuffer.varintSize(counts[field.ordinal()]) + size;
+      } else {
+        // An absent value is a single 0 for null.
+        length += size > 0 ? size : 1;
+      }
+    }
+    records.putVarint(length);
+    for (PackedContacts.Field field : schema) {
+      PackedBuffer section = sections[field.ordinal()];
+      if (isList(field)) {
+        records.putVarint(counts[field.ordinal()]);
+        records.put(section);
+      } else if (section.size() > 0) {
+        records.put(section);
+      } else {
+        records.putVarint(0);
+      }
+    }
+  }
+
+  private static boolean isList(PackedContacts.Field field) {
+    return field.kind == PackedContacts.ITEMS || field.kind == PackedContacts.POSTAL_ADDRESSES;
+  }
+}
@@ -0,0 +1,138 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+/***
+ * In-memory index from phone numbers to the contacts that have them, for resolving many numbers,
+ * e.g. for caller ID, without a provider query per number. Numbers are keyed by their last
+ * {@link #MIN_MATCH} digits, like the provider's own phone lookup, and a candidate matches when
+ * one number's digits end with the other's, so "+1 415-555-2671" and "(415) 555 2671" are the
+ * same number. Both the number as entered and its E.164 {@link Phone#NORMALIZED_NUMBER} are
+ * indexed.
+ ***/
+final class PhoneIndex extends ProviderIndex<HashMap<String, ArrayList<PhoneIndex.Entry>>> {
+
+  static final int MIN_MATCH = 7;
+
+  private static final String[] PROJECTION = {
+          Phone.CONTACT_ID,
+          Phone.NUMBER,
+          Phone.NORMALIZED_NUMBER,
+  };
+
+  static final class Entry {
+    final String digits;
+    final String contactId;
+
+    Entry(String digits, String contactId) {
+      this.digits = digits;
+      this.contactId = contactId;
+    }
+  }
+
+  private final ContentResolver contentResolver;
+
+  PhoneIndex(ContentResolver contentResolver) {
+    this.contentResolver = contentResolver;
+  }
+
+  /**
+   * @return the identifiers of the contacts with the given number, without duplicates
+   */
+  ArrayList<String> lookup(String number) {
+    return lookup(get(), number);
+  }
+
+  /**
+   * @return per number, in the same order, the identifiers of the contacts that have it
+   */
+  ArrayList<ArrayList<String>> lookupAll(Iterable<String> numbers) {
+    HashMap<String, ArrayList<Entry>> index = get();
+    ArrayList<ArrayList<String>> matches = new ArrayList<>();
+    for (String number : numbers) {
+      matches.add(lookup(index, number));
+    }
+    return matches;
+  }
+
+  private static ArrayList<String> lookup(HashMap<String, ArrayList<Entry>> index, String number) {
+    String digits = digitsOf(number);
+    ArrayList<Entry> candidates = digits.isEmpty() ? null : index.get(key(digits));
+    if (candidates == null) {
+      return new ArrayList<>();
+    }
+    LinkedHashSet<String> contactIds = new LinkedHashSet<>();
+    for (Entry entry : candidates) {
+      if (entry.digits.endsWith(digits) || digits.endsWith(entry.digits)) {
+        contactIds.add(entry.contactId);
+      }
+    }
+    return new ArrayList<>(contactIds);
+  }
+
+  @Override
+  HashMap<String, ArrayList<Entry>> build() {
+    HashMap<String, ArrayList<Entry>> index = new HashMap<>();
+    Cursor cursor = contentResolver.query(Phone.CONTENT_URI, PROJECTION, null, null, null);
+    if (cursor == null) {
+      return index;
+    }
+    try {
+      while (cursor.moveToNext()) {
+        String contactId = cursor.getString(0);
+        String digits = digitsOf(cursor.getString(1));
+        add(index, digits, contactId);
+        String normalizedDigits = digitsOf(cursor.getString(2));
+        if (!normalizedDigits.equals(digits)) {
+          add(index, normalizedDigits, contactId);
+        }
+      }
+    } finally {
+      cursor.close();
+    }
+    return index;
+  }
+
+  private static void add(HashMap<String, ArrayList<Entry>> index, String digits, String contactId) {
+    if (digits.isEmpty()) {
+      return;
+    }
+    String key = key(digits);
+    ArrayList<Entry> entries = index.get(key);
+    if (entries == null) {
+      entries = new ArrayList<>(1);
+      index.put(key, entries);
+    }
+    entries.add(new Entry(digits, contactId));
+  }
+
+  /**
+   * @return the number's last {@link #MIN_MATCH} digits, or all of them for shorter numbers
+   */
+  static String key(String digits) {
+    return digits.length() <= MIN_MATCH ? digits : digits.substring(digits.length() - MIN_MATCH);
+  }
+
+  /**
+   * @return the number without its formatting, e.g. "14155552671" for "+1 (415) 555-2671"
+   */
+  static String digitsOf(String number) {
+    if (number == null) {
+      return "";
+    }
+    StringBuilder digits = new StringBuilder(number.length());
+    for (int i = 0; i < number.length(); i++) {
+      char c = number.charAt(i);
+      if (c >= '0' && c <= '9') {
+        digits.append(c);
+      }
+    }
+    return digits.toString();
+  }
+}
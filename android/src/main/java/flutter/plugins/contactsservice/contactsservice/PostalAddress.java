@@ -5,7 +5,6 @@ import android.content.res.Resources;
 import android.database.Cursor;
 import android.os.Build;
 
-import static android.provider.ContactsContract.CommonDataKinds;
 import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
 
 import java.util.HashMap;
@@ -26,42 +25,44 @@ public class PostalAddress {
         this.type = type;
     }
 
-    HashMap<String, String> toMap() {
-        HashMap<String, String> result = new HashMap<>();
+    HashMap<String, Object> toMap() {
+        HashMap<String, Object> result = new HashMap<>();
         result.put("label", label);
         result.put("street", street);
         result.put("city", city);
         result.put("postcode", postcode);
         result.put("region", region);
         result.put("country", country);
-        result.put("type", String.valueOf(type));
+        result.put("type", type);
         return result;
     }
 
-    public static PostalAddress fromMap(HashMap<String, String> map) {
-        String label = map.get("label");
-        String street = map.get("street");
-        String city = map.get("city");
-        String postcode = map.get("postcode");
-        String region = map.get("region");
-        String country = map.get("country");
-        String type = map.get("type");
-        return new PostalAddress(label, street, city, postcode, region, country, type != null ? Integer.parseInt(type) : -1);
+    public static PostalAddress fromMap(HashMap<String, ?> map) {
+        String label = (String) map.get("label");
+        String street = (String) map.get("street");
+        String city = (String) map.get("city");
+        String postcode = (String) map.get("postcode");
+        String region = (String) map.get("region");
+        String country = (String) map.get("country");
+        return new PostalAddress(label, street, city, postcode, region, country, Item.typeOf(map.get("type")));
     }
 
     public static String getLabel(Resources resources, int type, Cursor cursor, boolean localizedLabels) {
+        return getLabel(resources, cursor.getInt(cursor.getColumnIndex(StructuredPostal.TYPE)),
+                cursor.getString(cursor.getColumnIndex(StructuredPostal.LABEL)), localizedLabels);
+    }
+
+    static String getLabel(Resources resources, int type, String customLabel, boolean localizedLabels) {
         if (localizedLabels) {
-            CharSequence localizedLabel = CommonDataKinds.StructuredPostal.getTypeLabel(resources, type, "");
-            return localizedLabel.toString().toLowerCase();
+            return LabelCache.localized(resources, ContactCursorReader.KIND_POSTAL, type);
         } else {
-            switch (cursor.getInt(cursor.getColumnIndex(StructuredPostal.TYPE))) {
+            switch (type) {
                 case StructuredPostal.TYPE_HOME:
                     return "home";
                 case StructuredPostal.TYPE_WORK:
                     return "work";
                 case StructuredPostal.TYPE_CUSTOM:
-                    final String label = cursor.getString(cursor.getColumnIndex(StructuredPostal.LABEL));
-                    return label != null ? label : "";
+                    return customLabel != null ? customLabel : "";
             }
             return "other";
         }
@@ -0,0 +1,51 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * An in-memory index over provider data that is built on first use and dropped by
+ * {@link #invalidate()} when the address book changes, to be built again on the next use. A built
+ * index is never modified, so reading it needs no lock.
+ ***/
+abstract class ProviderIndex<T> {
+
+  private volatile T index;
+  private final AtomicInteger version = new AtomicInteger();
+
+  /**
+   * Reads the index from the provider, on the calling background thread
+   */
+  abstract T build();
+
+  /**
+   * Drops the index, to be rebuilt from the provider on the next use
+   */
+  final void invalidate() {
+    version.incrementAndGet();
+    index = null;
+  }
+
+  /**
+   * @return the current index, built first if there is none
+   */
+  final T get() {
+    T current = index;
+    if (current != null) {
+      return current;
+    }
+    // Lookups arriving while the index is built wait for it instead of reading the provider too.
+    synchronized (this) {
+      current = index;
+      if (current != null) {
+        return current;
+      }
+      // A change arriving while the index is read leaves it unpublished, so it is read again next time.
+      int builtVersion = version.get();
+      current = build();
+      if (version.get() == builtVersion) {
+        index = current;
+      }
+      return current;
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Splits long lists of selection arguments into chunks that stay well below
+ * SQLite's limit of 999 bound parameters per statement.
+ ***/
+final class QueryChunks {
+
+  static final int MAX_ARGS = 500;
+
+  private QueryChunks() {
+  }
+
+  static <T> List<List<T>> split(List<T> values) {
+    List<List<T>> chunks = new ArrayList<>();
+    for (int start = 0; start < values.size(); start += MAX_ARGS) {
+      chunks.add(values.subList(start, Math.min(start + MAX_ARGS, values.size())));
+    }
+    return chunks;
+  }
+
+  /**
+   * @return an "IN (?,?,...)" clause for the given column with one placeholder per value
+   */
+  static String in(String column, int count) {
+    StringBuilder builder = new StringBuilder(column.length() + 6 + count * 2);
+    builder.append(column).append(" IN (");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append('?');
+    }
+    return builder.append(')').toString();
+  }
+}
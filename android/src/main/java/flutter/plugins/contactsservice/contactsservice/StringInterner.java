@@ -0,0 +1,94 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+/***
+ * Deduplicates the strings a single query reads over and over, such as account types and names
+ * and custom labels, so that thousands of contacts share a handful of instances. Values can be
+ * looked up by their chars, e.g. as copied out of a cursor with
+ * {@link android.database.Cursor#copyStringToBuffer}, so that a value seen before costs no String
+ * at all. Not thread safe; each reader keeps its own.
+ ***/
+final class StringInterner {
+
+  // Open addressing, hashed like String#hashCode so both lookups find the same slots.
+  private String[] table = new String[32];
+  private int size;
+
+  /**
+   * @return the instance equal to the given string, which is kept if there was none
+   */
+  String intern(String value) {
+    if (value == null) {
+      return null;
+    }
+    int mask = table.length - 1;
+    for (int i = spread(value.hashCode()) & mask; ; i = (i + 1) & mask) {
+      String known = table[i];
+      if (known == null) {
+        return add(i, value);
+      }
+      if (known.equals(value)) {
+        return known;
+      }
+    }
+  }
+
+  /**
+   * @return the instance made of the first {@code length} chars, creating it only if there was none
+   */
+  String intern(char[] data, int length) {
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + data[i];
+    }
+    int mask = table.length - 1;
+    for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+      String known = table[i];
+      if (known == null) {
+        return add(i, new String(data, 0, length));
+      }
+      if (sameChars(known, data, length)) {
+        return known;
+      }
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  private String add(int slot, String value) {
+    table[slot] = value;
+    // Kept at most half full, so probes stay short.
+    if (++size * 2 > table.length) {
+      String[] old = table;
+      table = new String[old.length * 2];
+      int mask = table.length - 1;
+      for (String known : old) {
+        if (known != null) {
+          int i = spread(known.hashCode()) & mask;
+          while (table[i] != null) {
+            i = (i + 1) & mask;
+          }
+          table[i] = known;
+        }
+      }
+    }
+    return value;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private static boolean sameChars(String known, char[] data, int length) {
+    if (known.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (known.charAt(i) != data[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,67 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class AvatarCacheTest {
+
+  @Test
+  public void evictsLeastRecentlyUsedByBytes() {
+    AvatarCache cache = new AvatarCache(100);
+    cache.put("a", new byte[40]);
+    cache.put("b", new byte[40]);
+    cache.get("a");
+    cache.put("c", new byte[40]);
+
+    assertThat(cache.get("a")).isNotNull();
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("c")).isNotNull();
+
+    HashMap<String, Object> stats = cache.stats();
+    assertThat(stats.get("hits")).isEqualTo(3);
+    assertThat(stats.get("misses")).isEqualTo(1);
+    assertThat(stats.get("evictions")).isEqualTo(1);
+    assertThat(stats.get("sizeBytes")).isEqualTo(80);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void setMaxBytes_rejectsSizesBelowOneByte() {
+    new AvatarCache(100).setMaxBytes(0);
+  }
+
+  @Test
+  public void setMaxBytes_evictsDownToNewSize() {
+    AvatarCache cache = new AvatarCache(100);
+    cache.put("a", new byte[40]);
+    cache.put("b", new byte[40]);
+
+    cache.setMaxBytes(50);
+
+    assertThat(cache.get("a")).isNull();
+    assertThat(cache.stats().get("maxBytes")).isEqualTo(50);
+  }
+
+  @Test
+  public void key_changesWithPhotoVersion() {
+    String before = AvatarCache.key(7, true, AvatarFormat.ORIGINAL, 10, 0);
+    String after = AvatarCache.key(7, true, AvatarFormat.ORIGINAL, 11, 0);
+
+    assertThat(before).isNotEqualTo(after);
+    assertThat(AvatarCache.key(7, false, AvatarFormat.ORIGINAL, 10, 0)).isNotEqualTo(before);
+  }
+
+  @Test
+  public void key_keepsContactIdAndPhotoVersionApart() {
+    String key = AvatarCache.key(1, false, AvatarFormat.ORIGINAL, 10, 0);
+
+    assertThat(key).isEqualTo("1/t/10/0/original");
+    assertThat(AvatarCache.key(10, false, AvatarFormat.ORIGINAL, 1, 0)).isNotEqualTo(key);
+    assertThat(AvatarCache.key(13, true, AvatarFormat.ORIGINAL, 10, 0)).isNotEqualTo(key);
+  }
+}
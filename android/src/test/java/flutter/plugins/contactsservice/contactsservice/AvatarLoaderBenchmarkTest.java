@@ -0,0 +1,86 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.GraphicsMode;
+
+/**
+ * Compares returning a stored 720x720 photo as is with the previous avatar path, which decoded it
+ * and re-encoded it as PNG at quality 100. Timings depend on the machine, so this is run by hand
+ * rather than with the unit tests.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AvatarLoaderBenchmarkTest {
+
+  private static final int WARMUP_RUNS = 2;
+  private static final int MEASURED_RUNS = 20;
+
+  @Test
+  @Ignore("Benchmark, run by hand")
+  public void readPhoto_passthroughIsCheaperThanPngReencoding() throws IOException {
+    byte[] storedPhoto = storedPhoto();
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      AvatarLoader.readPhoto(new ByteArrayInputStream(storedPhoto), AvatarFormat.ORIGINAL);
+      decodeAndEncodePng(new ByteArrayInputStream(storedPhoto));
+    }
+
+    long pngNanos = 0;
+    long passthroughNanos = 0;
+    int pngSize = 0;
+    int passthroughSize = 0;
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      long start = System.nanoTime();
+      pngSize = decodeAndEncodePng(new ByteArrayInputStream(storedPhoto)).length;
+      pngNanos += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      passthroughSize = AvatarLoader.readPhoto(new ByteArrayInputStream(storedPhoto), AvatarFormat.ORIGINAL).length;
+      passthroughNanos += System.nanoTime() - start;
+    }
+
+    assertWithMessage("passthrough microseconds per photo, against PNG re-encoding")
+            .that(passthroughNanos / MEASURED_RUNS / 1000)
+            .isLessThan(pngNanos / MEASURED_RUNS / 1000);
+    assertWithMessage("passthrough bytes per photo, against PNG re-encoding")
+            .that(passthroughSize)
+            .isLessThan(pngSize);
+  }
+
+  private static byte[] storedPhoto() {
+    Bitmap bitmap = Bitmap.createBitmap(720, 720, Bitmap.Config.ARGB_8888);
+    Canvas canvas = new Canvas(bitmap);
+    Paint paint = new Paint();
+    for (int i = 0; i < 720; i += 8) {
+      paint.setColor(Color.rgb(i % 256, (i * 3) % 256, (i * 7) % 256));
+      canvas.drawRect(i, 0, i + 8, 720 - i, paint);
+    }
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    bitmap.compress(Bitmap.CompressFormat.JPEG, 90, stream);
+    return stream.toByteArray();
+  }
+
+  /** The previous avatar path: decode the stored photo and re-encode it as PNG at quality 100. */
+  private static byte[] decodeAndEncodePng(InputStream input) throws IOException {
+    Bitmap bitmap = BitmapFactory.decodeStream(input);
+    input.close();
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
+    return stream.toByteArray();
+  }
+}
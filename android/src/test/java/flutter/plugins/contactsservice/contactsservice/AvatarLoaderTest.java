@@ -0,0 +1,93 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.GraphicsMode;
+
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AvatarLoaderTest {
+
+  private static byte[] storedPhoto;
+
+  @BeforeClass
+  public static void createStoredPhoto() {
+    Bitmap bitmap = Bitmap.createBitmap(720, 720, Bitmap.Config.ARGB_8888);
+    Canvas canvas = new Canvas(bitmap);
+    Paint paint = new Paint();
+    for (int i = 0; i < 720; i += 8) {
+      paint.setColor(Color.rgb(i % 256, (i * 3) % 256, (i * 7) % 256));
+      canvas.drawRect(i, 0, i + 8, 720 - i, paint);
+    }
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    bitmap.compress(Bitmap.CompressFormat.JPEG, 90, stream);
+    storedPhoto = stream.toByteArray();
+  }
+
+  @Test
+  public void readPhoto_passthroughReturnsStoredBytes() throws IOException {
+    byte[] photo = AvatarLoader.readPhoto(new ByteArrayInputStream(storedPhoto), AvatarFormat.ORIGINAL);
+
+    assertThat(photo).isEqualTo(storedPhoto);
+  }
+
+  @Test
+  public void readPhoto_readsPhotosLargerThanItsBuffersOneAfterAnother() throws IOException {
+    byte[] large = new byte[200 * 1024];
+    for (int i = 0; i < large.length; i++) {
+      large[i] = (byte) i;
+    }
+
+    assertThat(AvatarLoader.readPhoto(new ByteArrayInputStream(large), AvatarFormat.ORIGINAL)).isEqualTo(large);
+    assertThat(AvatarLoader.readPhoto(new ByteArrayInputStream(storedPhoto), AvatarFormat.ORIGINAL)).isEqualTo(storedPhoto);
+  }
+
+  @Test
+  public void readPhoto_downsamplesToMaxDimension() throws IOException {
+    AvatarFormat format = new AvatarFormat(Bitmap.CompressFormat.JPEG, 80, 96);
+
+    byte[] photo = AvatarLoader.readPhoto(new ByteArrayInputStream(storedPhoto), format);
+
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(photo, 0, photo.length, options);
+    assertThat(options.outMimeType).isEqualTo("image/jpeg");
+    assertThat(options.outWidth).isEqualTo(96);
+    assertThat(options.outHeight).isEqualTo(96);
+  }
+
+  @Test
+  public void sampleSize_keepsAtLeastMaxDimension() {
+    assertThat(AvatarLoader.sampleSize(720, 720, 96)).isEqualTo(4);
+    assertThat(AvatarLoader.sampleSize(96, 96, 96)).isEqualTo(1);
+    assertThat(AvatarLoader.sampleSize(50, 50, 96)).isEqualTo(1);
+  }
+
+  @Test
+  public void readPhoto_transcodesToRequestedFormatWithinMaxDimension() throws IOException {
+    AvatarFormat format = new AvatarFormat(Bitmap.CompressFormat.PNG, 100, 200);
+
+    byte[] photo = AvatarLoader.readPhoto(new ByteArrayInputStream(storedPhoto), format);
+
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(photo, 0, photo.length, options);
+    assertThat(options.outMimeType).isEqualTo("image/png");
+    assertThat(options.outWidth).isEqualTo(200);
+    assertThat(options.outHeight).isEqualTo(200);
+  }
+}
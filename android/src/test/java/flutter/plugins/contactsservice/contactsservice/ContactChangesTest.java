@@ -0,0 +1,29 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ContactChangesTest {
+
+  @Test
+  public void applyTo_removesReplacesAndAppends() {
+    Contact updated = new Contact("2");
+    updated.givenName = "updated";
+    ContactChanges changes = new ContactChanges(
+        new ArrayList<>(Arrays.asList(updated, new Contact("4"))),
+        new ArrayList<>(Arrays.asList("1")),
+        100L);
+
+    List<Contact> merged = changes.applyTo(Arrays.asList(new Contact("1"), new Contact("2"), new Contact("3")));
+
+    assertThat(merged).hasSize(3);
+    assertThat(merged.get(0)).isSameInstanceAs(updated);
+    assertThat(merged.get(1).identifier()).isEqualTo("3");
+    assertThat(merged.get(2).identifier()).isEqualTo("4");
+  }
+}
@@ -0,0 +1,133 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Compares the per-row cost of {@link ContactCursorReader} with the previous decoder, which
+ * resolved every column index and compared every mimetype on each row, and the heap the read
+ * contacts retain with the previous contact model. Both depend on the machine and the garbage
+ * collector, so they are run by hand rather than with the unit tests.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ContactCursorReaderBenchmarkTest {
+
+  private static final int CONTACTS = 20000;
+  private static final int ROWS = CONTACTS * SyntheticDataRows.ROWS_PER_CONTACT;
+  private static final int WARMUP_RUNS = 2;
+  private static final int MEASURED_RUNS = 5;
+
+  @Test
+  @Ignore("Benchmark, run by hand")
+  public void readContacts_costsLessPerRowThanPreviousDecoder() {
+    List<Object[]> rows = SyntheticDataRows.interleaved(CONTACTS);
+    assertThat(rows).hasSize(100000);
+
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      SyntheticDataRows.readPreviously(SyntheticDataRows.cursor(rows));
+      ContactCursorReader.readContacts(SyntheticDataRows.cursor(rows), null, false);
+    }
+
+    long previousNanos = 0;
+    long readerNanos = 0;
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      Cursor cursor = SyntheticDataRows.cursor(rows);
+      long start = System.nanoTime();
+      SyntheticDataRows.readPreviously(cursor);
+      previousNanos += System.nanoTime() - start;
+
+      cursor = SyntheticDataRows.cursor(rows);
+      start = System.nanoTime();
+      ContactCursorReader.readContacts(cursor, null, false);
+      readerNanos += System.nanoTime() - start;
+    }
+
+    assertWithMessage("cursor reader ns per row, against the previous decoder")
+            .that(readerNanos / ((long) MEASURED_RUNS * ROWS))
+            .isLessThan(previousNanos / ((long) MEASURED_RUNS * ROWS));
+  }
+
+  @Test
+  @Ignore("Benchmark, run by hand")
+  public void readContacts_retainLessHeapThanPreviousModel() {
+    List<Object[]> rows = SyntheticDataRows.grouped(CONTACTS);
+
+    // The strings are shared with the rows, so only what each model adds to them is counted.
+    long baseline = usedHeap();
+    ArrayList<Contact> contacts = ContactCursorReader.readOrderedContacts(SyntheticDataRows.cursor(rows), null, false);
+    long contactsBytes = usedHeap() - baseline;
+    ArrayList<PreviousContact> previous = PreviousContact.copyOf(contacts);
+    long previousBytes = usedHeap() - baseline - contactsBytes;
+    assertThat(previous).hasSize(contacts.size());
+    assertWithMessage("bytes retained by " + CONTACTS + " contacts, against the previous model")
+            .that(contactsBytes)
+            .isLessThan(previousBytes);
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * The contact model as it was before ids were numbers and empty lists and avatars were shared.
+   */
+  private static final class PreviousContact {
+    String identifier;
+    String displayName, givenName, middleName, familyName, prefix, suffix, company, jobTitle, note, birthday, androidAccountType, androidAccountName;
+    ArrayList<Item> emails = new ArrayList<>();
+    ArrayList<Item> phones = new ArrayList<>();
+    ArrayList<PostalAddress> postalAddresses = new ArrayList<>();
+    byte[] avatar = new byte[0];
+
+    static ArrayList<PreviousContact> copyOf(List<Contact> contacts) {
+      ArrayList<PreviousContact> copies = new ArrayList<>(contacts.size());
+      for (Contact contact : contacts) {
+        PreviousContact copy = new PreviousContact();
+        copy.identifier = contact.identifier();
+        copy.displayName = contact.displayName;
+        copy.givenName = contact.givenName;
+        copy.middleName = contact.middleName;
+        copy.familyName = contact.familyName;
+        copy.prefix = contact.prefix;
+        copy.suffix = contact.suffix;
+        copy.company = contact.company;
+        copy.jobTitle = contact.jobTitle;
+        copy.note = contact.note;
+        copy.birthday = contact.birthday;
+        copy.androidAccountType = contact.androidAccountType;
+        copy.androidAccountName = contact.androidAccountName;
+        for (Item email : contact.emails) {
+          copy.emails.add(new Item(email.label, email.value, email.type));
+        }
+        for (Item phone : contact.phones) {
+          copy.phones.add(new Item(phone.label, phone.value, phone.type));
+        }
+        for (PostalAddress address : contact.postalAddresses) {
+          copy.postalAddresses.add(new PostalAddress(address.label, address.street, address.city,
+                  address.postcode, address.region, address.country, address.type));
+        }
+        copies.add(copy);
+      }
+      return copies;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.MatrixCursor;
+import android.provider.ContactsContract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContactCursorReaderTest {
+
+  @Test
+  public void readOrderedContacts_matchesMapBasedAssembly() {
+    ArrayList<Contact> expected =
+        ContactCursorReader.readContacts(SyntheticDataRows.cursor(SyntheticDataRows.interleaved(250)), null, false);
+    ArrayList<Contact> actual =
+        ContactCursorReader.readOrderedContacts(SyntheticDataRows.cursor(SyntheticDataRows.grouped(250)), null, false);
+
+    assertThat(actual).hasSize(250);
+    SyntheticDataRows.assertSameContacts(actual, expected);
+  }
+
+  @Test
+  public void readContacts_matchesPreviousDecoder() {
+    List<Object[]> rows = SyntheticDataRows.interleaved(100);
+
+    ArrayList<Contact> expected = SyntheticDataRows.readPreviously(SyntheticDataRows.cursor(rows));
+    ArrayList<Contact> actual = ContactCursorReader.readContacts(SyntheticDataRows.cursor(rows), null, false);
+
+    SyntheticDataRows.assertSameContacts(actual, expected);
+  }
+
+  @Test
+  public void readOrderedContacts_emptyCursor() {
+    List<Object[]> rows = new ArrayList<>();
+
+    assertThat(ContactCursorReader.readOrderedContacts(SyntheticDataRows.cursor(rows), null, false)).isEmpty();
+    assertThat(ContactCursorReader.readOrderedContacts(null, null, false)).isEmpty();
+  }
+
+  @Test
+  public void readNextContact_leavesCursorOnNextContact() {
+    MatrixCursor cursor = SyntheticDataRows.cursor(SyntheticDataRows.grouped(3));
+    ContactCursorReader reader = new ContactCursorReader(cursor, null, false);
+
+    Contact first = reader.readNextContact(cursor);
+    assertThat(first.identifier()).isEqualTo("1");
+    assertThat(first.phones).hasSize(1);
+    assertThat(first.emails).hasSize(1);
+    assertThat(first.postalAddresses).hasSize(1);
+    assertThat(cursor.getPosition()).isEqualTo(SyntheticDataRows.ROWS_PER_CONTACT);
+
+    assertThat(reader.readNextContact(cursor).identifier()).isEqualTo("2");
+    assertThat(reader.readNextContact(cursor).identifier()).isEqualTo("3");
+    assertThat(reader.readNextContact(cursor)).isNull();
+    assertThat(reader.readNextContact(cursor)).isNull();
+  }
+
+  @Test
+  public void readOrderedContacts_readsOnlyRequestedFieldsFromNarrowProjection() {
+    int fields = ContactFields.NAMES | ContactFields.PHONES;
+    String[] projection = ContactFields.projection(fields);
+    assertThat(projection.length).isLessThan(ContactCursorReader.PROJECTION.length);
+
+    // Rows of other kinds are normally filtered out by the MIMETYPE IN selection, but the reader
+    // must not touch their missing columns if some still come through.
+    MatrixCursor cursor = new MatrixCursor(projection);
+    for (Object[] row : SyntheticDataRows.grouped(10)) {
+      Object[] narrowRow = new Object[projection.length];
+      for (int i = 0; i < projection.length; i++) {
+        narrowRow[i] = row[Arrays.asList(ContactCursorReader.PROJECTION).indexOf(projection[i])];
+      }
+      cursor.addRow(narrowRow);
+    }
+
+    ArrayList<Contact> contacts = ContactCursorReader.readOrderedContacts(cursor, null, false, fields, null);
+
+    assertThat(contacts).hasSize(10);
+    Contact contact = contacts.get(0);
+    assertThat(contact.givenName).isEqualTo("Given0");
+    assertThat(contact.phones).hasSize(1);
+    assertThat(contact.emails).isEmpty();
+    assertThat(contact.company).isNull();
+    HashMap<String, Object> map = contact.toMap(fields);
+    assertThat(map).containsKey("phones");
+    assertThat(map).containsKey("givenName");
+    assertThat(map).doesNotContainKey("emails");
+    assertThat(map).doesNotContainKey("postalAddresses");
+    assertThat(map).doesNotContainKey("company");
+  }
+
+  @Test
+  public void inRequestedOrder_followsTheRequestAndKeepsGapsForMissingIds() {
+    List<Contact> found = Arrays.asList(new Contact("3"), new Contact("7"), new Contact("12"));
+
+    List<Contact> ordered = ContactCursorReader.inRequestedOrder(Arrays.asList("12", "5", "3", "12", "7"), found);
+
+    assertThat(ordered).hasSize(5);
+    assertThat(ordered.get(0).identifier()).isEqualTo("12");
+    assertThat(ordered.get(1)).isNull();
+    assertThat(ordered.get(2).identifier()).isEqualTo("3");
+    assertThat(ordered.get(3).identifier()).isEqualTo("12");
+    assertThat(ordered.get(4).identifier()).isEqualTo("7");
+  }
+
+  @Test
+  public void readOrderedContacts_sharesAccountAndLabelInstancesAcrossContacts() {
+    List<Object[]> rows = SyntheticDataRows.grouped(4);
+    int accountType = Arrays.asList(ContactCursorReader.PROJECTION).indexOf(ContactsContract.RawContacts.ACCOUNT_TYPE);
+    for (Object[] row : rows) {
+      // As a provider cursor would, hand out a new String on every row.
+      row[accountType] = new String((String) row[accountType]);
+    }
+
+    ArrayList<Contact> contacts = ContactCursorReader.readOrderedContacts(SyntheticDataRows.cursor(rows), null, false);
+
+    assertThat(contacts.get(2).androidAccountType).isSameInstanceAs(contacts.get(0).androidAccountType);
+    // Contacts 0 and 3 have the custom phone label, lower cased per row.
+    assertThat(contacts.get(3).phones.get(0).label).isEqualTo("pager");
+    assertThat(contacts.get(3).phones.get(0).label).isSameInstanceAs(contacts.get(0).phones.get(0).label);
+  }
+
+  @Test
+  public void readOrderedContacts_looksUpEachLocalizedLabelOnce() {
+    ArrayList<Contact> contacts = ContactCursorReader.readOrderedContacts(
+        SyntheticDataRows.cursor(SyntheticDataRows.grouped(3)), RuntimeEnvironment.getApplication().getResources(), true);
+
+    assertThat(contacts.get(1).phones.get(0).label).isEqualTo("mobile");
+    assertThat(contacts.get(2).phones.get(0).label).isSameInstanceAs(contacts.get(1).phones.get(0).label);
+    assertThat(contacts.get(2).emails.get(0).label).isSameInstanceAs(contacts.get(1).emails.get(0).label);
+  }
+}
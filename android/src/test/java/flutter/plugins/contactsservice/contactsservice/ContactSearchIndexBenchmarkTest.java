@@ -0,0 +1,54 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.util.ArrayList;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Times {@link ContactSearchIndex#search} on a large address book. The timing depends on the
+ * machine, so it is run by hand rather than with the unit tests.
+ */
+public class ContactSearchIndexBenchmarkTest {
+
+  private static final int CONTACTS = 20000;
+  private static final int WARMUP_RUNS = 20;
+  private static final int MEASURED_RUNS = 100;
+
+  @Test
+  @Ignore("Benchmark, run by hand")
+  public void search_takesUnderFiveMillisecondsOnTwentyThousandContacts() {
+    String[] givenNames = {"James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda"};
+    ArrayList<Contact> contacts = new ArrayList<>(CONTACTS);
+    for (int i = 0; i < CONTACTS; i++) {
+      Contact contact = new Contact(String.valueOf(i));
+      contact.givenName = givenNames[i % givenNames.length];
+      contact.familyName = "Family" + i;
+      contact.displayName = contact.givenName + " " + contact.familyName;
+      contact.company = "Company" + (i % 500);
+      contact.addEmail(new Item("home", "user" + i + "@example.com", 1));
+      contact.addPhone(new Item("mobile", "+1 555 " + (1000000 + i), 2));
+      contacts.add(contact);
+    }
+    ContactSearchIndex index = new ContactSearchIndex(false, 0);
+    index.addAll(contacts);
+    String[] queries = {"j", "mary fam", "family1234", "company42", "user1", "555 100"};
+
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      for (String query : queries) {
+        index.search(query, 50);
+      }
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      for (String query : queries) {
+        index.search(query, 50);
+      }
+    }
+    long averageMicros = (System.nanoTime() - start) / 1000 / ((long) MEASURED_RUNS * queries.length);
+
+    assertWithMessage("microseconds per query").that(averageMicros).isLessThan(5000L);
+  }
+}
@@ -0,0 +1,105 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ContactSearchIndexTest {
+
+  private static Contact contact(String id, String givenName, String familyName) {
+    Contact contact = new Contact(id);
+    contact.givenName = givenName;
+    contact.familyName = familyName;
+    contact.displayName = givenName + " " + familyName;
+    return contact;
+  }
+
+  private static List<String> ids(List<Contact> contacts) {
+    List<String> ids = new ArrayList<>();
+    for (Contact contact : contacts) {
+      ids.add(contact.identifier());
+    }
+    return ids;
+  }
+
+  private static ContactSearchIndex index(Contact... contacts) {
+    ContactSearchIndex index = new ContactSearchIndex(false, 0);
+    index.addAll(Arrays.asList(contacts));
+    return index;
+  }
+
+  @Test
+  public void search_matchesWordPrefixesAnywhereInTheName() {
+    ContactSearchIndex index = index(contact("1", "John", "Smith"), contact("2", "Johanna", "Doe"));
+
+    assertThat(ids(index.search("smith", 10))).containsExactly("1");
+    assertThat(ids(index.search("jo smi", 10))).containsExactly("1");
+    assertThat(ids(index.search("joh", 10))).containsExactly("1", "2");
+    assertThat(ids(index.search("john doe", 10))).isEmpty();
+  }
+
+  @Test
+  public void search_ignoresCaseAndAccents() {
+    ContactSearchIndex index = index(contact("1", "Ren\u00e9e", "\u00c5berg"));
+
+    assertThat(ids(index.search("RENEE aberg", 10))).containsExactly("1");
+  }
+
+  @Test
+  public void search_coversCompanyEmailsAndPhones() {
+    Contact contact = contact("1", "Ada", "Lovelace");
+    contact.company = "Analytical Engines";
+    contact.addEmail(new Item("work", "countess@example.org", 2));
+    contact.addPhone(new Item("mobile", "+44 20 7946 0958", 2));
+    ContactSearchIndex index = index(contact);
+
+    assertThat(ids(index.search("analytical", 10))).containsExactly("1");
+    assertThat(ids(index.search("countess", 10))).containsExactly("1");
+    assertThat(ids(index.search("+44 20 79", 10))).containsExactly("1");
+  }
+
+  @Test
+  public void search_findsPhonesByTheirNationalAndLocalDigits() {
+    Contact formatted = contact("1", "Ada", "Lovelace");
+    formatted.addPhone(new Item("mobile", "+1 555 1234", 2));
+    Contact unformatted = contact("2", "Charles", "Babbage");
+    unformatted.addPhone(new Item("work", "+14155559876", 3));
+    ContactSearchIndex index = index(formatted, unformatted);
+
+    assertThat(ids(index.search("555 1234", 10))).containsExactly("1");
+    assertThat(ids(index.search("1234", 10))).containsExactly("1");
+    assertThat(ids(index.search("+1 555", 10))).containsExactly("1");
+    assertThat(ids(index.search("555-9876", 10))).containsExactly("2");
+    assertThat(index.search("555 0000", 10)).isEmpty();
+  }
+
+  @Test
+  public void search_ranksNamesAndWholeWordsFirst() {
+    Contact byCompany = contact("1", "Bea", "Jones");
+    byCompany.company = "Smith & Sons";
+    ContactSearchIndex index = index(byCompany, contact("2", "Tom", "Smithers"), contact("3", "Ann", "Smith"));
+
+    assertThat(ids(index.search("smith", 10))).containsExactly("3", "2", "1").inOrder();
+    assertThat(ids(index.search("smith", 2))).containsExactly("3", "2").inOrder();
+  }
+
+  @Test
+  public void apply_reindexesChangedAndDeletedContacts() {
+    ContactSearchIndex index = index(contact("1", "John", "Smith"), contact("2", "Jane", "Doe"));
+
+    Contact renamed = contact("1", "John", "Taylor");
+    index.apply(new ContactChanges(new ArrayList<>(Collections.singletonList(renamed)),
+            new ArrayList<>(Collections.singletonList("2")), 42));
+
+    assertThat(index.search("smith", 10)).isEmpty();
+    assertThat(index.search("jane", 10)).isEmpty();
+    assertThat(ids(index.search("taylor", 10))).containsExactly("1");
+    assertThat(index.size()).isEqualTo(1);
+    assertThat(index.watermark()).isEqualTo(42);
+  }
+}
@@ -0,0 +1,69 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContactSnapshotStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void read_returnsWrittenContacts() throws IOException {
+    ContactSnapshotStore store = new ContactSnapshotStore(new File(folder.getRoot(), "snapshot.bin"));
+    Contact contact = new Contact("42");
+    contact.displayName = "Jane Doe";
+    contact.givenName = "Jane";
+    contact.note = null;
+    contact.addPhone(new Item("mobile", "+15550100", 2));
+    contact.addEmail(new Item("work", "jane@example.com", 2));
+    contact.addPostalAddress(new PostalAddress("home", "1 Main St", "Springfield", "12345", null, "US", 1));
+
+    store.write(Arrays.asList(contact, new Contact("43")), new ContactSnapshotStore.Watermark(2, 1234L, 5678L), true);
+    ContactSnapshotStore.Snapshot snapshot = store.read();
+
+    assertThat(snapshot.localizedLabels).isTrue();
+    assertThat(snapshot.watermark.matches(new ContactSnapshotStore.Watermark(2, 1234L, 0))).isTrue();
+    assertThat(snapshot.watermark.matches(new ContactSnapshotStore.Watermark(2, 1235L, 0))).isFalse();
+    assertThat(snapshot.watermark.takenAt).isEqualTo(5678L);
+    SyntheticDataRows.assertSameContacts(snapshot.contacts, Arrays.asList(contact, new Contact("43")));
+  }
+
+  @Test
+  public void watermark_datesDeletionsFromWhenItWasTakenNotFromTheLastEdit() {
+    long day = 24 * 60 * 60 * 1000L;
+    long now = 100 * day;
+    // No contact was edited for 60 days, but the snapshot was taken a minute ago.
+    ContactSnapshotStore.Watermark recent = new ContactSnapshotStore.Watermark(2, now - 60 * day, now - 60 * 1000L);
+    ContactSnapshotStore.Watermark stale = new ContactSnapshotStore.Watermark(2, now - 60 * day, now - 60 * day);
+
+    assertThat(recent.deletionsLoggedAt(now)).isTrue();
+    assertThat(stale.deletionsLoggedAt(now)).isFalse();
+  }
+
+  @Test
+  public void read_missingOrForeignFile() throws IOException {
+    File file = new File(folder.getRoot(), "snapshot.bin");
+    ContactSnapshotStore store = new ContactSnapshotStore(file);
+    assertThat(store.read()).isNull();
+
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+    out.close();
+    assertThat(store.read()).isNull();
+
+    store.delete();
+    assertThat(file.exists()).isFalse();
+  }
+}
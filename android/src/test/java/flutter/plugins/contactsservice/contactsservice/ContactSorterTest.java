@@ -0,0 +1,89 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ContactSorterTest {
+
+  private static Contact contact(String id, String givenName, String familyName) {
+    Contact contact = new Contact(id);
+    contact.givenName = givenName;
+    contact.familyName = familyName;
+    contact.displayName = givenName + " " + familyName;
+    return contact;
+  }
+
+  private static List<String> ids(List<Contact> contacts) {
+    List<String> ids = new ArrayList<>();
+    for (Contact contact : contacts) {
+      ids.add(contact.identifier());
+    }
+    return ids;
+  }
+
+  @Test
+  public void givenName_ignoresCaseAndCollatesAccents() {
+    List<Contact> contacts = new ArrayList<>(Arrays.asList(
+            contact("1", "zoe", "A"),
+            contact("2", "\u00c9mile", "B"),
+            contact("3", "Eve", "C"),
+            contact("4", "adam", "D")));
+
+    ContactSorter.sort(contacts, ContactSorter.SortOrder.GIVEN_NAME);
+
+    assertThat(ids(contacts)).containsExactly("4", "2", "3", "1").inOrder();
+  }
+
+  @Test
+  public void familyName_breaksTiesByGivenName() {
+    List<Contact> contacts = new ArrayList<>(Arrays.asList(
+            contact("1", "Mary", "Smith"),
+            contact("2", "John", "Smith"),
+            contact("3", "Zed", "Adams")));
+
+    ContactSorter.sort(contacts, ContactSorter.SortOrder.FAMILY_NAME);
+
+    assertThat(ids(contacts)).containsExactly("3", "2", "1").inOrder();
+  }
+
+  @Test
+  public void missingNamesSortFirstAndEqualNamesKeepTheirOrder() {
+    List<Contact> contacts = new ArrayList<>(Arrays.asList(
+            contact("1", "Bob", "X"),
+            contact("2", null, "Y"),
+            contact("3", "bob", "Z")));
+
+    ContactSorter.sort(contacts, ContactSorter.SortOrder.GIVEN_NAME);
+
+    assertThat(ids(contacts)).containsExactly("2", "1", "3").inOrder();
+  }
+
+  @Test
+  public void none_keepsTheOrder() {
+    List<Contact> contacts = new ArrayList<>(Arrays.asList(
+            contact("2", "B", "B"), contact("1", "A", "A")));
+
+    ContactSorter.sort(contacts, ContactSorter.SortOrder.NONE);
+
+    assertThat(ids(contacts)).containsExactly("2", "1").inOrder();
+  }
+
+  @Test
+  public void sqlOrder_keepsTheRowsOfAContactTogether() {
+    assertThat(ContactSorter.sqlOrder(ContactSorter.SortOrder.DISPLAY_NAME)).isEqualTo("sort_key, contact_id");
+    assertThat(ContactSorter.sqlOrder(ContactSorter.SortOrder.FAMILY_NAME)).isEqualTo("sort_key_alt, contact_id");
+    assertThat(ContactSorter.sqlOrder(ContactSorter.SortOrder.GIVEN_NAME)).isEqualTo("contact_id");
+  }
+
+  @Test
+  public void resolve_prefersSortByOverOrderByGivenName() {
+    assertThat(ContactSorter.SortOrder.resolve(null, true)).isEqualTo(ContactSorter.SortOrder.GIVEN_NAME);
+    assertThat(ContactSorter.SortOrder.resolve(null, false)).isEqualTo(ContactSorter.SortOrder.NONE);
+    assertThat(ContactSorter.SortOrder.resolve("familyName", true)).isEqualTo(ContactSorter.SortOrder.FAMILY_NAME);
+  }
+}
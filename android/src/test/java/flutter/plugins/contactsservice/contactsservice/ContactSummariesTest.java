@@ -0,0 +1,96 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.ContactsContract;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContactSummariesTest {
+
+  /** Serves two aggregate contacts and records the last query it was given. */
+  public static class FakeContactsProvider extends ContentProvider {
+    static Uri uri;
+    static String selection;
+    static String sortOrder;
+
+    @Override
+    public boolean onCreate() {
+      return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+      FakeContactsProvider.uri = uri;
+      FakeContactsProvider.selection = selection;
+      FakeContactsProvider.sortOrder = sortOrder;
+      MatrixCursor cursor = new MatrixCursor(projection);
+      cursor.addRow(new Object[]{"12", "Ada Lovelace", "content://thumb/12", 1});
+      cursor.addRow(new Object[]{"3", "Blaise Pascal", null, 0});
+      return cursor;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+      return null;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+      return 0;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+      return 0;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+      return null;
+    }
+  }
+
+  @Before
+  public void setUp() {
+    Robolectric.buildContentProvider(FakeContactsProvider.class).create(ContactsContract.AUTHORITY);
+  }
+
+  @Test
+  public void read_queriesTheAggregateTableInSortKeyOrder() {
+    List<HashMap<String, Object>> summaries =
+        ContactSummaries.read(RuntimeEnvironment.getApplication().getContentResolver(), null);
+
+    assertThat(FakeContactsProvider.uri).isEqualTo(ContactsContract.Contacts.CONTENT_URI);
+    assertThat(FakeContactsProvider.selection).isNull();
+    assertThat(FakeContactsProvider.sortOrder).startsWith(ContactsContract.Contacts.SORT_KEY_PRIMARY);
+    assertThat(summaries).hasSize(2);
+    assertThat(summaries.get(0).get("identifier")).isEqualTo("12");
+    assertThat(summaries.get(0).get("displayName")).isEqualTo("Ada Lovelace");
+    assertThat(summaries.get(0).get("thumbnailUri")).isEqualTo("content://thumb/12");
+    assertThat(summaries.get(0).get("hasPhoneNumber")).isEqualTo(true);
+    assertThat(summaries.get(1).get("thumbnailUri")).isNull();
+    assertThat(summaries.get(1).get("hasPhoneNumber")).isEqualTo(false);
+  }
+
+  @Test
+  public void read_filtersOnDisplayNamePrefix() {
+    ContactSummaries.read(RuntimeEnvironment.getApplication().getContentResolver(), "Ad");
+
+    assertThat(FakeContactsProvider.selection).contains(ContactsContract.Contacts.DISPLAY_NAME_PRIMARY);
+  }
+}
@@ -2,6 +2,10 @@ package flutter.plugins.contactsservice.contactsservice;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
 import org.junit.Test;
 
 public class ContactTest {
@@ -97,4 +101,59 @@ public class ContactTest {
     assertThat(contact1.compareTo(contact3))
         .isGreaterThan(0);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void identifier_isTheNumericIdOrNull() {
+    assertThat(new Contact("42").id).isEqualTo(42L);
+    assertThat(new Contact("42").identifier()).isEqualTo("42");
+    assertThat(new Contact((String) null).identifier()).isNull();
+    assertThat(new Contact("id").id).isEqualTo(Contact.NO_ID);
+  }
+
+  @Test
+  public void newContacts_shareTheirEmptyValuesUntilOneIsAdded() {
+    Contact contact1 = new Contact(1);
+    Contact contact2 = new Contact(2);
+
+    assertThat(contact1.phones).isSameInstanceAs(contact2.phones);
+    assertThat(contact1.avatar).isSameInstanceAs(Contact.EMPTY_AVATAR);
+
+    contact1.addPhone(new Item("mobile", "+15550100", 2));
+    contact1.addPhone(new Item("work", "+15550101", 3));
+
+    assertThat(contact1.phones).hasSize(2);
+    assertThat(contact2.phones).isEmpty();
+  }
+
+  @Test
+  public void toMap_sendsTypesAsInts() {
+    Contact contact = new Contact(7);
+    contact.addEmail(new Item("work", "ada@example.org", 2));
+
+    HashMap<String, Object> map = contact.toMap();
+
+    assertThat(map.get("identifier")).isEqualTo("7");
+    assertThat(((ArrayList<HashMap>) map.get("emails")).get(0).get("type")).isEqualTo(2);
+  }
+
+  @Test
+  public void fromMap_acceptsTypesAsIntsOrStrings() {
+    HashMap<String, Object> asInt = new HashMap<>();
+    asInt.put("value", "+15550100");
+    asInt.put("type", 2);
+    HashMap<String, Object> asString = new HashMap<>();
+    asString.put("value", "+15550101");
+    asString.put("type", "3");
+    HashMap<String, Object> map = new HashMap<>();
+    map.put("identifier", "7");
+    map.put("phones", new ArrayList<>(Arrays.asList(asInt, asString, new HashMap<String, Object>())));
+
+    Contact contact = Contact.fromMap(map);
+
+    assertThat(contact.id).isEqualTo(7L);
+    assertThat(contact.phones.get(0).type).isEqualTo(2);
+    assertThat(contact.phones.get(1).type).isEqualTo(3);
+    assertThat(contact.phones.get(2).type).isEqualTo(-1);
+    assertThat(contact.emails).isEmpty();
+  }
+}
@@ -0,0 +1,78 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContactsChangeObserverTest {
+
+  private final List<Object> events = new ArrayList<>();
+  private final EventChannel.EventSink sink = new EventChannel.EventSink() {
+    @Override
+    public void success(Object event) {
+      events.add(event);
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {
+    }
+
+    @Override
+    public void endOfStream() {
+    }
+  };
+
+  @Test
+  public void onChange_coalescesBurstIntoOneEvent() {
+    ContactsChangeObserver observer = new ContactsChangeObserver(RuntimeEnvironment.getApplication().getContentResolver());
+    observer.onListen(Collections.singletonMap("debounceMillis", 200), sink);
+    final int[] listenerRuns = {0};
+    observer.addListener(new Runnable() {
+      @Override
+      public void run() {
+        listenerRuns[0]++;
+      }
+    });
+
+    for (int i = 0; i < 1000; i++) {
+      observer.onChange(false);
+    }
+    shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(199));
+    assertThat(events).isEmpty();
+
+    shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1));
+    assertThat(events).hasSize(1);
+    assertThat(((Map) events.get(0)).get("changes")).isEqualTo(1000);
+    assertThat(listenerRuns[0]).isEqualTo(1);
+
+    observer.onChange(false);
+    shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(200));
+    assertThat(events).hasSize(2);
+  }
+
+  @Test
+  public void onCancel_stopsEventsButKeepsListeners() {
+    ContactsChangeObserver observer = new ContactsChangeObserver(RuntimeEnvironment.getApplication().getContentResolver());
+    observer.onListen(null, sink);
+    observer.onCancel(null);
+
+    observer.onChange(false);
+    shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(ContactsChangeObserver.DEFAULT_DEBOUNCE_MILLIS));
+
+    assertThat(events).isEmpty();
+  }
+}
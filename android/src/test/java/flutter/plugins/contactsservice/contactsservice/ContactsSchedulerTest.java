@@ -0,0 +1,194 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ContactsSchedulerTest {
+
+  private final ContactsScheduler scheduler = new ContactsScheduler(new Executor() {
+    @Override
+    public void execute(Runnable runnable) {
+      runnable.run();
+    }
+  });
+
+  @After
+  public void tearDown() {
+    scheduler.shutdown();
+  }
+
+  /** Records which callback it received and blocks in run() until released. */
+  private static class RecordingTask extends ContactsScheduler.Task<String> {
+    final String name;
+    final CountDownLatch release;
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile String outcome;
+
+    RecordingTask(String name, CountDownLatch release) {
+      this.name = name;
+      this.release = release;
+    }
+
+    @Override
+    String run() throws Exception {
+      started.countDown();
+      release.await();
+      return name;
+    }
+
+    @Override
+    void onSuccess(String value) {
+      outcome = "success";
+      done.countDown();
+    }
+
+    @Override
+    void onFailure(Exception e) {
+      outcome = e instanceof RejectedExecutionException ? "rejected" : "failed";
+      done.countDown();
+    }
+
+    @Override
+    void onCancelled() {
+      outcome = "cancelled";
+      done.countDown();
+    }
+  }
+
+  @Test
+  public void dropOldest_failsTheLongestWaitingTask() throws Exception {
+    scheduler.configure(ContactsScheduler.Lane.AVATAR, 1, 2, ContactsScheduler.OverflowPolicy.DROP_OLDEST);
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingTask running = new RecordingTask("running", release);
+    scheduler.submit(ContactsScheduler.Lane.AVATAR, running);
+    running.started.await(5, TimeUnit.SECONDS);
+
+    RecordingTask oldest = new RecordingTask("oldest", release);
+    RecordingTask middle = new RecordingTask("middle", release);
+    RecordingTask newest = new RecordingTask("newest", release);
+    scheduler.submit(ContactsScheduler.Lane.AVATAR, oldest);
+    scheduler.submit(ContactsScheduler.Lane.AVATAR, middle);
+    scheduler.submit(ContactsScheduler.Lane.AVATAR, newest);
+
+    assertThat(oldest.outcome).isEqualTo("rejected");
+    release.countDown();
+    for (RecordingTask task : new RecordingTask[]{running, middle, newest}) {
+      assertThat(task.done.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(task.outcome).isEqualTo("success");
+    }
+    Map lane = (Map) scheduler.metrics().get("avatar");
+    assertThat(lane.get("dropped")).isEqualTo(1L);
+    assertThat(lane.get("completed")).isEqualTo(3L);
+  }
+
+  @Test
+  public void reject_failsTheNewTaskAndKeepsTheQueue() throws Exception {
+    scheduler.configure(ContactsScheduler.Lane.BULK, 1, 1, ContactsScheduler.OverflowPolicy.REJECT);
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingTask running = new RecordingTask("running", release);
+    scheduler.submit(ContactsScheduler.Lane.BULK, running);
+    running.started.await(5, TimeUnit.SECONDS);
+
+    RecordingTask queued = new RecordingTask("queued", release);
+    RecordingTask overflow = new RecordingTask("overflow", release);
+    scheduler.submit(ContactsScheduler.Lane.BULK, queued);
+    scheduler.submit(ContactsScheduler.Lane.BULK, overflow);
+
+    assertThat(overflow.outcome).isEqualTo("rejected");
+    assertThat(((Map) scheduler.metrics().get("bulk")).get("queueDepth")).isEqualTo(1);
+    release.countDown();
+    assertThat(queued.done.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(queued.outcome).isEqualTo("success");
+  }
+
+  @Test
+  public void cancelledTask_isNotRun() throws Exception {
+    scheduler.configure(ContactsScheduler.Lane.INTERACTIVE, 1, null, null);
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingTask running = new RecordingTask("running", release);
+    scheduler.submit(ContactsScheduler.Lane.INTERACTIVE, running);
+    running.started.await(5, TimeUnit.SECONDS);
+
+    RecordingTask superseded = new RecordingTask("superseded", release);
+    scheduler.submit(ContactsScheduler.Lane.INTERACTIVE, superseded);
+    superseded.cancel();
+    release.countDown();
+
+    assertThat(superseded.done.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(superseded.outcome).isEqualTo("cancelled");
+    assertThat(superseded.started.getCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void writeLane_keepsSubmissionOrder() throws Exception {
+    final List<Integer> applied = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch done = new CountDownLatch(200);
+    for (int i = 0; i < 200; i++) {
+      final int index = i;
+      scheduler.submit(ContactsScheduler.Lane.WRITE, new ContactsScheduler.Task<Void>() {
+        @Override
+        Void run() {
+          applied.add(index);
+          return null;
+        }
+
+        @Override
+        void onSuccess(Void value) {
+          done.countDown();
+        }
+
+        @Override
+        void onFailure(Exception e) {
+        }
+      });
+    }
+
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    for (int i = 0; i < applied.size(); i++) {
+      assertThat(applied.get(i)).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void configure_rejectsAnEmptyQueueAndKeepsTheLaneWorking() throws Exception {
+    try {
+      scheduler.configure(ContactsScheduler.Lane.BULK, null, 0, null);
+      fail("A queue capacity of 0 was accepted");
+    } catch (IllegalArgumentException expected) {
+      // The lane keeps its previous capacity.
+    }
+
+    RecordingTask task = new RecordingTask("task", new CountDownLatch(0));
+    scheduler.submit(ContactsScheduler.Lane.BULK, task);
+    assertThat(task.done.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(task.outcome).isEqualTo("success");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void writeLane_cannotRunInParallel() {
+    scheduler.configure(ContactsScheduler.Lane.WRITE, 2, null, null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void writeLane_cannotBeBounded() {
+    scheduler.configure(ContactsScheduler.Lane.WRITE, null, 10, null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void writeLane_cannotDropWrites() {
+    scheduler.configure(ContactsScheduler.Lane.WRITE, null, null, ContactsScheduler.OverflowPolicy.DROP_OLDEST);
+  }
+}
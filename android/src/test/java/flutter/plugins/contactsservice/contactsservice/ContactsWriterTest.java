@@ -0,0 +1,238 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.ContactsContract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContactsWriterTest {
+
+  /**
+   * Records the batches it is given and hands out raw contact ids; contact ids are raw ids + 1000.
+   * Like the real provider, it refuses batches with more than 500 operations between yield points.
+   * Data queries return the {@link #dataRows}.
+   */
+  public static class FakeContactsProvider extends ContentProvider {
+    static final List<Integer> batchSizes = new ArrayList<>();
+    static final List<Long> dataRawContactIds = new ArrayList<>();
+    static final List<ContentValues> dataRows = new ArrayList<>();
+    static String failingGivenName;
+    private long nextId = 1;
+
+    @Override
+    public boolean onCreate() {
+      return true;
+    }
+
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+      batchSizes.add(operations.size());
+      // Like the real provider, refuse more than 500 operations between two yield points.
+      int sinceYield = 0;
+      for (ContentProviderOperation operation : operations) {
+        sinceYield = operation.isYieldAllowed() ? 1 : sinceYield + 1;
+        if (sinceYield > 500) {
+          throw new OperationApplicationException("Too many operations between yield points");
+        }
+      }
+      return super.applyBatch(operations);
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+      if (uri.equals(ContactsContract.Data.CONTENT_URI)) {
+        if (failingGivenName != null && failingGivenName.equals(values.getAsString(ContactsContract.CommonDataKinds.StructuredName.GIVEN_NAME))) {
+          throw new IllegalArgumentException("rejected");
+        }
+        dataRawContactIds.add(values.getAsLong(ContactsContract.Data.RAW_CONTACT_ID));
+      }
+      return ContentUris.withAppendedId(uri, nextId++);
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+      MatrixCursor cursor = new MatrixCursor(projection);
+      if (uri.equals(ContactsContract.Data.CONTENT_URI)) {
+        for (ContentValues values : dataRows) {
+          Object[] row = new Object[projection.length];
+          for (int i = 0; i < projection.length; i++) {
+            row[i] = values.get(projection[i]);
+          }
+          cursor.addRow(row);
+        }
+      } else if (selection.startsWith(ContactsContract.RawContacts.DELETED)) {
+        // The raw contacts of the contacts being updated.
+        for (String contactId : selectionArgs) {
+          cursor.addRow(new Object[]{Long.parseLong(contactId) - 1000, contactId});
+        }
+      } else {
+        for (String rawContactId : selectionArgs) {
+          cursor.addRow(new Object[]{rawContactId, Long.parseLong(rawContactId) + 1000});
+        }
+      }
+      return cursor;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+      return 1;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+      return 1;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+      return null;
+    }
+  }
+
+  private ContactsWriter writer;
+
+  @Before
+  public void setUp() {
+    FakeContactsProvider.batchSizes.clear();
+    FakeContactsProvider.dataRawContactIds.clear();
+    FakeContactsProvider.dataRows.clear();
+    FakeContactsProvider.failingGivenName = null;
+    Robolectric.buildContentProvider(FakeContactsProvider.class).create(ContactsContract.AUTHORITY);
+    writer = new ContactsWriter(RuntimeEnvironment.getApplication().getContentResolver());
+  }
+
+  @Test
+  public void addContacts_packsContactsIntoBatchesUnderTheLimit() {
+    List<Contact> contacts = contacts(1000);
+
+    List<String> identifiers = writer.addContacts(contacts);
+
+    assertThat(identifiers).hasSize(1000);
+    assertThat(identifiers).doesNotContain(null);
+    assertThat(FakeContactsProvider.batchSizes.size()).isLessThan(1000 / 10);
+    for (int size : FakeContactsProvider.batchSizes) {
+      assertThat(size).isAtMost(ContactsWriter.MAX_OPERATIONS_PER_BATCH);
+    }
+  }
+
+  @Test
+  public void addContacts_backReferencesPointAtEachContactsOwnRawContact() {
+    List<Contact> contacts = contacts(200);
+
+    List<String> identifiers = writer.addContacts(contacts);
+
+    // Every raw contact is followed by 7 data rows (name, note, organization, photo, phone, email,
+    // birthday), and every data row must reference the raw contact inserted just before it.
+    long expectedRawContactId = -1;
+    int dataRows = 0;
+    for (Long rawContactId : FakeContactsProvider.dataRawContactIds) {
+      if (dataRows % 7 == 0) {
+        expectedRawContactId = rawContactId;
+      }
+      assertThat(rawContactId).isEqualTo(expectedRawContactId);
+      dataRows++;
+    }
+    assertThat(dataRows).isEqualTo(200 * 7);
+    assertThat(identifiers.get(0)).isEqualTo(String.valueOf(FakeContactsProvider.dataRawContactIds.get(0) + 1000));
+  }
+
+  @Test
+  public void addContacts_retriesAFailedBatchOneContactAtATime() {
+    List<Contact> contacts = contacts(3);
+    contacts.get(1).givenName = "broken";
+    FakeContactsProvider.failingGivenName = "broken";
+
+    List<String> identifiers = writer.addContacts(contacts);
+
+    assertThat(identifiers.get(0)).isNotNull();
+    assertThat(identifiers.get(1)).isNull();
+    assertThat(identifiers.get(2)).isNotNull();
+    assertThat(FakeContactsProvider.batchSizes).hasSize(4);
+  }
+
+  @Test
+  public void deleteContacts_returnsOneResultPerContact() {
+    List<Boolean> deleted = writer.deleteContacts(contacts(600));
+
+    assertThat(deleted).hasSize(600);
+    assertThat(deleted).doesNotContain(false);
+    assertThat(FakeContactsProvider.batchSizes).isEqualTo(Arrays.asList(400, 200));
+  }
+
+  @Test
+  public void updateContacts_reportsAContactThatIsUpToDateAsUpdated() {
+    Contact contact = new Contact(1001);
+    contact.givenName = "Ada";
+    ContentValues name = new ContentValues();
+    name.put(ContactsContract.Data._ID, 5L);
+    name.put(ContactsContract.Data.RAW_CONTACT_ID, 1L);
+    name.put(ContactsContract.Data.CONTACT_ID, 1001L);
+    name.put(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE);
+    name.put(ContactsContract.CommonDataKinds.StructuredName.GIVEN_NAME, "Ada");
+    FakeContactsProvider.dataRows.add(name);
+
+    List<Boolean> updated = writer.updateContacts(Arrays.asList(contact));
+
+    assertThat(updated).containsExactly(true);
+    assertThat(FakeContactsProvider.batchSizes).isEmpty();
+  }
+
+  @Test
+  public void addContacts_splitsAContactLargerThanABatchWithYieldPoints() {
+    List<Contact> contacts = contacts(3);
+    for (int i = 0; i < 600; i++) {
+      contacts.get(1).addPhone(new Item("other", "+1 555 0200 " + i, ContactsContract.CommonDataKinds.Phone.TYPE_OTHER));
+    }
+
+    List<String> identifiers = writer.addContacts(contacts);
+
+    assertThat(identifiers).doesNotContain(null);
+    // The large contact is sent on its own, between the batches of the others.
+    assertThat(FakeContactsProvider.batchSizes).containsExactly(8, 608, 8).inOrder();
+  }
+
+  @Test
+  public void updateContacts_splitsAContactLargerThanABatchWithYieldPoints() {
+    Contact contact = new Contact(1001);
+    for (int i = 0; i < 600; i++) {
+      contact.addPhone(new Item("other", "+1 555 0200 " + i, ContactsContract.CommonDataKinds.Phone.TYPE_OTHER));
+    }
+
+    List<Boolean> updated = writer.updateContacts(Arrays.asList(contact));
+
+    assertThat(updated).containsExactly(true);
+    assertThat(FakeContactsProvider.batchSizes).containsExactly(600);
+  }
+
+  private static List<Contact> contacts(int count) {
+    List<Contact> contacts = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Contact contact = new Contact(String.valueOf(i));
+      contact.givenName = "Given" + i;
+      contact.addPhone(new Item("mobile", "+1 555 0100 " + i, ContactsContract.CommonDataKinds.Phone.TYPE_MOBILE));
+      contact.addEmail(new Item("home", "contact" + i + "@example.com", ContactsContract.CommonDataKinds.Email.TYPE_HOME));
+      contacts.add(contact);
+    }
+    return contacts;
+  }
+}
@@ -0,0 +1,230 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Note;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.CommonDataKinds.Photo;
+import android.provider.ContactsContract.CommonDataKinds.StructuredName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DataRowDiffTest {
+
+  private static final long RAW_CONTACT_ID = 7;
+
+  private static Contact contact() {
+    Contact contact = new Contact("1");
+    contact.givenName = "Ada";
+    contact.familyName = "Lovelace";
+    contact.addPhone(new Item("mobile", "+44 20 7946 0958", Phone.TYPE_MOBILE));
+    contact.addPhone(new Item("work", "+44 20 7946 0000", Phone.TYPE_WORK));
+    contact.addEmail(new Item("home", "ada@example.com", Email.TYPE_HOME));
+    contact.avatar = new byte[]{1, 2, 3};
+    return contact;
+  }
+
+  /** The rows the provider would return for the contact, with ids from 100 on. */
+  private static List<DataRowDiff.Row> stored(Contact contact) {
+    List<DataRowDiff.Row> rows = new ArrayList<>();
+    long id = 100;
+    for (DataRowDiff.Row row : DataRowDiff.rowsOf(contact, RAW_CONTACT_ID)) {
+      HashMap<String, Object> values = new HashMap<>();
+      for (String column : row.values.keySet()) {
+        Object value = row.values.get(column);
+        // Cursors hand back types as strings, and nulls of text columns may come back empty.
+        values.put(column, value instanceof Integer ? value.toString() : value == null ? "" : value);
+      }
+      rows.add(new DataRowDiff.Row(id++, RAW_CONTACT_ID, row.mimeType, values));
+    }
+    return rows;
+  }
+
+  @Test
+  public void unchangedContact_needsNoWrites() {
+    DataRowDiff diff = DataRowDiff.between(stored(contact()), contact(), RAW_CONTACT_ID);
+
+    assertThat(diff.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void changedPhone_isOneUpdateOfItsOwnRow() {
+    List<DataRowDiff.Row> current = stored(contact());
+    Contact changed = contact();
+    changed.phones.get(1).value = "+44 20 7946 1111";
+
+    DataRowDiff diff = DataRowDiff.between(current, changed, RAW_CONTACT_ID);
+
+    assertThat(diff.inserts).isEmpty();
+    assertThat(diff.deletes).isEmpty();
+    assertThat(diff.updates).hasSize(1);
+    DataRowDiff.Row update = diff.updates.get(0);
+    assertThat(update.id).isEqualTo(idOf(current, "+44 20 7946 0000"));
+    assertThat(update.values.get(Phone.NUMBER)).isEqualTo("+44 20 7946 1111");
+  }
+
+  @Test
+  public void reorderedPhones_needNoWrites() {
+    Contact reordered = contact();
+    reordered.phones.add(reordered.phones.remove(0));
+
+    assertThat(DataRowDiff.between(stored(contact()), reordered, RAW_CONTACT_ID).isEmpty()).isTrue();
+  }
+
+  @Test
+  public void addedAndRemovedRows_areInsertedIntoTheRawContactAndDeletedById() {
+    List<DataRowDiff.Row> current = stored(contact());
+    Contact changed = contact();
+    changed.emails.clear();
+    changed.avatar = new byte[0];
+    changed.note = "First programmer";
+
+    DataRowDiff diff = DataRowDiff.between(current, changed, RAW_CONTACT_ID);
+
+    assertThat(diff.updates).isEmpty();
+    assertThat(diff.deletes).containsExactly(idOf(current, "ada@example.com"), idOfType(current, Photo.CONTENT_ITEM_TYPE));
+    assertThat(diff.inserts).hasSize(1);
+    assertThat(diff.inserts.get(0).rawContactId).isEqualTo(RAW_CONTACT_ID);
+    assertThat(diff.inserts.get(0).values).containsEntry(Note.NOTE, "First programmer");
+  }
+
+  @Test
+  public void changedAvatar_updatesThePhotoRowOnly() {
+    List<DataRowDiff.Row> current = stored(contact());
+    Contact changed = contact();
+    changed.avatar = new byte[]{4, 5};
+
+    DataRowDiff diff = DataRowDiff.between(current, changed, RAW_CONTACT_ID);
+
+    assertThat(diff.updates).hasSize(1);
+    assertThat(diff.updates.get(0).id).isEqualTo(idOfType(current, Photo.CONTENT_ITEM_TYPE));
+  }
+
+  @Test
+  public void renamedContact_updatesTheNameRow() {
+    List<DataRowDiff.Row> current = stored(contact());
+    Contact changed = contact();
+    changed.familyName = "King";
+
+    DataRowDiff diff = DataRowDiff.between(current, changed, RAW_CONTACT_ID);
+
+    assertThat(diff.updates).hasSize(1);
+    assertThat(diff.updates.get(0).id).isEqualTo(idOfType(current, StructuredName.CONTENT_ITEM_TYPE));
+    assertThat(diff.updates.get(0).values).containsEntry(StructuredName.FAMILY_NAME, "King");
+  }
+
+  @Test
+  public void contactWithOnlyADisplayName_keepsItsNameRow() {
+    // The provider's name row carries the display name, in columns an update does not read.
+    HashMap<String, Object> name = new HashMap<>();
+    for (String column : DataRowDiff.columnsOf(StructuredName.CONTENT_ITEM_TYPE)) {
+      name.put(column, "");
+    }
+    List<DataRowDiff.Row> current = Arrays.asList(new DataRowDiff.Row(100, RAW_CONTACT_ID, StructuredName.CONTENT_ITEM_TYPE, name));
+    Contact contact = new Contact("1");
+    contact.displayName = "Ada";
+
+    assertThat(DataRowDiff.between(current, contact, RAW_CONTACT_ID).isEmpty()).isTrue();
+  }
+
+  @Test
+  public void clearedName_clearsTheNameColumnsInsteadOfDeletingTheRow() {
+    List<DataRowDiff.Row> current = stored(contact());
+    Contact cleared = contact();
+    cleared.givenName = null;
+    cleared.familyName = null;
+
+    DataRowDiff diff = DataRowDiff.between(current, cleared, RAW_CONTACT_ID);
+
+    assertThat(diff.deletes).isEmpty();
+    assertThat(diff.inserts).isEmpty();
+    assertThat(diff.updates).hasSize(1);
+    assertThat(diff.updates.get(0).id).isEqualTo(idOfType(current, StructuredName.CONTENT_ITEM_TYPE));
+    assertThat(diff.updates.get(0).values.get(StructuredName.GIVEN_NAME)).isNull();
+  }
+
+  @Test
+  public void contactWithoutNames_getsNoEmptyNameRow() {
+    Contact contact = new Contact("1");
+    contact.note = "First programmer";
+
+    DataRowDiff diff = DataRowDiff.between(new ArrayList<DataRowDiff.Row>(), contact, RAW_CONTACT_ID);
+
+    assertThat(diff.inserts).hasSize(1);
+    assertThat(diff.inserts.get(0).mimeType).isEqualTo(Note.CONTENT_ITEM_TYPE);
+  }
+
+  @Test
+  public void contactFromDart_keepsTheTypesOfItsRows() {
+    List<DataRowDiff.Row> current = stored(contact());
+
+    assertThat(DataRowDiff.between(current, Contact.fromMap(dartMap("+44 20 7946 0000")), RAW_CONTACT_ID).isEmpty()).isTrue();
+
+    DataRowDiff diff = DataRowDiff.between(current, Contact.fromMap(dartMap("+44 20 7946 1111")), RAW_CONTACT_ID);
+
+    assertThat(diff.inserts).isEmpty();
+    assertThat(diff.deletes).isEmpty();
+    assertThat(diff.updates).hasSize(1);
+    DataRowDiff.Row update = diff.updates.get(0);
+    assertThat(update.id).isEqualTo(idOf(current, "+44 20 7946 0000"));
+    assertThat(update.values).containsEntry(Phone.NUMBER, "+44 20 7946 1111");
+    assertThat(update.values).doesNotContainKey(Phone.TYPE);
+    assertThat(update.values).doesNotContainKey(Phone.LABEL);
+  }
+
+  @Test
+  public void newItemFromDart_isInsertedAsOther() {
+    HashMap<String, Object> map = dartMap("+44 20 7946 0000");
+    ((ArrayList<HashMap<String, Object>>) map.get("emails")).add(dartItem("work", "ada@example.org"));
+
+    DataRowDiff diff = DataRowDiff.between(stored(contact()), Contact.fromMap(map), RAW_CONTACT_ID);
+
+    assertThat(diff.updates).isEmpty();
+    assertThat(diff.inserts).hasSize(1);
+    assertThat(diff.inserts.get(0).values).containsEntry(Email.TYPE, Email.TYPE_OTHER);
+  }
+
+  /** The contact as the Dart side sends it, whose items have a label and a value but no type. */
+  private static HashMap<String, Object> dartMap(String workNumber) {
+    HashMap<String, Object> map = new HashMap<>();
+    map.put("identifier", "1");
+    map.put("givenName", "Ada");
+    map.put("familyName", "Lovelace");
+    map.put("avatar", new byte[]{1, 2, 3});
+    map.put("phones", new ArrayList<>(Arrays.asList(dartItem("mobile", "+44 20 7946 0958"), dartItem("work", workNumber))));
+    map.put("emails", new ArrayList<>(Arrays.asList(dartItem("home", "ada@example.com"))));
+    map.put("postalAddresses", new ArrayList<HashMap<String, Object>>());
+    return map;
+  }
+
+  private static HashMap<String, Object> dartItem(String label, String value) {
+    HashMap<String, Object> item = new HashMap<>();
+    item.put("label", label);
+    item.put("value", value);
+    return item;
+  }
+
+  private static long idOf(List<DataRowDiff.Row> rows, String value) {
+    for (DataRowDiff.Row row : rows) {
+      if (row.values.containsValue(value)) {
+        return row.id;
+      }
+    }
+    throw new AssertionError("No row with " + value);
+  }
+
+  private static long idOfType(List<DataRowDiff.Row> rows, String mimeType) {
+    for (DataRowDiff.Row row : rows) {
+      if (row.mimeType.equals(mimeType)) {
+        return row.id;
+      }
+    }
+    throw new AssertionError("No " + mimeType + " row");
+  }
+}
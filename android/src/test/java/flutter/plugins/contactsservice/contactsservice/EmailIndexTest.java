@@ -0,0 +1,109 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.ContactsContract;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class EmailIndexTest {
+
+  /** Serves a few email rows and counts the queries it was given. */
+  public static class FakeContactsProvider extends ContentProvider {
+    static int queries;
+
+    @Override
+    public boolean onCreate() {
+      return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+      queries++;
+      MatrixCursor cursor = new MatrixCursor(projection);
+      cursor.addRow(new Object[]{"1", "Ada@Example.com"});
+      cursor.addRow(new Object[]{"2", "ada.lovelace@example.com"});
+      cursor.addRow(new Object[]{"3", "ada@example.com"});
+      cursor.addRow(new Object[]{"4", "blaise@example.com"});
+      cursor.addRow(new Object[]{"5", null});
+      return cursor;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+      return null;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+      return 0;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+      return 0;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+      return null;
+    }
+  }
+
+  private EmailIndex index;
+
+  @Before
+  public void setUp() {
+    Robolectric.buildContentProvider(FakeContactsProvider.class).create(ContactsContract.AUTHORITY);
+    FakeContactsProvider.queries = 0;
+    index = new EmailIndex(RuntimeEnvironment.getApplication().getContentResolver());
+  }
+
+  @Test
+  public void exactLookup_ignoresCaseButNotTheRestOfTheAddress() {
+    assertThat(index.lookup(" ADA@example.com", EmailIndex.Match.EXACT)).containsExactly("1", "3");
+    assertThat(index.lookup("da@example.com", EmailIndex.Match.EXACT)).isEmpty();
+    assertThat(index.lookup("", EmailIndex.Match.EXACT)).isEmpty();
+  }
+
+  @Test
+  public void prefixLookup_returnsEveryAddressStartingWithTheText() {
+    assertThat(index.lookup("ada", EmailIndex.Match.PREFIX)).containsExactly("2", "1", "3").inOrder();
+    assertThat(index.lookup("b", EmailIndex.Match.PREFIX)).containsExactly("4");
+    assertThat(index.lookup("z", EmailIndex.Match.PREFIX)).isEmpty();
+  }
+
+  @Test
+  public void lookupAll_answersEveryAddressFromOneRead() {
+    List<List<String>> matches = (List) index.lookupAll(Arrays.asList("blaise@example.com", "nobody@example.com"));
+
+    assertThat(matches).hasSize(2);
+    assertThat(matches.get(0)).containsExactly("4");
+    assertThat(matches.get(1)).isEmpty();
+    index.lookup("ada", EmailIndex.Match.PREFIX);
+    assertThat(FakeContactsProvider.queries).isEqualTo(1);
+  }
+
+  @Test
+  public void invalidate_rebuildsOnTheNextLookup() {
+    index.lookup("ada@example.com", EmailIndex.Match.EXACT);
+    index.invalidate();
+    index.lookup("ada@example.com", EmailIndex.Match.EXACT);
+
+    assertThat(FakeContactsProvider.queries).isEqualTo(2);
+  }
+}
@@ -0,0 +1,85 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import io.flutter.plugin.common.StandardMessageCodec;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class PackedContactsTest {
+
+  private static final int CONTACTS = 10000;
+
+  private static ArrayList<Contact> syntheticContacts(int count) {
+    return ContactCursorReader.readContacts(SyntheticDataRows.cursor(SyntheticDataRows.grouped(count)), null, false);
+  }
+
+  private static ArrayList<HashMap> maps(List<Contact> contacts, int fields) {
+    ArrayList<HashMap> maps = new ArrayList<>();
+    for (Contact contact : contacts) {
+      maps.add(contact.toMap(fields));
+    }
+    return maps;
+  }
+
+  @Test
+  public void decode_readsBackEveryField() {
+    Contact contact = new Contact("7");
+    contact.displayName = "Ada Lovelace";
+    contact.givenName = "Ada";
+    contact.familyName = "Lovelace";
+    contact.company = "Analytical Engines";
+    contact.note = "Caf\u00e9 \u2615";
+    contact.birthday = "--12-10";
+    contact.avatar = new byte[]{1, 2, 3};
+    contact.addEmail(new Item("work", "ada@example.org", 2));
+    contact.addPhone(new Item("", "+44 20 7946 0958", -1));
+    contact.addPostalAddress(new PostalAddress("home", "12 St James's Square", "London", "SW1Y", null, "UK", 1));
+
+    Contact decoded = PackedContacts.decode(PackedContacts.encode(Collections.singletonList(contact), ContactFields.ALL)).get(0);
+
+    SyntheticDataRows.assertSameContacts(Collections.singletonList(decoded), Collections.singletonList(contact));
+    assertThat(decoded.avatar).isEqualTo(new byte[]{1, 2, 3});
+    assertThat(decoded.middleName).isNull();
+    assertThat(decoded.phones.get(0).type).isEqualTo(-1);
+    assertThat(decoded.postalAddresses.get(0).type).isEqualTo(1);
+  }
+
+  @Test
+  public void decode_roundTripsSyntheticContacts() {
+    ArrayList<Contact> contacts = syntheticContacts(500);
+
+    SyntheticDataRows.assertSameContacts(PackedContacts.decode(PackedContacts.encode(contacts, ContactFields.ALL)), contacts);
+  }
+
+  @Test
+  public void schema_hasTheSameKeysAsTheMaps() {
+    int fields = ContactFields.NAMES | ContactFields.PHONES;
+    List<String> keys = new ArrayList<>();
+    for (PackedContacts.Field field : PackedContacts.schema(fields)) {
+      keys.add(field.key);
+    }
+
+    assertThat(keys).containsExactlyElementsIn(new Contact("1").toMap(fields).keySet());
+  }
+
+  @Test
+  public void encode_isMuchSmallerThanTheCodecEncodedMaps() {
+    ArrayList<Contact> contacts = syntheticContacts(CONTACTS);
+
+    int packedSize = PackedContacts.encode(contacts, ContactFields.ALL).length;
+    ByteBuffer codecBytes = StandardMessageCodec.INSTANCE.encodeMessage(maps(contacts, ContactFields.ALL));
+    int codecSize = codecBytes.capacity();
+
+    assertThat(packedSize * 2).isLessThan(codecSize);
+  }
+}
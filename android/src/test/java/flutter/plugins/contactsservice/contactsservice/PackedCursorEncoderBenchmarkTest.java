@@ -0,0 +1,110 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.junit.Assume.assumeTrue;
+
+import android.database.Cursor;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import io.flutter.plugin.common.StandardMessageCodec;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Compares the allocations of encoding 10k contacts for the method channel: reading them into
+ * contacts and maps for the standard codec, packing the read contacts, and packing the cursor
+ * rows directly. Allocations depend on the JVM, so the comparison is run by hand rather than with
+ * the unit tests.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PackedCursorEncoderBenchmarkTest {
+
+  private static final int CONTACTS = 10000;
+  private static final int WARMUP_RUNS = 2;
+  private static final int MEASURED_RUNS = 3;
+
+  private interface Encoding {
+    Object encode(Cursor cursor);
+  }
+
+  private static final Encoding MAPS = new Encoding() {
+    @Override
+    public Object encode(Cursor cursor) {
+      ArrayList<HashMap> maps = new ArrayList<>();
+      for (Contact contact : ContactCursorReader.readOrderedContacts(cursor, null, false)) {
+        maps.add(contact.toMap());
+      }
+      return StandardMessageCodec.INSTANCE.encodeMessage(maps);
+    }
+  };
+
+  private static final Encoding PACKED_CONTACTS = new Encoding() {
+    @Override
+    public Object encode(Cursor cursor) {
+      return PackedContacts.encode(ContactCursorReader.readOrderedContacts(cursor, null, false), ContactFields.ALL);
+    }
+  };
+
+  private static final Encoding PACKED_CURSOR = new Encoding() {
+    @Override
+    public Object encode(Cursor cursor) {
+      return PackedCursorEncoder.encode(cursor, null, false, ContactFields.ALL, null);
+    }
+  };
+
+  @Test
+  public void encode_writesTheSameBytesAsPackingTheReadContacts() {
+    List<Object[]> rows = SyntheticDataRows.grouped(100);
+
+    for (int fields : new int[]{ContactFields.ALL, ContactFields.NAMES | ContactFields.PHONES}) {
+      byte[] expected = PackedContacts.encode(ContactCursorReader.readOrderedContacts(SyntheticDataRows.cursor(rows), null, false, fields, null), fields);
+
+      assertThat(PackedCursorEncoder.encode(SyntheticDataRows.cursor(rows), null, false, fields, null)).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  @Ignore("Benchmark, run by hand")
+  public void encode_allocatesLessPerTenThousandContactsThanContactsAndMaps() {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    List<Object[]> rows = SyntheticDataRows.grouped(CONTACTS);
+
+    long mapsBytes = allocatedBytes(threads, MAPS, rows);
+    long packedContactsBytes = allocatedBytes(threads, PACKED_CONTACTS, rows);
+    long packedCursorBytes = allocatedBytes(threads, PACKED_CURSOR, rows);
+    assertWithMessage("bytes allocated packing the read contacts, against contacts and maps")
+            .that(packedContactsBytes)
+            .isLessThan(mapsBytes);
+    assertWithMessage("bytes allocated packing the cursor, times 4, against contacts and maps")
+            .that(packedCursorBytes * 4)
+            .isLessThan(mapsBytes);
+  }
+
+  /**
+   * @return the bytes allocated by one encoding, averaged over the measured runs, not counting
+   * the cursor it reads
+   */
+  private static long allocatedBytes(com.sun.management.ThreadMXBean threads, Encoding encoding, List<Object[]> rows) {
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      encoding.encode(SyntheticDataRows.cursor(rows));
+    }
+    long threadId = Thread.currentThread().getId();
+    long total = 0;
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      Cursor cursor = SyntheticDataRows.cursor(rows);
+      long before = threads.getThreadAllocatedBytes(threadId);
+      encoding.encode(cursor);
+      total += threads.getThreadAllocatedBytes(threadId) - before;
+    }
+    return total / MEASURED_RUNS;
+  }
+}
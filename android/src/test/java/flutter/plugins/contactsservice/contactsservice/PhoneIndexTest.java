@@ -0,0 +1,109 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.ContactsContract;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class PhoneIndexTest {
+
+  /** Serves a few phone rows and counts the queries it was given. */
+  public static class FakeContactsProvider extends ContentProvider {
+    static int queries;
+
+    @Override
+    public boolean onCreate() {
+      return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+      queries++;
+      MatrixCursor cursor = new MatrixCursor(projection);
+      cursor.addRow(new Object[]{"1", "(415) 555-2671", "+14155552671"});
+      cursor.addRow(new Object[]{"2", "020 7946 0958", "+442079460958"});
+      cursor.addRow(new Object[]{"3", "415.555.2671", null});
+      cursor.addRow(new Object[]{"4", "112", null});
+      return cursor;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+      return null;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+      return 0;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+      return 0;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+      return null;
+    }
+  }
+
+  private PhoneIndex index;
+
+  @Before
+  public void setUp() {
+    Robolectric.buildContentProvider(FakeContactsProvider.class).create(ContactsContract.AUTHORITY);
+    FakeContactsProvider.queries = 0;
+    index = new PhoneIndex(RuntimeEnvironment.getApplication().getContentResolver());
+  }
+
+  @Test
+  public void lookup_matchesDifferentlyFormattedNumbers() {
+    assertThat(index.lookup("+1 415 555 2671")).containsExactly("1", "3").inOrder();
+    assertThat(index.lookup("5552671")).containsExactly("1", "3").inOrder();
+    assertThat(index.lookup("+44 20 7946 0958")).containsExactly("2");
+    assertThat(index.lookup("112")).containsExactly("4");
+  }
+
+  @Test
+  public void lookup_doesNotMatchOtherNumbersWithTheSameSuffix() {
+    assertThat(index.lookup("+1 212 555 2671")).isEmpty();
+    assertThat(index.lookup("")).isEmpty();
+  }
+
+  @Test
+  public void lookupAll_answersEveryNumberFromOneRead() {
+    List<List<String>> matches = (List) index.lookupAll(Arrays.asList("4155552671", "999", "02079460958"));
+
+    assertThat(matches).hasSize(3);
+    assertThat(matches.get(0)).containsExactly("1", "3");
+    assertThat(matches.get(1)).isEmpty();
+    assertThat(matches.get(2)).containsExactly("2");
+    index.lookup("112");
+    assertThat(FakeContactsProvider.queries).isEqualTo(1);
+  }
+
+  @Test
+  public void invalidate_rebuildsOnTheNextLookup() {
+    index.lookup("112");
+    index.invalidate();
+    index.lookup("112");
+
+    assertThat(FakeContactsProvider.queries).isEqualTo(2);
+  }
+}
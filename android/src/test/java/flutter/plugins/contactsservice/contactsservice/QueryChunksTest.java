@@ -0,0 +1,37 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class QueryChunksTest {
+
+  @Test
+  public void split_empty() {
+    assertThat(QueryChunks.split(Collections.<String>emptyList())).isEmpty();
+  }
+
+  @Test
+  public void split_keepsOrderAndLimit() {
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < QueryChunks.MAX_ARGS * 2 + 1; i++) {
+      values.add(i);
+    }
+
+    List<List<Integer>> chunks = QueryChunks.split(values);
+
+    assertThat(chunks).hasSize(3);
+    assertThat(chunks.get(0)).hasSize(QueryChunks.MAX_ARGS);
+    assertThat(chunks.get(1).get(0)).isEqualTo(QueryChunks.MAX_ARGS);
+    assertThat(chunks.get(2)).containsExactly(QueryChunks.MAX_ARGS * 2);
+  }
+
+  @Test
+  public void in_onePlaceholderPerValue() {
+    assertThat(QueryChunks.in("contact_id", 3)).isEqualTo("contact_id IN (?,?,?)");
+  }
+}
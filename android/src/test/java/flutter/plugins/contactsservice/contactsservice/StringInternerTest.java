@@ -0,0 +1,45 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+public class StringInternerTest {
+
+  @Test
+  public void intern_returnsTheFirstInstanceOfEqualStrings() {
+    StringInterner strings = new StringInterner();
+    String first = new String("com.google");
+
+    assertThat(strings.intern(first)).isSameInstanceAs(first);
+    assertThat(strings.intern(new String("com.google"))).isSameInstanceAs(first);
+    assertThat(strings.intern(null)).isNull();
+    assertThat(strings.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void intern_findsStringsByTheirChars() {
+    StringInterner strings = new StringInterner();
+    String known = strings.intern(new String("user@example.com"));
+    char[] buffer = "user@example.com and more".toCharArray();
+
+    assertThat(strings.intern(buffer, 16)).isSameInstanceAs(known);
+    String created = strings.intern(buffer, 4);
+    assertThat(created).isEqualTo("user");
+    assertThat(strings.intern(new String("user"))).isSameInstanceAs(created);
+  }
+
+  @Test
+  public void intern_keepsEveryValueAsTheTableGrows() {
+    StringInterner strings = new StringInterner();
+    String[] values = new String[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = strings.intern("label" + i);
+    }
+
+    for (int i = 0; i < values.length; i++) {
+      assertThat(strings.intern(("label" + i).toCharArray(), ("label" + i).length())).isSameInstanceAs(values[i]);
+    }
+    assertThat(strings.size()).isEqualTo(values.length);
+  }
+}
@@ -0,0 +1,192 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static android.provider.ContactsContract.CommonDataKinds;
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Organization;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.ContactsContract;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Builds {@link ContactsContract.Data} rows shaped like the provider output for
+ * {@link ContactCursorReader#PROJECTION}, five rows per contact.
+ */
+final class SyntheticDataRows {
+
+  static final int ROWS_PER_CONTACT = 5;
+
+  private SyntheticDataRows() {
+  }
+
+  /** Rows grouped by contact id, as returned by a query sorted on CONTACT_ID. */
+  static List<Object[]> grouped(int contactCount) {
+    List<Object[]> rows = new ArrayList<>(contactCount * ROWS_PER_CONTACT);
+    for (int i = 0; i < contactCount; i++) {
+      rows.addAll(rowsFor(i));
+    }
+    return rows;
+  }
+
+  /** Rows of all contacts interleaved by kind, as returned by an unsorted query. */
+  static List<Object[]> interleaved(int contactCount) {
+    List<List<Object[]>> perContact = new ArrayList<>(contactCount);
+    for (int i = 0; i < contactCount; i++) {
+      perContact.add(rowsFor(i));
+    }
+    List<Object[]> rows = new ArrayList<>(contactCount * ROWS_PER_CONTACT);
+    for (int kind = 0; kind < ROWS_PER_CONTACT; kind++) {
+      for (List<Object[]> contactRows : perContact) {
+        rows.add(contactRows.get(kind));
+      }
+    }
+    return rows;
+  }
+
+  static MatrixCursor cursor(List<Object[]> rows) {
+    MatrixCursor cursor = new MatrixCursor(ContactCursorReader.PROJECTION, rows.size());
+    for (Object[] row : rows) {
+      cursor.addRow(row);
+    }
+    return cursor;
+  }
+
+  static void assertSameContacts(List<Contact> actual, List<Contact> expected) {
+    assertThat(actual).hasSize(expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertThat(comparableMap(actual.get(i))).isEqualTo(comparableMap(expected.get(i)));
+    }
+  }
+
+  /** The decoder as it was before column indices were cached, to compare the reader with. */
+  static ArrayList<Contact> readPreviously(Cursor cursor) {
+    HashMap<String, Contact> map = new LinkedHashMap<>();
+
+    while (cursor != null && cursor.moveToNext()) {
+      int columnIndex = cursor.getColumnIndex(ContactsContract.Data.CONTACT_ID);
+      String contactId = cursor.getString(columnIndex);
+
+      if (!map.containsKey(contactId)) {
+        map.put(contactId, new Contact(contactId));
+      }
+      Contact contact = map.get(contactId);
+
+      String mimeType = cursor.getString(cursor.getColumnIndex(ContactsContract.Data.MIMETYPE));
+      contact.displayName = cursor.getString(cursor.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME));
+      contact.androidAccountType = cursor.getString(cursor.getColumnIndex(ContactsContract.RawContacts.ACCOUNT_TYPE));
+      contact.androidAccountName = cursor.getString(cursor.getColumnIndex(ContactsContract.RawContacts.ACCOUNT_NAME));
+
+      if (mimeType.equals(StructuredName.CONTENT_ITEM_TYPE)) {
+        contact.givenName = cursor.getString(cursor.getColumnIndex(StructuredName.GIVEN_NAME));
+        contact.middleName = cursor.getString(cursor.getColumnIndex(StructuredName.MIDDLE_NAME));
+        contact.familyName = cursor.getString(cursor.getColumnIndex(StructuredName.FAMILY_NAME));
+        contact.prefix = cursor.getString(cursor.getColumnIndex(StructuredName.PREFIX));
+        contact.suffix = cursor.getString(cursor.getColumnIndex(StructuredName.SUFFIX));
+      } else if (mimeType.equals(CommonDataKinds.Note.CONTENT_ITEM_TYPE)) {
+        contact.note = cursor.getString(cursor.getColumnIndex(CommonDataKinds.Note.NOTE));
+      } else if (mimeType.equals(Phone.CONTENT_ITEM_TYPE)) {
+        String phoneNumber = cursor.getString(cursor.getColumnIndex(Phone.NUMBER));
+        if (!TextUtils.isEmpty(phoneNumber)) {
+          int type = cursor.getInt(cursor.getColumnIndex(Phone.TYPE));
+          String label = Item.getPhoneLabel(null, type, cursor, false);
+          contact.addPhone(new Item(label, phoneNumber, type));
+        }
+      } else if (mimeType.equals(Email.CONTENT_ITEM_TYPE)) {
+        String email = cursor.getString(cursor.getColumnIndex(Email.ADDRESS));
+        int type = cursor.getInt(cursor.getColumnIndex(Email.TYPE));
+        if (!TextUtils.isEmpty(email)) {
+          String label = Item.getEmailLabel(null, type, cursor, false);
+          contact.addEmail(new Item(label, email, type));
+        }
+      } else if (mimeType.equals(Organization.CONTENT_ITEM_TYPE)) {
+        contact.company = cursor.getString(cursor.getColumnIndex(Organization.COMPANY));
+        contact.jobTitle = cursor.getString(cursor.getColumnIndex(Organization.TITLE));
+      } else if (mimeType.equals(StructuredPostal.CONTENT_ITEM_TYPE)) {
+        int type = cursor.getInt(cursor.getColumnIndex(StructuredPostal.TYPE));
+        String label = PostalAddress.getLabel(null, type, cursor, false);
+        String street = cursor.getString(cursor.getColumnIndex(StructuredPostal.STREET));
+        String city = cursor.getString(cursor.getColumnIndex(StructuredPostal.CITY));
+        String postcode = cursor.getString(cursor.getColumnIndex(StructuredPostal.POSTCODE));
+        String region = cursor.getString(cursor.getColumnIndex(StructuredPostal.REGION));
+        String country = cursor.getString(cursor.getColumnIndex(StructuredPostal.COUNTRY));
+        contact.addPostalAddress(new PostalAddress(label, street, city, postcode, region, country, type));
+      } else if (mimeType.equals(CommonDataKinds.Event.CONTENT_ITEM_TYPE)) {
+        int eventType = cursor.getInt(cursor.getColumnIndex(CommonDataKinds.Event.TYPE));
+        if (eventType == CommonDataKinds.Event.TYPE_BIRTHDAY) {
+          contact.birthday = cursor.getString(cursor.getColumnIndex(CommonDataKinds.Event.START_DATE));
+        }
+      }
+    }
+
+    if (cursor != null)
+      cursor.close();
+
+    return new ArrayList<>(map.values());
+  }
+
+  private static HashMap<String, Object> comparableMap(Contact contact) {
+    HashMap<String, Object> map = contact.toMap();
+    // byte arrays compare by identity
+    map.remove("avatar");
+    return map;
+  }
+
+  private static List<Object[]> rowsFor(int i) {
+    String id = String.valueOf(i + 1);
+    String account = i % 2 == 0 ? "com.google" : "com.whatsapp";
+    List<Object[]> rows = new ArrayList<>(ROWS_PER_CONTACT);
+    rows.add(row(id, account, StructuredName.CONTENT_ITEM_TYPE,
+        StructuredName.GIVEN_NAME, "Given" + i,
+        StructuredName.FAMILY_NAME, "Family" + i,
+        StructuredName.PREFIX, "Dr"));
+    rows.add(row(id, account, Phone.CONTENT_ITEM_TYPE,
+        Phone.NUMBER, "+1555" + i,
+        Phone.TYPE, i % 3 == 0 ? Phone.TYPE_CUSTOM : Phone.TYPE_MOBILE,
+        Phone.LABEL, "Pager"));
+    rows.add(row(id, account, Email.CONTENT_ITEM_TYPE,
+        Email.ADDRESS, "user" + i + "@example.com",
+        Email.TYPE, Email.TYPE_WORK));
+    rows.add(row(id, account, Organization.CONTENT_ITEM_TYPE,
+        Organization.COMPANY, "Company" + (i % 100),
+        Organization.TITLE, "Engineer"));
+    rows.add(row(id, account, StructuredPostal.CONTENT_ITEM_TYPE,
+        StructuredPostal.TYPE, StructuredPostal.TYPE_HOME,
+        StructuredPostal.STREET, i + " Main Street",
+        StructuredPostal.CITY, "Springfield",
+        StructuredPostal.POSTCODE, "12345",
+        StructuredPostal.COUNTRY, "US"));
+    return rows;
+  }
+
+  private static Object[] row(String contactId, String account, String mimeType, Object... columnValues) {
+    Object[] row = new Object[ContactCursorReader.PROJECTION.length];
+    set(row, ContactsContract.Data.CONTACT_ID, contactId);
+    set(row, ContactsContract.Contacts.DISPLAY_NAME, "Contact " + contactId);
+    set(row, ContactsContract.Data.MIMETYPE, mimeType);
+    set(row, ContactsContract.RawContacts.ACCOUNT_TYPE, account);
+    set(row, ContactsContract.RawContacts.ACCOUNT_NAME, "user@" + account);
+    for (int i = 0; i < columnValues.length; i += 2) {
+      set(row, (String) columnValues[i], columnValues[i + 1]);
+    }
+    return row;
+  }
+
+  // Several kinds share the generic dataN columns, so fill every occurrence.
+  private static void set(Object[] row, String column, Object value) {
+    for (int i = 0; i < ContactCursorReader.PROJECTION.length; i++) {
+      if (ContactCursorReader.PROJECTION[i].equals(column)) {
+        row[i] = value;
+      }
+    }
+  }
+}
@@ -5,86 +5,376 @@ import 'package:collection/collection.dart';
 import 'package:flutter/services.dart';
 import 'package:quiver/core.dart';
 
+import 'src/packed_contacts.dart';
+
 export 'share.dart';
 
 class ContactsService {
   static const MethodChannel _channel =
       MethodChannel('github.com/clovisnicolas/flutter_contacts');
+  static const EventChannel _contactsStreamChannel =
+      EventChannel('github.com/clovisnicolas/flutter_contacts/contactsStream');
+  static const EventChannel _contactChangesChannel =
+      EventChannel('github.com/clovisnicolas/flutter_contacts/contactChanges');
 
   /// Fetches all contacts, or when specified, the contacts with a name
   /// matching [query]
+  ///
+  /// On Android, [useSnapshot] answers an unfiltered request from the contact
+  /// list stored by the previous such call, then checks the address book for
+  /// changes in the background and refreshes the stored list for next time.
+  ///
+  /// On Android, [fields] limits the rows read and the contact fields
+  /// returned to the given groups; the identifier, display name, account and
+  /// avatar are always returned. All fields are returned when it is null, and
+  /// an empty set is rejected. Only contacts with at least one of the
+  /// requested fields are returned, so `{ContactField.phones}` leaves out the
+  /// contacts without a phone number.
+  ///
+  /// On Android, [sortBy] takes precedence over [orderByGivenName]. Family
+  /// and display name orders use the address book's locale-aware sort keys.
+  ///
+  /// On Android, [packed] sends the contacts as one compact byte array instead
+  /// of a map per contact, which is smaller and faster to encode for large
+  /// address books. The contacts returned are the same either way. Packed
+  /// requests without thumbnails, sorted by [sortBy] rather than given name,
+  /// are encoded straight from the address book rows.
+  ///
+  /// A call made with a [requestId] can be aborted with [cancel], in which
+  /// case it completes with a [PlatformException] with the code `CANCELLED`.
+  /// Cancellation is only implemented on Android.
   static Future<List<Contact>> getContacts(
       {String? query,
       bool withThumbnails = true,
       bool photoHighResolution = true,
       bool orderByGivenName = true,
+      ContactSortOrder? sortBy,
       bool iOSLocalizedLabels = true,
-      bool androidLocalizedLabels = true}) async {
-    Iterable contacts =
+      bool androidLocalizedLabels = true,
+      AvatarOptions avatarOptions = AvatarOptions.original,
+      bool useSnapshot = false,
+      Set<ContactField>? fields,
+      bool packed = false,
+      int? requestId}) async {
+    final contacts =
         await _channel.invokeMethod('getContacts', <String, dynamic>{
       'query': query,
       'withThumbnails': withThumbnails,
       'photoHighResolution': photoHighResolution,
       'orderByGivenName': orderByGivenName,
+      'sortBy': sortBy?.toString().split('.').last,
       'iOSLocalizedLabels': iOSLocalizedLabels,
       'androidLocalizedLabels': androidLocalizedLabels,
+      'avatarOptions': avatarOptions._toMap(),
+      'useSnapshot': useSnapshot,
+      'fields': fields?.map((f) => f.toString().split('.').last).toList(),
+      'packed': packed,
+      'requestId': requestId,
+    });
+    return _contactsFrom(contacts);
+  }
+
+  /// Builds the contacts from a list of maps, or from the single byte array
+  /// Android replies with when `packed` results were asked for.
+  static List<Contact> _contactsFrom(dynamic contacts) => contacts is Uint8List
+      ? decodePackedContacts(contacts)
+      : (contacts as Iterable).map((m) => Contact.fromMap(m)).toList();
+
+  /// Fetches one lightweight summary per contact, or when specified per
+  /// contact with a name matching [query], in the address book's sort order.
+  /// Summaries come from one row per contact instead of every detail row, so
+  /// they suit long scrolling lists; load the full contact with [getContact]
+  /// when it is opened. Only implemented on Android.
+  static Future<List<ContactSummary>> getContactSummaries(
+      {String? query}) async {
+    Iterable summaries = await _channel.invokeMethod(
+        'getContactSummaries', <String, dynamic>{'query': query});
+    return summaries.map((m) => ContactSummary.fromMap(m)).toList();
+  }
+
+  /// Fetches the full contact with the given [identifier], or null if it no
+  /// longer exists. Only implemented on Android.
+  static Future<Contact?> getContact(String identifier,
+      {bool withThumbnails = true,
+      bool photoHighResolution = true,
+      bool androidLocalizedLabels = true,
+      AvatarOptions avatarOptions = AvatarOptions.original}) async {
+    Map? contact =
+        await _channel.invokeMethod('getContact', <String, dynamic>{
+      'identifier': identifier,
+      'withThumbnails': withThumbnails,
+      'photoHighResolution': photoHighResolution,
+      'androidLocalizedLabels': androidLocalizedLabels,
+      'avatarOptions': avatarOptions._toMap(),
+    });
+    return contact != null ? Contact.fromMap(contact) : null;
+  }
+
+  /// Fetches the full contacts with the given [identifiers] in batched
+  /// queries. The result has one entry per identifier, in the same order, with
+  /// null for contacts that no longer exist. Only implemented on Android.
+  static Future<List<Contact?>> getContactsByIds(List<String> identifiers,
+      {bool withThumbnails = true,
+      bool photoHighResolution = true,
+      bool androidLocalizedLabels = true,
+      AvatarOptions avatarOptions = AvatarOptions.original}) async {
+    if (identifiers.isEmpty) return List.empty();
+
+    Iterable contacts =
+        await _channel.invokeMethod('getContactsByIds', <String, dynamic>{
+      'identifiers': identifiers,
+      'withThumbnails': withThumbnails,
+      'photoHighResolution': photoHighResolution,
+      'androidLocalizedLabels': androidLocalizedLabels,
+      'avatarOptions': avatarOptions._toMap(),
+    });
+    return contacts.map((m) => m != null ? Contact.fromMap(m) : null).toList();
+  }
+
+  /// Searches the names, company, job title, emails and phone numbers of all
+  /// contacts at once, returning at most [limit] contacts that have, for
+  /// every word of [query], a word starting with it, best matches first. The
+  /// search runs against an index that is built on first use and kept up to
+  /// date as the address book changes. Only implemented on Android.
+  static Future<List<Contact>> searchContacts(String query,
+      {int limit = 50, bool androidLocalizedLabels = true}) async {
+    Iterable contacts =
+        await _channel.invokeMethod('searchContacts', <String, dynamic>{
+      'query': query,
+      'limit': limit,
+      'androidLocalizedLabels': androidLocalizedLabels,
     });
     return contacts.map((m) => Contact.fromMap(m)).toList();
   }
 
+  /// Resolves many phone numbers at once, e.g. for caller ID, returning the
+  /// contacts that have each of the given [phones]. Numbers match regardless
+  /// of formatting, and with or without a country code. Lookups are answered
+  /// from an index that is built on first use and rebuilt after the address
+  /// book changes. Only implemented on Android.
+  static Future<Map<String, List<Contact>>> lookupPhones(List<String> phones,
+      {bool androidLocalizedLabels = true}) async {
+    if (phones.isEmpty) return {};
+
+    List matches =
+        await _channel.invokeMethod('lookupPhones', <String, dynamic>{
+      'phones': phones,
+      'androidLocalizedLabels': androidLocalizedLabels,
+    });
+    return {
+      for (var i = 0; i < phones.length; i++)
+        phones[i]:
+            (matches[i] as List).map((m) => Contact.fromMap(m)).toList()
+    };
+  }
+
+  /// Resolves many email addresses at once, e.g. to match inbound messages to
+  /// their senders, returning the contacts that have each of the given
+  /// [emails], ignoring case. Lookups are answered from an index that is
+  /// built on first use and rebuilt after the address book changes. Only
+  /// implemented on Android.
+  static Future<Map<String, List<Contact>>> lookupEmails(List<String> emails,
+      {bool androidLocalizedLabels = true}) async {
+    if (emails.isEmpty) return {};
+
+    List matches =
+        await _channel.invokeMethod('lookupEmails', <String, dynamic>{
+      'emails': emails,
+      'androidLocalizedLabels': androidLocalizedLabels,
+    });
+    return {
+      for (var i = 0; i < emails.length; i++)
+        emails[i]:
+            (matches[i] as List).map((m) => Contact.fromMap(m)).toList()
+    };
+  }
+
+  /// Aborts the [getContacts], [getContactsForPhone] or [getContactsForEmail]
+  /// call made with [requestId], skipping whatever part of its query, contact
+  /// assembly and avatar loading has not run yet. Returns false if no such
+  /// call is in flight. Only implemented on Android.
+  static Future<bool> cancel(int requestId) async =>
+      await _channel.invokeMethod('cancel', <String, dynamic>{
+        'requestId': requestId,
+      }) ??
+      false;
+
+  /// Deletes the contact list stored on disk for [getContacts] with
+  /// `useSnapshot`. Only implemented on Android.
+  static Future deleteContactsSnapshot() =>
+      _channel.invokeMethod('deleteContactsSnapshot');
+
+  /// Streams all contacts, or when specified, the contacts with a name
+  /// matching [query], in pages of at most [pageSize] contacts. The stream
+  /// closes once the last page has been delivered. Only implemented on
+  /// Android.
+  static Stream<List<Contact>> streamContacts(
+      {String? query,
+      int pageSize = 500,
+      bool withThumbnails = true,
+      bool photoHighResolution = true,
+      bool orderByGivenName = true,
+      ContactSortOrder? sortBy,
+      bool androidLocalizedLabels = true,
+      AvatarOptions avatarOptions = AvatarOptions.original}) {
+    return _contactsStreamChannel.receiveBroadcastStream(<String, dynamic>{
+      'query': query,
+      'pageSize': pageSize,
+      'withThumbnails': withThumbnails,
+      'photoHighResolution': photoHighResolution,
+      'orderByGivenName': orderByGivenName,
+      'sortBy': sortBy?.toString().split('.').last,
+      'androidLocalizedLabels': androidLocalizedLabels,
+      'avatarOptions': avatarOptions._toMap(),
+    }).map((page) =>
+        (page as List).map((m) => Contact.fromMap(m)).toList());
+  }
+
   /// Fetches all contacts, or when specified, the contacts with the phone
   /// matching [phone]
   static Future<List<Contact>> getContactsForPhone(String? phone,
       {bool withThumbnails = true,
       bool photoHighResolution = true,
       bool orderByGivenName = true,
+      ContactSortOrder? sortBy,
       bool iOSLocalizedLabels = true,
-      bool androidLocalizedLabels = true}) async {
+      bool androidLocalizedLabels = true,
+      AvatarOptions avatarOptions = AvatarOptions.original,
+      bool packed = false,
+      int? requestId}) async {
     if (phone == null || phone.isEmpty) return List.empty();
 
-    Iterable contacts =
+    final contacts =
         await _channel.invokeMethod('getContactsForPhone', <String, dynamic>{
       'phone': phone,
       'withThumbnails': withThumbnails,
       'photoHighResolution': photoHighResolution,
       'orderByGivenName': orderByGivenName,
+      'sortBy': sortBy?.toString().split('.').last,
       'iOSLocalizedLabels': iOSLocalizedLabels,
       'androidLocalizedLabels': androidLocalizedLabels,
+      'avatarOptions': avatarOptions._toMap(),
+      'packed': packed,
+      'requestId': requestId,
     });
-    return contacts.map((m) => Contact.fromMap(m)).toList();
+    return _contactsFrom(contacts);
   }
 
   /// Fetches all contacts, or when specified, the contacts with the email
   /// matching [email]
-  /// Works only on iOS
+  ///
+  /// On Android, [match] chooses between addresses containing [email], the
+  /// default, and the much faster prefix and exact matches, which are answered
+  /// from an index instead of scanning every address.
   static Future<List<Contact>> getContactsForEmail(String email,
-      {bool withThumbnails = true,
+      {EmailMatch match = EmailMatch.contains,
+      bool withThumbnails = true,
       bool photoHighResolution = true,
       bool orderByGivenName = true,
+      ContactSortOrder? sortBy,
       bool iOSLocalizedLabels = true,
-      bool androidLocalizedLabels = true}) async {
-    List contacts =
+      bool androidLocalizedLabels = true,
+      AvatarOptions avatarOptions = AvatarOptions.original,
+      bool packed = false,
+      int? requestId}) async {
+    final contacts =
         await _channel.invokeMethod('getContactsForEmail', <String, dynamic>{
       'email': email,
+      'match': match.toString().split('.').last,
       'withThumbnails': withThumbnails,
       'photoHighResolution': photoHighResolution,
       'orderByGivenName': orderByGivenName,
+      'sortBy': sortBy?.toString().split('.').last,
       'iOSLocalizedLabels': iOSLocalizedLabels,
       'androidLocalizedLabels': androidLocalizedLabels,
+      'avatarOptions': avatarOptions._toMap(),
+      'packed': packed,
+      'requestId': requestId,
     });
-    return contacts.map((m) => Contact.fromMap(m)).toList();
+    return _contactsFrom(contacts);
+  }
+
+  /// Emits an event whenever the device address book changes. Bursts of
+  /// provider notifications, such as an account sync writing many rows, are
+  /// coalesced into one event per [debounce] window. Only implemented on
+  /// Android.
+  static Stream<ContactsChangeEvent> contactChanges(
+      {Duration debounce = const Duration(milliseconds: 500)}) {
+    return _contactChangesChannel.receiveBroadcastStream(<String, dynamic>{
+      'debounceMillis': debounce.inMilliseconds,
+    }).map((event) => ContactsChangeEvent.fromMap(event));
+  }
+
+  /// Fetches the contacts added, updated or deleted after [watermark], a
+  /// timestamp in milliseconds since epoch. Pass the returned
+  /// [ContactChanges.watermark] to the next call to keep syncing. Only
+  /// implemented on Android.
+  static Future<ContactChanges> getContactsChangedSince(int watermark,
+      {bool androidLocalizedLabels = true}) async {
+    Map changes = await _channel
+        .invokeMethod('getContactsChangedSince', <String, dynamic>{
+      'timestamp': watermark,
+      'androidLocalizedLabels': androidLocalizedLabels,
+    });
+    return ContactChanges.fromMap(changes);
   }
 
   /// Loads the avatar for the given contact and returns it. If the user does
   /// not have an avatar, then `null` is returned in that slot. Only implemented
   /// on Android.
   static Future<Uint8List?> getAvatar(final Contact contact,
-          {final bool photoHighRes = true}) =>
+          {final bool photoHighRes = true,
+          final AvatarOptions avatarOptions = AvatarOptions.original}) =>
       _channel.invokeMethod('getAvatar', <String, dynamic>{
         'contact': Contact._toMap(contact),
         'photoHighResolution': photoHighRes,
+        'avatarOptions': avatarOptions._toMap(),
       });
 
+  /// Returns the hit, miss and eviction counters of the in-memory cache used
+  /// by [getAvatar]. Only implemented on Android.
+  static Future<AvatarCacheStats> getAvatarCacheStats() async {
+    Map stats = await _channel.invokeMethod('getAvatarCacheStats');
+    return AvatarCacheStats.fromMap(stats);
+  }
+
+  /// Bounds the in-memory cache used by [getAvatar] to [maxBytes] of avatar
+  /// data, evicting the least recently used avatars as needed. [maxBytes]
+  /// must be positive. Only implemented on Android.
+  static Future<AvatarCacheStats> setAvatarCacheMaxBytes(int maxBytes) async {
+    Map stats = await _channel.invokeMethod(
+        'setAvatarCacheMaxBytes', <String, dynamic>{'maxBytes': maxBytes});
+    return AvatarCacheStats.fromMap(stats);
+  }
+
+  /// Returns, for each background lane, its configuration, queue depth, task
+  /// counts and latencies. Only implemented on Android.
+  static Future<Map<SchedulerLane, SchedulerLaneMetrics>>
+      getSchedulerMetrics() async {
+    Map metrics = await _channel.invokeMethod('getSchedulerMetrics');
+    return SchedulerLaneMetrics._fromLanes(metrics);
+  }
+
+  /// Changes how many tasks the [lane] runs at once, how many it queues and
+  /// what happens to the tasks beyond that. A task that is rejected or
+  /// dropped completes its call with an error. [queueCapacity] must be at
+  /// least 1. The write lane keeps writes in order and never drops one, so it
+  /// only accepts its defaults. Only implemented on Android.
+  static Future<Map<SchedulerLane, SchedulerLaneMetrics>> configureScheduler(
+      SchedulerLane lane,
+      {int? parallelism,
+      int? queueCapacity,
+      OverflowPolicy? overflowPolicy}) async {
+    Map metrics =
+        await _channel.invokeMethod('configureScheduler', <String, dynamic>{
+      'lane': lane.toString().split('.').last,
+      'parallelism': parallelism,
+      'queueCapacity': queueCapacity,
+      'overflowPolicy': overflowPolicy?.toString().split('.').last,
+    });
+    return SchedulerLaneMetrics._fromLanes(metrics);
+  }
+
   /// Adds the [contact] to the device contact list
   static Future addContact(Contact contact) =>
       _channel.invokeMethod('addContact', Contact._toMap(contact));
@@ -97,6 +387,37 @@ class ContactsService {
   static Future updateContact(Contact contact) =>
       _channel.invokeMethod('updateContact', Contact._toMap(contact));
 
+  /// Adds the [contacts] in as few provider transactions as possible and
+  /// returns, in the same order, the identifier of each new contact, or null
+  /// for the ones that could not be added. Only implemented on Android.
+  static Future<List<String?>> addContacts(List<Contact> contacts) async {
+    final List? identifiers = await _channel.invokeMethod(
+        'addContacts', <String, dynamic>{
+      'contacts': contacts.map(Contact._toMap).toList(),
+    });
+    return identifiers!.cast<String?>();
+  }
+
+  /// Updates the [contacts] in batches and returns, in the same order,
+  /// whether each one was updated. Only implemented on Android.
+  static Future<List<bool>> updateContacts(List<Contact> contacts) async {
+    final List? updated = await _channel.invokeMethod(
+        'updateContacts', <String, dynamic>{
+      'contacts': contacts.map(Contact._toMap).toList(),
+    });
+    return updated!.cast<bool>();
+  }
+
+  /// Deletes the [contacts] in batches and returns, in the same order,
+  /// whether each one was deleted. Only implemented on Android.
+  static Future<List<bool>> deleteContacts(List<Contact> contacts) async {
+    final List? deleted = await _channel.invokeMethod(
+        'deleteContacts', <String, dynamic>{
+      'contacts': contacts.map(Contact._toMap).toList(),
+    });
+    return deleted!.cast<bool>();
+  }
+
   static Future<Contact> openContactForm(
       {bool iOSLocalizedLabels = true,
       bool androidLocalizedLabels = true}) async {
@@ -165,6 +486,146 @@ class ContactsService {
   }
 }
 
+/// Groups of contact fields that can be requested from [ContactsService.getContacts].
+enum ContactField {
+  names,
+  phones,
+  emails,
+  postalAddresses,
+  organization,
+  note,
+  birthday
+}
+
+/// Encoding applied to avatars before they are returned. Only honoured on
+/// Android, where [AvatarFormat.original] returns the bytes as stored by the
+/// contacts provider (usually JPEG) without decoding them. [original] is the
+/// default; Android returned PNG before 0.6.4, which [png] still does.
+enum AvatarFormat { original, png, jpeg }
+
+/// The order of the contacts returned on Android. [none] keeps the order of
+/// the address book's contact ids.
+enum ContactSortOrder { none, givenName, familyName, displayName }
+
+/// How [ContactsService.getContactsForEmail] matches addresses on Android.
+enum EmailMatch { contains, prefix, exact }
+
+class AvatarOptions {
+  /// [quality] (0-100) is used for [AvatarFormat.jpeg]. When [maxDimension]
+  /// is set, larger photos are downsampled while decoding so that neither
+  /// side exceeds it. Both are ignored for [AvatarFormat.original].
+  const AvatarOptions(
+      {this.format = AvatarFormat.original,
+      this.quality = 100,
+      this.maxDimension});
+
+  static const AvatarOptions original = AvatarOptions();
+
+  final AvatarFormat format;
+  final int quality;
+  final int? maxDimension;
+
+  Map<String, dynamic> _toMap() => {
+        'format': format.toString().split('.').last,
+        'quality': quality,
+        'maxDimension': maxDimension,
+      };
+}
+
+class ContactsChangeEvent {
+  ContactsChangeEvent.fromMap(Map m)
+      : changes = m["changes"],
+        timestamp = DateTime.fromMillisecondsSinceEpoch(m["timestamp"]);
+
+  /// Number of provider notifications coalesced into this event.
+  final int changes;
+  final DateTime timestamp;
+}
+
+class ContactChanges {
+  ContactChanges.fromMap(Map m)
+      : upserts = (m["upserts"] as List)
+            .map((m) => Contact.fromMap(m))
+            .toList(),
+        deletedIdentifiers = List<String>.from(m["deletes"]),
+        watermark = m["watermark"];
+
+  /// Contacts that were added or changed, with all their fields.
+  final List<Contact> upserts;
+
+  /// Identifiers of the contacts that were deleted.
+  final List<String> deletedIdentifiers;
+
+  final int watermark;
+}
+
+class ContactSummary {
+  ContactSummary.fromMap(Map m)
+      : identifier = m["identifier"],
+        displayName = m["displayName"],
+        thumbnailUri = m["thumbnailUri"],
+        hasPhoneNumber = m["hasPhoneNumber"];
+
+  final String identifier;
+  final String? displayName;
+
+  /// A content:// URI of the contact's thumbnail, if it has a photo.
+  final String? thumbnailUri;
+  final bool hasPhoneNumber;
+}
+
+class AvatarCacheStats {
+  AvatarCacheStats.fromMap(Map m)
+      : hits = m["hits"],
+        misses = m["misses"],
+        evictions = m["evictions"],
+        entries = m["entries"],
+        sizeBytes = m["sizeBytes"],
+        maxBytes = m["maxBytes"];
+
+  final int hits, misses, evictions, entries, sizeBytes, maxBytes;
+}
+
+/// The background lanes contact work is scheduled on, on Android. Writes run
+/// on a lane of their own that always applies them one at a time.
+enum SchedulerLane { interactive, bulk, avatar, write }
+
+/// What a full lane does with a new task: fail it ([reject]), or fail the
+/// task that has waited longest and queue the new one ([dropOldest]).
+enum OverflowPolicy { reject, dropOldest }
+
+class SchedulerLaneMetrics {
+  SchedulerLaneMetrics.fromMap(Map m)
+      : parallelism = m["parallelism"],
+        queueCapacity = m["queueCapacity"],
+        overflowPolicy = m["overflowPolicy"] == "dropOldest"
+            ? OverflowPolicy.dropOldest
+            : OverflowPolicy.reject,
+        queueDepth = m["queueDepth"],
+        active = m["active"],
+        submitted = m["submitted"],
+        completed = m["completed"],
+        failed = m["failed"],
+        cancelled = m["cancelled"],
+        rejected = m["rejected"],
+        dropped = m["dropped"],
+        averageWaitMillis = m["averageWaitMillis"],
+        averageRunMillis = m["averageRunMillis"],
+        maxRunMillis = m["maxRunMillis"];
+
+  static Map<SchedulerLane, SchedulerLaneMetrics> _fromLanes(Map lanes) => {
+        for (SchedulerLane lane in SchedulerLane.values)
+          if (lanes[lane.toString().split('.').last] != null)
+            lane: SchedulerLaneMetrics.fromMap(
+                lanes[lane.toString().split('.').last])
+      };
+
+  final int parallelism, queueCapacity, queueDepth, active;
+  final OverflowPolicy overflowPolicy;
+  final int submitted, completed, failed, cancelled, rejected, dropped;
+  final double averageWaitMillis, averageRunMillis, maxRunMillis;
+}
+
 class FormOperationException implements Exception {
   final FormOperationErrorCode? errorCode;
 
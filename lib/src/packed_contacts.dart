@@ -0,0 +1,124 @@
+import 'dart:convert';
+import 'dart:typed_data';
+
+import '../contacts_service.dart';
+
+const int _version = 1;
+
+const int _string = 0;
+const int _bytes = 1;
+const int _items = 2;
+const int _postalAddresses = 3;
+
+/// Decodes the contact list the Android plugin sends when asked for `packed`
+/// results: a schema of field names and kinds, then one length-prefixed
+/// record per contact with its values in schema order. The layout is
+/// documented on the encoder, PackedContacts.java.
+///
+/// Records are read into the same maps the method channel would have
+/// delivered, so the contacts are built by [Contact.fromMap] either way.
+List<Contact> decodePackedContacts(Uint8List bytes) {
+  final reader = _Reader(bytes);
+  final version = reader.byte();
+  if (version != _version) {
+    throw FormatException('Unsupported packed contacts version $version');
+  }
+  final fieldCount = reader.varint();
+  final kinds = List<int>.filled(fieldCount, 0);
+  final names = List<String>.filled(fieldCount, '');
+  for (var i = 0; i < fieldCount; i++) {
+    kinds[i] = reader.byte();
+    names[i] = reader.string()!;
+  }
+
+  final count = reader.varint();
+  final contacts = <Contact>[];
+  for (var c = 0; c < count; c++) {
+    final length = reader.varint();
+    final end = reader.offset + length;
+    final map = <String, dynamic>{};
+    for (var i = 0; i < fieldCount; i++) {
+      // A field of a kind added later ends what can be read of the record.
+      if (kinds[i] > _postalAddresses) break;
+      map[names[i]] = reader.value(kinds[i]);
+    }
+    reader.offset = end;
+    contacts.add(Contact.fromMap(map));
+  }
+  return contacts;
+}
+
+class _Reader {
+  _Reader(this.bytes);
+
+  final Uint8List bytes;
+  int offset = 0;
+
+  int byte() => bytes[offset++];
+
+  int varint() {
+    var value = 0;
+    for (var shift = 0;; shift += 7) {
+      final b = byte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) return value;
+    }
+  }
+
+  int zigzag() {
+    final value = varint();
+    return (value >> 1) ^ -(value & 1);
+  }
+
+  Uint8List? bytesValue() {
+    final length = varint() - 1;
+    if (length < 0) return null;
+    final value = Uint8List.fromList(
+        Uint8List.sublistView(bytes, offset, offset + length));
+    offset += length;
+    return value;
+  }
+
+  String? string() {
+    final length = varint() - 1;
+    if (length < 0) return null;
+    final value =
+        utf8.decode(Uint8List.sublistView(bytes, offset, offset + length));
+    offset += length;
+    return value;
+  }
+
+  dynamic value(int kind) {
+    switch (kind) {
+      case _string:
+        return string();
+      case _bytes:
+        return bytesValue();
+      case _items:
+        return List.generate(varint(), (_) {
+          final label = string();
+          final value = string();
+          return {'label': label, 'value': value, 'type': zigzag()};
+        });
+      case _postalAddresses:
+        return List.generate(varint(), (_) {
+          final label = string();
+          final street = string();
+          final city = string();
+          final postcode = string();
+          final region = string();
+          final country = string();
+          return {
+            'label': label,
+            'street': street,
+            'city': city,
+            'postcode': postcode,
+            'region': region,
+            'country': country,
+            'type': zigzag(),
+          };
+        });
+    }
+    return null;
+  }
+}
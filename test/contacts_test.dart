@@ -1,3 +1,4 @@
+import 'dart:convert';
 import 'dart:typed_data';
 
 import 'package:contacts_service/contacts_service.dart';
@@ -16,6 +17,7 @@ void main() {
       case 'getContacts':
       case 'getContactsForPhone':
       case 'getContactsForEmail':
+        if (methodCall.arguments['packed'] == true) return _packedContacts();
         return [
           {'givenName': 'givenName1'},
           {
@@ -31,6 +33,50 @@ void main() {
         ];
       case 'getAvatar':
         return Uint8List.fromList([0, 1, 2, 3]);
+      case 'getContactsChangedSince':
+        return {
+          'upserts': [
+            {'identifier': '7', 'givenName': 'givenName7'}
+          ],
+          'deletes': ['3'],
+          'watermark': 1600000000123,
+        };
+      case 'getContactSummaries':
+        return [
+          {
+            'identifier': '5',
+            'displayName': 'Ada',
+            'thumbnailUri': null,
+            'hasPhoneNumber': true
+          }
+        ];
+      case 'getContactsByIds':
+        return [
+          {'identifier': '9', 'givenName': 'givenName9'},
+          null
+        ];
+      case 'lookupPhones':
+        return [
+          [
+            {'identifier': '9', 'givenName': 'givenName9'}
+          ],
+          []
+        ];
+      case 'lookupEmails':
+        return [
+          [],
+          [
+            {'identifier': '9', 'givenName': 'givenName9'}
+          ]
+        ];
+      case 'searchContacts':
+        return [
+          {'identifier': '9', 'givenName': 'givenName9'}
+        ];
+      case 'cancel':
+        return true;
+      case 'addContacts':
+        return ['11', null];
       default:
         return null;
     }
@@ -59,12 +105,124 @@ void main() {
       isMethodCall('getAvatar', arguments: <String, dynamic>{
         'contact': contact.toMap(),
         'photoHighResolution': true,
+        'avatarOptions': {
+          'format': 'original',
+          'quality': 100,
+          'maxDimension': null,
+        },
       })
     ]);
 
     expect(avatar, Uint8List.fromList([0, 1, 2, 3]));
   });
 
+  test('should get contact changes since a watermark', () async {
+    final changes = await ContactsService.getContactsChangedSince(1600000000000);
+
+    expect(log, <Matcher>[
+      isMethodCall('getContactsChangedSince', arguments: <String, dynamic>{
+        'timestamp': 1600000000000,
+        'androidLocalizedLabels': true,
+      })
+    ]);
+    expect(changes.upserts.single.identifier, '7');
+    expect(changes.deletedIdentifiers, ['3']);
+    expect(changes.watermark, 1600000000123);
+  });
+
+  test('should get contact summaries', () async {
+    final summaries = await ContactsService.getContactSummaries(query: 'A');
+
+    expect(log, <Matcher>[
+      isMethodCall('getContactSummaries',
+          arguments: <String, dynamic>{'query': 'A'})
+    ]);
+    expect(summaries.single.identifier, '5');
+    expect(summaries.single.displayName, 'Ada');
+    expect(summaries.single.hasPhoneNumber, isTrue);
+  });
+
+  test('should get contacts by ids in the requested order', () async {
+    final contacts = await ContactsService.getContactsByIds(['9', '4']);
+
+    expect(log.single.method, 'getContactsByIds');
+    expect(log.single.arguments['identifiers'], ['9', '4']);
+    expect(contacts.length, 2);
+    expect(contacts[0]!.identifier, '9');
+    expect(contacts[1], isNull);
+  });
+
+  test('should look up contacts for many phones', () async {
+    final contacts =
+        await ContactsService.lookupPhones(['+1 415 555 2671', '999']);
+
+    expect(log.single.method, 'lookupPhones');
+    expect(log.single.arguments['phones'], ['+1 415 555 2671', '999']);
+    expect(contacts['+1 415 555 2671']!.single.identifier, '9');
+    expect(contacts['999'], isEmpty);
+  });
+
+  test('should look up contacts for many emails', () async {
+    final contacts = await ContactsService.lookupEmails(
+        ['nobody@example.com', 'Nine@Example.com']);
+
+    expect(log.single.method, 'lookupEmails');
+    expect(contacts['nobody@example.com'], isEmpty);
+    expect(contacts['Nine@Example.com']!.single.identifier, '9');
+  });
+
+  test('should search contacts', () async {
+    final contacts = await ContactsService.searchContacts('jo smi', limit: 5);
+
+    expect(log, <Matcher>[
+      isMethodCall('searchContacts', arguments: <String, dynamic>{
+        'query': 'jo smi',
+        'limit': 5,
+        'androidLocalizedLabels': true,
+      })
+    ]);
+    expect(contacts.single.identifier, '9');
+  });
+
+  test('should cancel a request', () async {
+    expect(await ContactsService.cancel(42), isTrue);
+    expect(log, <Matcher>[
+      isMethodCall('cancel', arguments: <String, dynamic>{'requestId': 42})
+    ]);
+  });
+
+  test('should pass the sort order', () async {
+    await ContactsService.getContacts(sortBy: ContactSortOrder.familyName);
+
+    expect(log.single.arguments['sortBy'], 'familyName');
+  });
+
+  test('should decode packed contacts', () async {
+    final contacts = await ContactsService.getContacts(packed: true);
+
+    expect(log.single.arguments['packed'], isTrue);
+    expect(contacts.length, 2);
+    expect(contacts[0].identifier, '1');
+    expect(contacts[0].givenName, 'Zo\u00eb');
+    expect(contacts[0].avatar, [7, 8]);
+    expect(contacts[0].phones!.single.label, 'mobile');
+    expect(contacts[0].phones!.single.value, '+1 555 0100');
+    expect(contacts[0].postalAddresses!.single.city, 'Springfield');
+    expect(contacts[0].postalAddresses!.single.region, isNull);
+    expect(contacts[1].identifier, '2');
+    expect(contacts[1].givenName, isNull);
+    expect(contacts[1].phones, isEmpty);
+  });
+
+  test('should add contacts in bulk', () async {
+    final identifiers = await ContactsService.addContacts(
+        [Contact(givenName: 'a'), Contact(givenName: 'b')]);
+
+    expect(log.single.method, 'addContacts');
+    expect((log.single.arguments['contacts'] as List).length, 2);
+    expect(identifiers, ['11', null]);
+  });
+
   group('ContactsService.getContactsForPhone', () {
     test('returns empty list when no phone number specified', () async {
       final contacts = await ContactsService.getContactsForPhone(null);
@@ -273,3 +431,68 @@ void expectMethodCall(List<MethodCall> log, String methodName) {
     ),
   ]);
 }
+
+/// Two contacts in the Android packed format, with a trailing field of a kind
+/// the decoder does not know yet.
+Uint8List _packedContacts() {
+  void varint(List<int> out, int value) {
+    while (value >= 0x80) {
+      out.add(value & 0x7f | 0x80);
+      value >>= 7;
+    }
+    out.add(value);
+  }
+
+  void string(List<int> out, String? value) {
+    if (value == null) return varint(out, 0);
+    final encoded = utf8.encode(value);
+    varint(out, encoded.length + 1);
+    out.addAll(encoded);
+  }
+
+  final first = <int>[];
+  string(first, '1');
+  string(first, 'Zo\u00eb');
+  varint(first, 3);
+  first.addAll([7, 8]);
+  varint(first, 1);
+  string(first, 'mobile');
+  string(first, '+1 555 0100');
+  varint(first, 4);
+  varint(first, 1);
+  for (final value in ['home', '1 Main Street', 'Springfield', '12345']) {
+    string(first, value);
+  }
+  string(first, null);
+  string(first, 'US');
+  varint(first, 2);
+  first.addAll([0xff, 0xff]);
+
+  final second = <int>[];
+  string(second, '2');
+  string(second, null);
+  varint(second, 0);
+  varint(second, 0);
+  varint(second, 0);
+
+  final bytes = <int>[1];
+  final schema = {
+    'identifier': 0,
+    'givenName': 0,
+    'avatar': 1,
+    'phones': 2,
+    'postalAddresses': 3,
+    'future': 9,
+  };
+  varint(bytes, schema.length);
+  schema.forEach((name, kind) {
+    bytes.add(kind);
+    string(bytes, name);
+  });
+  varint(bytes, 2);
+  for (final record in [first, second]) {
+    varint(bytes, record.length);
+    bytes.addAll(record);
+  }
+  return Uint8List.fromList(bytes);
+}